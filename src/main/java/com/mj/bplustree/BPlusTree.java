@@ -4,7 +4,10 @@ import com.mj.bplustree.fields.Field;
 import com.mj.bplustree.impl.BPlusTreeImpl;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface BPlusTree {
 
@@ -12,16 +15,107 @@ public interface BPlusTree {
 
     void insert(List value);
 
+    /**
+     * Inserts a batch of records. The batch is sorted by key and each node is
+     * visited and written at most once, so records that land in the same leaf
+     * share one root-to-leaf pass. If the batch holds several records with the
+     * same key, the last one wins, as with repeated insert calls.
+     */
+    void insertAll(Collection<? extends List> values);
+
     void delete(List key);
 
+    /**
+     * Loads an empty tree from records sorted by strictly increasing key.
+     * Leaves are packed to fillFactor (0 < fillFactor <= 1) of their capacity
+     * and written sequentially, then the upper levels are built bottom-up.
+     * With the write-ahead log on, the blocks bypass the log and the buffer
+     * pool: they are written and synced, and only the switch to the new root
+     * is logged. A crash before that commit leaves the tree empty.
+     */
+    void bulkLoad(Iterator<? extends List> sortedRecords, double fillFactor) throws IOException;
+
+    default void bulkLoad(Stream<? extends List> sortedRecords, double fillFactor) throws IOException {
+        bulkLoad(sortedRecords.iterator(), fillFactor);
+    }
+
+    /**
+     * Returns the records whose key lies between lowKey and highKey, in key
+     * order. A null bound leaves that side of the range open.
+     */
+    Cursor scan(List lowKey, List highKey, boolean lowInclusive, boolean highInclusive);
+
+    default Cursor scan(List lowKey, List highKey) {
+        return scan(lowKey, highKey, true, true);
+    }
+
     void printTree() throws IOException;
 
     boolean isTreeValid() throws IOException;
 
+    /**
+     * Checks every node and block: key order and ranges, the depth of the
+     * leaves, the leaf chain, the record count, the free list, and blocks
+     * that are neither in the tree nor free. Subtrees are checked in
+     * parallel, and every violation is reported rather than the first.
+     */
+    VerifyReport verify() throws IOException;
+
+    /**
+     * The shape of the tree: height, nodes per level, fill factors, blocks
+     * and how sequential the leaf chain is in the file. Every node is
+     * visited, the nodes of a level in parallel. Nothing is printed.
+     */
+    TreeStats stats() throws IOException;
+
+    /**
+     * As stats, but estimated from samples paths from the root down to a
+     * random leaf, so it costs samples lookups whatever the size of the tree.
+     */
+    TreeStats stats(int samples) throws IOException;
+
+    /**
+     * Counters and latencies of this tree since it was opened.
+     */
+    TreeMetrics getMetrics();
+
     static BPlusTree create(String storeDir, String filename, List<String> keySpec, List<Field> tableSpec) throws IOException {
         return new BPlusTreeImpl(storeDir, filename, keySpec, tableSpec);
     }
 
+    static BPlusTree create(String storeDir, String filename, List<String> keySpec, List<Field> tableSpec,
+                            TreeOptions options) throws IOException {
+        return new BPlusTreeImpl(storeDir, filename, keySpec, tableSpec, options);
+    }
+
+    /**
+     * Opens an existing tree with the key and table spec stored in its file
+     * when it was created.
+     */
+    static BPlusTree open(String filename) throws IOException {
+        return new BPlusTreeImpl(filename, new TreeOptions());
+    }
+
+    /**
+     * As open(filename); the page size in options is ignored, the file's own
+     * is used.
+     */
+    static BPlusTree open(String filename, TreeOptions options) throws IOException {
+        return new BPlusTreeImpl(filename, options);
+    }
+
+    /**
+     * Makes every operation that has returned durable: syncs the log, or
+     * without one the index file. Other operations carry on meanwhile.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Writes every dirty page to the index file in block order, syncs it and,
+     * with a log, empties the log. Operations wait until it is done.
+     */
+    void checkpoint() throws IOException;
+
     void close() throws IOException;
 
 }
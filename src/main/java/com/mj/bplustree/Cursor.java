@@ -0,0 +1,15 @@
+package com.mj.bplustree;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Forward iterator over the records of a key range, in key order.
+ * Closing the cursor early stops the scan and releases what it holds.
+ */
+public interface Cursor extends Iterator<List>, AutoCloseable {
+
+    @Override
+    void close();
+
+}
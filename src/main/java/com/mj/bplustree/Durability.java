@@ -0,0 +1,43 @@
+package com.mj.bplustree;
+
+/**
+ * When the changes of an operation reach the disk, see TreeOptions.
+ */
+public enum Durability {
+
+    /**
+     * Every page an operation changes is written to the index file before the
+     * operation returns, without a log and without a sync: nothing is forced
+     * to disk until flush, checkpoint or close. A crash loses
+     * what the OS had not written yet, and a crash part way through a split
+     * can leave the tree damaged.
+     */
+    WRITE_THROUGH,
+
+    /**
+     * The pages an operation changed are logged and the log is synced before
+     * the operation returns, so a returned operation survives a crash. The
+     * pages themselves stay dirty in the buffer pool until they are evicted
+     * or a checkpoint writes them, in block order.
+     */
+    ON_COMMIT,
+
+    /**
+     * As ON_COMMIT, but one sync covers a group of operations: the operation
+     * that completes a group of groupCommitOperations syncs the log for all
+     * of them, and a background thread syncs it every sync interval so that
+     * a group that never fills is still made durable. A crash loses at most
+     * the operations of the last, unfinished group. As with PERIODIC, an
+     * operation that releases blocks syncs the log itself.
+     */
+    GROUP,
+
+    /**
+     * As ON_COMMIT, but the log is synced every sync interval rather than by
+     * each operation. A crash loses at most the operations of the last
+     * interval; the tree recovers to the state after the last synced one. An
+     * operation that releases blocks, a delete that merges nodes, still
+     * syncs the log itself before the blocks are marked free.
+     */
+    PERIODIC
+}
@@ -0,0 +1,64 @@
+package com.mj.bplustree;
+
+/**
+ * How full a set of nodes is, each node as a fraction of its capacity: bytes
+ * for a leaf, keys for a non-leaf node. The percentiles are rounded down to
+ * whole percents, but never below min or above max.
+ */
+public final class FillSummary {
+
+    private final long nodes;
+    private final double mean;
+    private final double min;
+    private final double p10;
+    private final double p50;
+    private final double p90;
+    private final double max;
+
+    public FillSummary(long nodes, double mean, double min, double p10, double p50, double p90, double max) {
+        this.nodes = nodes;
+        this.mean = mean;
+        this.min = min;
+        this.p10 = p10;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.max = max;
+    }
+
+    /**
+     * The nodes the summary is taken over.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getP10() {
+        return p10;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("mean=%.2f min=%.2f p10=%.2f p50=%.2f p90=%.2f max=%.2f over %d nodes",
+                mean, min, p10, p50, p90, max, nodes);
+    }
+}
@@ -0,0 +1,58 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.impl.IntKeyBPlusTreeImpl;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A tree keyed on a single integer field, with lookups that take the key as
+ * an int: on the way down there is no key list, no boxing and no comparator,
+ * and a leaf is searched without decoding its records.
+ * <p>
+ * It is the same tree, in the same file format, as BPlusTree.create makes
+ * for such a key, so either can open a file the other wrote.
+ */
+public interface IntKeyBPlusTree extends BPlusTree {
+
+    /**
+     * Returns the record with key, or null. Only that record is decoded.
+     */
+    List find(int key);
+
+    /**
+     * Whether a record with key exists. Nothing is decoded or allocated.
+     */
+    boolean contains(int key);
+
+    default void delete(int key) {
+        delete(List.of(key));
+    }
+
+    static IntKeyBPlusTree create(String storeDir, String filename, String keyField, List<Field> tableSpec)
+            throws IOException {
+        return create(storeDir, filename, keyField, tableSpec, new TreeOptions());
+    }
+
+    /**
+     * As BPlusTree.create with the single key keyField, which must be an
+     * integer field of tableSpec.
+     */
+    static IntKeyBPlusTree create(String storeDir, String filename, String keyField, List<Field> tableSpec,
+                                  TreeOptions options) throws IOException {
+        return new IntKeyBPlusTreeImpl(storeDir, filename, List.of(keyField), tableSpec, options);
+    }
+
+    /**
+     * Opens an existing tree with the schema stored in its file, which must
+     * be keyed on a single integer field.
+     */
+    static IntKeyBPlusTree open(String filename) throws IOException {
+        return open(filename, new TreeOptions());
+    }
+
+    static IntKeyBPlusTree open(String filename, TreeOptions options) throws IOException {
+        return new IntKeyBPlusTreeImpl(null, filename, null, null, options);
+    }
+}
@@ -0,0 +1,85 @@
+package com.mj.bplustree;
+
+import javax.management.MXBean;
+
+/**
+ * What a tree has done since it was opened. Every count is kept with
+ * LongAdder and every latency in a fixed bucket histogram, so recording is a
+ * few uncontended additions and is always on. A value read while operations
+ * run may be a moment behind, and the counts of one call are not a snapshot
+ * taken at a single instant.
+ * <p>
+ * With TreeOptions.setJmxEnabled the same object is registered as an MXBean,
+ * see TreeOptions.
+ */
+@MXBean
+public interface TreeMetrics {
+
+    /**
+     * Leaf blocks read from the index file, that is buffer pool misses on a
+     * leaf.
+     */
+    long getLeafPageReads();
+
+    /**
+     * Non-leaf blocks read from the index file.
+     */
+    long getInternalPageReads();
+
+    /**
+     * Leaf blocks written to the index file, on write-through, eviction or
+     * flush.
+     */
+    long getLeafPageWrites();
+
+    /**
+     * Non-leaf blocks written to the index file.
+     */
+    long getInternalPageWrites();
+
+    /**
+     * Bytes written to the index file: node blocks, freed blocks and the
+     * header. The write-ahead log is not counted.
+     */
+    long getBytesWritten();
+
+    /**
+     * New nodes made by splits, of leaves and non-leaf nodes. A batch that
+     * splits a node into three counts two.
+     */
+    long getSplits();
+
+    /**
+     * Nodes merged into a sibling after a delete left them underfull.
+     */
+    long getMerges();
+
+    /**
+     * Levels added above the root by splits of the root.
+     */
+    long getRootSplits();
+
+    /**
+     * Syncs of the write-ahead log, 0 without one.
+     */
+    long getLogSyncs();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    int getHeight();
+
+    long getRecordCount();
+
+    /**
+     * Latency of find, including the int key finds of IntKeyBPlusTree.
+     */
+    LatencySummary getFindLatency();
+
+    LatencySummary getInsertLatency();
+
+    LatencySummary getDeleteLatency();
+}
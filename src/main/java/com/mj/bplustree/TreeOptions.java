@@ -0,0 +1,188 @@
+package com.mj.bplustree;
+
+import com.mj.db.buffer.EvictionPolicy;
+import com.mj.db.buffer.LRUEvictionPolicy;
+import com.mj.db.storage.StoreType;
+
+import java.util.function.Supplier;
+
+/**
+ * Creation options for a BPlusTree. Every setting has a default, so
+ * {@code new TreeOptions()} behaves like the plain create call.
+ */
+public class TreeOptions {
+
+    /**
+     * cacheSizeBytes: memory budget of the buffer pool. It is turned into a
+     * number of cached blocks by dividing by the block size.
+     * <p>
+     * evictionPolicy: creates the policy used by the buffer pool, one per tree.
+     * <p>
+     * storeType: how blocks are read from and written to the index file.
+     * <p>
+     * mappedChunkSize: for MEMORY_MAPPED stores, the size of each mapped region.
+     * The file grows by one chunk at a time.
+     * <p>
+     * durability: when changes reach the disk, see Durability. With ON_COMMIT,
+     * GROUP and PERIODIC every page an operation changes is logged to a redo log
+     * next to the index file. Data pages are then written lazily, on eviction
+     * or checkpoint, and a crash part way through a split is repaired from
+     * the log on the next open. With WRITE_THROUGH every changed page is
+     * written to the index file immediately. setWriteAheadLog(true) is
+     * ON_COMMIT, false is WRITE_THROUGH.
+     * <p>
+     * syncIntervalMillis: with PERIODIC and GROUP durability, how often the
+     * log is synced.
+     * <p>
+     * groupCommitOperations: with GROUP durability, the number of operations
+     * that share one sync of the log.
+     * <p>
+     * checkpointBytes: with a log, the log size that triggers a checkpoint:
+     * dirty pages are written and synced and the log is emptied.
+     * <p>
+     * pageSize: size of a block of the index file, a power of two from 1 KB to
+     * 64 KB. It is stored in the file when the tree is created; an existing
+     * file is always opened with its own page size.
+     * <p>
+     * appendOptimized: for keys that mostly arrive in increasing order, such
+     * as sequence numbers or timestamps. An insert past the last key goes
+     * straight to the last leaf, without descending from the root. When the
+     * last leaf overflows with a new largest key it keeps all its entries and
+     * only the new one moves to the new leaf, and the last node of each level
+     * above splits the same way. Other inserts work as usual, but pages
+     * filled in key order stay full, so inserts into the middle of them
+     * split more often.
+     * <p>
+     * jmxEnabled: register the tree's TreeMetrics with the platform MBean
+     * server while it is open, as com.mj.bplustree:type=BPlusTree,file="path"
+     * with the absolute path of the index file.
+     */
+    private long cacheSizeBytes = 4L * 1024 * 1024;
+    private Supplier<EvictionPolicy> evictionPolicy = LRUEvictionPolicy::new;
+    private StoreType storeType = StoreType.RANDOM_ACCESS;
+    private long mappedChunkSize = 1024L * 1024;
+    private Durability durability = Durability.WRITE_THROUGH;
+    private long syncIntervalMillis = 1000;
+    private int groupCommitOperations = 64;
+    private long checkpointBytes = 16L * 1024 * 1024;
+    private int pageSize = 1024;
+    private boolean appendOptimized = false;
+    private boolean jmxEnabled = false;
+
+    public long getCacheSizeBytes() {
+        return cacheSizeBytes;
+    }
+
+    public TreeOptions setCacheSizeBytes(long cacheSizeBytes) {
+        this.cacheSizeBytes = cacheSizeBytes;
+        return this;
+    }
+
+    public Supplier<EvictionPolicy> getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public TreeOptions setEvictionPolicy(Supplier<EvictionPolicy> evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    public StoreType getStoreType() {
+        return storeType;
+    }
+
+    public TreeOptions setStoreType(StoreType storeType) {
+        this.storeType = storeType;
+        return this;
+    }
+
+    public long getMappedChunkSize() {
+        return mappedChunkSize;
+    }
+
+    public TreeOptions setMappedChunkSize(long mappedChunkSize) {
+        this.mappedChunkSize = mappedChunkSize;
+        return this;
+    }
+
+    public boolean isWriteAheadLog() {
+        return durability != Durability.WRITE_THROUGH;
+    }
+
+    public TreeOptions setWriteAheadLog(boolean writeAheadLog) {
+        this.durability = writeAheadLog ? Durability.ON_COMMIT : Durability.WRITE_THROUGH;
+        return this;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public TreeOptions setDurability(Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public TreeOptions setSyncIntervalMillis(long syncIntervalMillis) {
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("sync interval must be positive: " + syncIntervalMillis);
+        }
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+
+    public int getGroupCommitOperations() {
+        return groupCommitOperations;
+    }
+
+    public TreeOptions setGroupCommitOperations(int groupCommitOperations) {
+        if (groupCommitOperations <= 0) {
+            throw new IllegalArgumentException("group commit size must be positive: " + groupCommitOperations);
+        }
+        this.groupCommitOperations = groupCommitOperations;
+        return this;
+    }
+
+    public long getCheckpointBytes() {
+        return checkpointBytes;
+    }
+
+    public TreeOptions setCheckpointBytes(long checkpointBytes) {
+        this.checkpointBytes = checkpointBytes;
+        return this;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public TreeOptions setPageSize(int pageSize) {
+        if (pageSize < 1024 || pageSize > 64 * 1024 || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("page size must be a power of two from 1KB to 64KB: " + pageSize);
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public boolean isAppendOptimized() {
+        return appendOptimized;
+    }
+
+    public TreeOptions setAppendOptimized(boolean appendOptimized) {
+        this.appendOptimized = appendOptimized;
+        return this;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public TreeOptions setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+}
@@ -0,0 +1,98 @@
+package com.mj.bplustree;
+
+import java.util.List;
+
+/**
+ * The shape of a tree, as returned by BPlusTree.stats. A full pass visits
+ * every node; a sampled one follows random paths from the root and estimates
+ * the node counts below the root from the fanout it saw. Block counts are
+ * always exact. On a tree that is being changed the figures are a close
+ * approximation, not a snapshot.
+ */
+public final class TreeStats {
+
+    private final boolean sampled;
+    private final int height;
+    private final List<Long> nodesPerLevel;
+    private final FillSummary leafFill;
+    private final FillSummary internalFill;
+    private final long totalBlocks;
+    private final long freeBlocks;
+    private final double leafContiguity;
+
+    public TreeStats(boolean sampled, int height, List<Long> nodesPerLevel, FillSummary leafFill,
+                     FillSummary internalFill, long totalBlocks, long freeBlocks, double leafContiguity) {
+        this.sampled = sampled;
+        this.height = height;
+        this.nodesPerLevel = List.copyOf(nodesPerLevel);
+        this.leafFill = leafFill;
+        this.internalFill = internalFill;
+        this.totalBlocks = totalBlocks;
+        this.freeBlocks = freeBlocks;
+        this.leafContiguity = leafContiguity;
+    }
+
+    /**
+     * True if the node counts and fill factors are estimates from a sample.
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The number of nodes on each level, the root first and the leaves last.
+     */
+    public List<Long> getNodesPerLevel() {
+        return nodesPerLevel;
+    }
+
+    public long getLeaves() {
+        return nodesPerLevel.isEmpty() ? 0 : nodesPerLevel.get(nodesPerLevel.size() - 1);
+    }
+
+    public FillSummary getLeafFill() {
+        return leafFill;
+    }
+
+    /**
+     * Fill of the non-leaf nodes, the root included.
+     */
+    public FillSummary getInternalFill() {
+        return internalFill;
+    }
+
+    /**
+     * Blocks in the index file, the header block included.
+     */
+    public long getTotalBlocks() {
+        return totalBlocks;
+    }
+
+    /**
+     * Blocks on the free list.
+     */
+    public long getFreeBlocks() {
+        return freeBlocks;
+    }
+
+    /**
+     * Of the leaves that have a next leaf, the fraction whose next leaf is
+     * the following block of the file, so that a range scan reads the file
+     * sequentially. 1 for a tree with a single leaf.
+     */
+    public double getLeafContiguity() {
+        return leafContiguity;
+    }
+
+    @Override
+    public String toString() {
+        return (sampled ? "sampled" : "full") + " height=" + height + " nodesPerLevel=" + nodesPerLevel
+                + " blocks=" + totalBlocks + " free=" + freeBlocks
+                + String.format(" leafContiguity=%.3f", leafContiguity)
+                + "\nleaf fill: " + leafFill + "\ninternal fill: " + internalFill;
+    }
+}
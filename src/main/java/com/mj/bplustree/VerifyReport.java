@@ -0,0 +1,84 @@
+package com.mj.bplustree;
+
+import java.util.List;
+
+/**
+ * The outcome of BPlusTree.verify: what was checked and every violation
+ * found, in no particular order. A badly damaged tree can have a violation
+ * per block, so only the first MAX_REPORTED are kept as messages; the count
+ * is always complete.
+ */
+public final class VerifyReport {
+
+    public static final int MAX_REPORTED = 1000;
+
+    private final List<String> violations;
+    private final long violationCount;
+    private final long nodes;
+    private final long leaves;
+    private final long records;
+    private final long blocks;
+
+    public VerifyReport(List<String> violations, long violationCount, long nodes, long leaves, long records,
+                        long blocks) {
+        this.violations = List.copyOf(violations);
+        this.violationCount = violationCount;
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.records = records;
+        this.blocks = blocks;
+    }
+
+    public boolean isValid() {
+        return violationCount == 0;
+    }
+
+    /**
+     * A message for each violation, naming the block it was found in.
+     */
+    public List<String> getViolations() {
+        return violations;
+    }
+
+    public long getViolationCount() {
+        return violationCount;
+    }
+
+    /**
+     * Nodes reached from the root, leaves included.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * Records in the leaves reached from the root.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Blocks of the file checked for being either in the tree or free, the
+     * header included.
+     */
+    public long getBlocks() {
+        return blocks;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(isValid() ? "valid" : violationCount + " violations").append(": ")
+                .append(nodes).append(" nodes, ").append(leaves).append(" leaves, ")
+                .append(records).append(" records, ").append(blocks).append(" blocks");
+        for (String violation : violations) {
+            sb.append('\n').append(violation);
+        }
+        return sb.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package com.mj.bplustree.fields;
 
+import java.util.Objects;
+
 public class Field {
     private String name;
     private FieldType fieldType;
@@ -28,6 +30,11 @@ public class Field {
         return length;
     }
 
+    /**
+     * The most bytes a value of this field takes in a page. A string is
+     * stored as a 4 byte length and its UTF-8 bytes, of which it may take
+     * 3 * length: length characters of any script, more if they are ASCII.
+     */
     public int getSize() {
 
         switch(fieldType) {
@@ -35,7 +42,7 @@ public class Field {
             case decimal:
                 return 4;
             case string:
-                return length *2;
+                return 4 + length * 3;
             case bool:
                 return 1;
             default:
@@ -44,4 +51,27 @@ public class Field {
         }
 
     }
+
+    /**
+     * Fields are equal if they have the same name, type and length, so a
+     * table spec can be checked against the one stored with a tree.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Field)) {
+            return false;
+        }
+        Field other = (Field) o;
+        return name.equals(other.name) && fieldType == other.fieldType && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, fieldType, length);
+    }
+
+    @Override
+    public String toString() {
+        return fieldType == FieldType.string ? name + " " + fieldType + "(" + length + ")" : name + " " + fieldType;
+    }
 }
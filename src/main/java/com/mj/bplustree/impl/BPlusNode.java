@@ -1,24 +1,27 @@
 package com.mj.bplustree.impl;
 
-import com.mj.bplustree.NodeBounds;
 import com.mj.bplustree.fields.Field;
 import com.mj.db.serialization.KeySerDeserializer;
 import com.mj.db.serialization.RecordSerDeserializer;
+import com.mj.db.storage.ByteBufferInputStream;
 import com.mj.util.KeyComparator;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class BPlusNode {
 
     /**
-     * Mleaf represent maximum number of entries per leaf node
+     * Mleaf represent maximum number of entries of the largest size per leaf node;
+     * leaves are filled by bytes, see usedBytes
      * Mnonleaf represent maximum number of keys per non-leaf node
      */
     private int Mleaf;
@@ -31,23 +34,58 @@ public class BPlusNode {
     private int blockPointer; // address within disk for this block
 
     /**
-     * children Represents the list of pointers to child node blocks in the B+ tree.
-     * For a non-leaf node, each entry in this list corresponds to a child node.
+     * children Holds the pointers to child node blocks in the B+ tree.
+     * For a non-leaf node, entries 0..numChildren-1 each correspond to a child node.
      * <p>
-     * keys Represents the list of pointers to child node blocks in the B+ tree.
-     * For a non-leaf node, each entry in this list corresponds to a child node.
+     * keys Holds the keys of the node in ascending order, entries 0..numKeys-1.
+     * For a non-leaf node these are the separators between consecutive children.
      * <p>
-     * data Represents the list of data items stored in the leaf node.
-     * For each entry in the list, there is a corresponding key in the keys list.
+     * data Holds the data items stored in the leaf node.
+     * For each entry, there is a corresponding key at the same index in keys.
+     * <p>
+     * The arrays are sized from Mleaf/Mnonleaf with one spare slot for the entry
+     * that overflows a node just before it is split, and grow if a block holds more.
      */
-    private List<Integer> children = new LinkedList<>();
+    private int[] children = new int[0];
+    private int numChildren = 0;
 
-    private List<List<Object>> keys = new LinkedList<>();
+    private List<Object>[] keys = newArray(0);
+    private List<Object>[] data = newArray(0);
+    private int numKeys = 0;
 
-    private List<List<Object>> data = new LinkedList<>();
+    /**
+     * usedBytes: for a leaf, the bytes its entries take in the page. A leaf
+     * splits once they exceed the tree's leaf capacity, is underfull below
+     * half of it, and is evened out with its sibling by bytes.
+     */
+    private int usedBytes = 0;
+
+    /**
+     * page: for a leaf read from disk and not changed since, the page it was
+     * read from, and keys and data are left empty. A lookup decodes the keys it
+     * probes and the one record it returns straight from the page; the leaf is
+     * decoded in full, by materialize, only once it is about to change, which
+     * happens under the exclusive latch.
+     */
+    private ByteBuffer page;
+
+    /**
+     * Offset of the first record in a leaf without slots: the in-use byte,
+     * the node type and the entry count come first.
+     */
+    private static final int PACKED_RECORDS_START = 6;
+
+    /**
+     * intKeys: in a tree keyed on one integer field, the keys as ints for the
+     * int lookups of IntKeyBPlusTreeImpl. Built by the first such lookup, under
+     * the shared latch, and dropped when the exclusive latch is let go, since
+     * that is the only way a node changes. A leaf still on its page is
+     * searched on the page instead.
+     */
+    private volatile int[] intKeys;
 
     private boolean isLeaf = false;
-    private boolean isRoot = false;
+    private volatile boolean isRoot = false;
     /**
      * container: Holds a reference to the BPlusTreeImpl object.
      * It provides access to the B+ tree's specifications and methods.
@@ -78,6 +116,16 @@ public class BPlusNode {
     private List<Object> promotedKey;
     private int[] promotedChildPointers;
 
+    /**
+     * rightEdgeSplit: set on the new node of a split at the right edge of an
+     * append optimized tree, where the last leaf overflowed with a new largest
+     * key, or its parent with the key that split promoted, and so on up. The
+     * node kept everything it held and the new node holds only the new entry;
+     * the parent taking the promoted key is the last at its level as well,
+     * and splits the same way if it overflows.
+     */
+    private boolean rightEdgeSplit;
+
     private List<Field> tableSpec;
 
     private Map<String, Field> tableSpecMap;
@@ -91,25 +139,44 @@ public class BPlusNode {
 
     private KeyComparator keyComparator;
 
+    /**
+     * Page latch, held only while the node is pinned. Readers crab down the
+     * tree with shared latches; writers take the leaf, and any ancestor that
+     * may have to take a promoted key, exclusively. See BPlusTreeImpl.
+     */
+    private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+    private volatile boolean deleted = false;
+
     public BPlusNode(BPlusTreeImpl tree) {
+        this(tree, tree.allocateBlock());
+    }
+
+    /**
+     * Creates an empty node for a block the caller has already chosen.
+     */
+    BPlusNode(BPlusTreeImpl tree, int blockPointer) {
 
         container = tree;
-        blockPointer = container.getNextBlockPointer();
+        this.blockPointer = blockPointer;
         keySpec = tree.getKeySpec();
         tableSpec = tree.getTableSpec();
         tableSpecMap = tree.getTableSpecMap();
         fieldPositionMap = tree.getFieldPositionMap();
 
-        keySerDeserializer = new KeySerDeserializer(tableSpecMap, keySpec);
-        recordSerDeserializer = new RecordSerDeserializer(tableSpec);
-        keyComparator = new KeyComparator(keySpec, tableSpecMap);
+        keySerDeserializer = tree.getKeySerDeserializer();
+        recordSerDeserializer = tree.getRecordSerDeserializer();
+        keyComparator = tree.getKeyComparator();
 
         Mnonleaf = container.getNumKeysPerBlock();
         Mleaf = container.getNumRecordsPerBlock();
 
     }
 
-    public BPlusNode(BPlusTreeImpl tree, byte[] b, int blockPointer) throws IOException {
+    /**
+     * Decodes a node from page, which is positioned just after the block's
+     * free/used byte. The page may be a view of a memory mapped region.
+     */
+    public BPlusNode(BPlusTreeImpl tree, ByteBuffer page, int blockPointer) throws IOException {
 
         container = tree;
         this.blockPointer = blockPointer;
@@ -117,96 +184,217 @@ public class BPlusNode {
         tableSpec = tree.getTableSpec();
         tableSpecMap = tree.getTableSpecMap();
         fieldPositionMap = tree.getFieldPositionMap();
-        keySerDeserializer = new KeySerDeserializer(tableSpecMap, keySpec);
-        recordSerDeserializer = new RecordSerDeserializer(tableSpec);
-        keyComparator = new KeyComparator(keySpec, tableSpecMap);
+        keySerDeserializer = tree.getKeySerDeserializer();
+        recordSerDeserializer = tree.getRecordSerDeserializer();
+        keyComparator = tree.getKeyComparator();
 
         Mnonleaf = container.getNumKeysPerBlock();
         Mleaf = container.getNumRecordsPerBlock();
 
-        if (blockPointer == 0)
+        if (blockPointer == tree.getRootPointer())
             isRoot = true;
 
-        ByteArrayInputStream bis = new ByteArrayInputStream(b);
-        DataInputStream dis = new DataInputStream(bis);
+        DataInputStream dis = new DataInputStream(new ByteBufferInputStream(page));
 
-        readNode(dis);
+        readNode(dis, page);
 
     }
 
+    /**
+     * Looks key up in this leaf. The tree does the descent, see BPlusTreeImpl.
+     */
     public List<Object> find(List<Object> key) {
-        int ptr = -1;
-        int kSize;
         if (!isLeaf()) {
-            kSize = keys.size();
-            int i;
-            for (i = 0; i < kSize; i++) {
-                List<Object> k = keys.get(i);
+            throw new RuntimeException("Method Applies only to Leaf nodes");
+        }
 
-                if (keyComparator.compare(key, k) < 0) {
-                    ptr = children.get(i);
-                    break;
-                }
-            }
-            if (ptr == -1)
-                ptr = children.get(i);
+        int i = search(key);
+        if (i >= 0) {
+            return record(i);
+        }
+        return null;
+    }
 
 
-            BPlusNode nextNode = readFromDisk(ptr);
-            return nextNode.find(key);
+    /**
+     * Removes key from this leaf and writes it if it held the key.
+     * Returns whether the key was found. A leaf left underfull is rebalanced
+     * by its parent, see rebalance.
+     */
+    public boolean delete(List<Object> key) {
+        if (!isLeaf()) {
+            throw new RuntimeException("Method Applies only to Leaf nodes");
         }
 
-        kSize = keys.size();
-        int i;
-        for (i = 0; i < kSize; i++) {
-            List<Object> k = keys.get(i);
+        int i = search(key);
+        if (i >= 0) {
+            removeEntry(i);
+            container.addRecords(-1);
+            writeToDisk();
+            return true;
+        }
+        return false;
+    }
 
-            if (keyComparator.compare(key, k) == 0) {
-                return data.get(i);
-            }
+    void latchShared() {
+        latch.readLock().lock();
+    }
+
+    void unlatchShared() {
+        latch.readLock().unlock();
+    }
+
+    void latchExclusive() {
+        latch.writeLock().lock();
+    }
+
+    void unlatchExclusive() {
+        intKeys = null;
+        latch.writeLock().unlock();
+    }
+
+    /**
+     * True if one more entry (or promoted key) cannot make this node split,
+     * so a writer holding it no longer needs the latches above it.
+     */
+    boolean isSafeForInsert() {
+        if (isLeaf) {
+            return usedBytes + container.getMaxLeafEntry() <= container.getLeafCapacity();
         }
+        return numKeys < Mnonleaf;
+    }
 
-        return null;
+    /**
+     * True if losing one entry, or one child, cannot make this node underflow
+     * (or, for the root, leave it with a single child).
+     */
+    boolean isSafeForDelete() {
+        if (isRoot) {
+            return isLeaf || numChildren > 2;
+        }
+        return isLeaf ? usedBytes - container.getMaxLeafEntry() >= minBytes() : numChildren > minChildren();
     }
 
+    /**
+     * True if this node is less than half full. The root may hold any number
+     * of entries.
+     */
+    boolean isUnderflow() {
+        if (isRoot) {
+            return false;
+        }
+        return isLeaf ? usedBytes < minBytes() : numChildren < minChildren();
+    }
 
-    public void delete(List<Object> key) {
-        int ptr = -1;
-        int kSize;
-        if (!isLeaf()) {
-            kSize = keys.size();
-            int i;
-            for (i = 0; i < kSize; i++) {
+    /**
+     * Half a leaf, less half the largest entry: two leaves that do not fit
+     * in one are evened out to at least this much each.
+     */
+    private int minBytes() {
+        return (container.getLeafCapacity() - container.getMaxLeafEntry()) / 2;
+    }
 
-                List<Object> k = keys.get(i);
+    private int minChildren() {
+        return (Mnonleaf + 1) / 2;
+    }
 
-                if (keyComparator.compare(key, k) < 0) {
-                    ptr = children.get(i);
-                    break;
-                }
+    /**
+     * Set once the node has been merged into another one and its block
+     * released. Threads still holding the old object check it under the
+     * latch and find their place again from the root.
+     */
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Binary search over keys[0..numKeys). Returns the index of key if present,
+     * otherwise (-(insertion point) - 1) as in Arrays.binarySearch.
+     */
+    int search(List<Object> key) {
+        int low = 0;
+        int high = numKeys - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = keyComparator.compare(key(mid), key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
             }
+        }
+        return -(low + 1);
+    }
 
-            if (ptr == -1)
-                ptr = children.get(i);
+    /**
+     * search for a tree keyed on one integer field, see intKeys. Neither the
+     * key nor the entries it passes are boxed or decoded.
+     */
+    int search(int key) {
+        ByteBuffer p = page;
+        if (p == null) {
+            int[] k = intKeys;
+            if (k == null) {
+                k = new int[numKeys];
+                for (int i = 0; i < k.length; i++) {
+                    k[i] = (int) keys[i].get(0);
+                }
+                intKeys = k;
+            }
+            return Arrays.binarySearch(k, key);
+        }
 
-            BPlusNode nextNode = readFromDisk(ptr);
-            nextNode.delete(key);
-            nextNode.writeToDisk();
-            return;
+        int position = container.getKeyPositions()[0];
+        int low = 0;
+        int high = numKeys - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = Integer.compare(p.getInt(recordSerDeserializer.fieldOffset(p, recordOffset(p, mid), position)), key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
         }
+        return -(low + 1);
+    }
 
+    int childPointerFor(int key) {
+        int i = search(key);
+        return children[i >= 0 ? i + 1 : -i - 1];
+    }
 
-        kSize = keys.size();
-        int i;
-        for (i = 0; i < kSize; i++) {
+    /**
+     * Returns the pointer of the child whose subtree may hold key.
+     * A null key selects the leftmost child.
+     */
+    int childPointerFor(List<Object> key) {
+        if (key == null) {
+            return children[0];
+        }
+        int i = search(key);
+        // keys equal to a separator live in the subtree to its right
+        return children[i >= 0 ? i + 1 : -i - 1];
+    }
 
-            List<Object> k = keys.get(i);
-            if (keyComparator.compare(key, k) == 0) {
-                keys.remove(i);
-                data.remove(i);
-                break;
-            }
+    /**
+     * Returns the index of the first leaf entry at or after key
+     * (strictly after key if inclusive is false). A null key returns 0.
+     */
+    int lowerBound(List<Object> key, boolean inclusive) {
+        if (key == null) {
+            return 0;
+        }
+        int i = search(key);
+        if (i >= 0) {
+            return inclusive ? i : i + 1;
         }
+        return -i - 1;
     }
 
     public boolean isLeaf() {
@@ -217,147 +405,153 @@ public class BPlusNode {
         return isRoot;
     }
 
-    public void setRoot(boolean root) {
-        isRoot = root;
+    void setPointer(int blockPointer) {
+        this.blockPointer = blockPointer;
+    }
 
-        if (isRoot()) {
-            blockPointer = 0;
-            container.decNextBlockPointer();
-        }
+    void setNextBlockPointer(int nextBlockPointer) {
+        this.nextBlockPointer = nextBlockPointer;
+    }
+
+    void setRoot(boolean root) {
+        isRoot = root;
     }
 
     public void setLeaf(boolean leaf) {
         isLeaf = leaf;
-    }
+        usedBytes = 0;
+        page = null;
 
+        if (leaf) {
+            keys = newArray(Mleaf + 1);
+            data = newArray(Mleaf + 1);
+            children = new int[0];
+        } else {
+            keys = newArray(Mnonleaf + 1);
+            data = newArray(0);
+            children = new int[Mnonleaf + 2];
+        }
+    }
 
-    public BPlusNode insert(List<Object> value) {
-        List<Object> key = keyFromRecord(value);
-        int kSize;
-        if (!isLeaf()) {
+    @SuppressWarnings("unchecked")
+    private static List<Object>[] newArray(int size) {
+        return (List<Object>[]) new List[size];
+    }
 
-            int ptr = -1;
-            kSize = keys.size();
-            int i;
-            for (i = 0; i < kSize; i++) {
-                List<Object> k = keys.get(i);
-                if (keyComparator.compare(key, k) < 0) {
-                    ptr = children.get(i);
-                    break;
-                }
+    private void ensureKeyCapacity(int size) {
+        if (size > keys.length) {
+            int capacity = Math.max(size, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            if (isLeaf) {
+                data = Arrays.copyOf(data, capacity);
             }
+        }
+    }
 
-            if (ptr == -1)
-                ptr = children.get(i);
-            BPlusNode nextNode = readFromDisk(ptr);
-
-            BPlusNode newChild = nextNode.insert(value); // on the way down to the leaf
-            nextNode.writeToDisk();
-
-            if (newChild == null) {
-                return null;
-            }
+    private void ensureChildCapacity(int size) {
+        if (size > children.length) {
+            children = Arrays.copyOf(children, Math.max(size, children.length * 2));
+        }
+    }
 
-            List sKey = newChild.getPromotedKey();
 
-            int[] pointers = newChild.getPromotedPointers();
-            newChild = insert(sKey, pointers);
+    /**
+     * True if this leaf holds entries and every one of them has a key less
+     * than key.
+     */
+    boolean endsBefore(List<Object> key) {
+        return numKeys > 0 && keyComparator.compare(key(numKeys - 1), key) < 0;
+    }
 
-            return newChild;
+    /**
+     * Inserts into this leaf and writes it. Returns the new right sibling if
+     * the leaf split; the caller passes its promoted key to the parent. In an
+     * append optimized tree the last leaf that overflows with a new largest
+     * key keeps all the others, so leaves filled in key order are left full,
+     * see rightEdgeSplit.
+     */
+    public BPlusNode insert(List<Object> value) {
+        if (!isLeaf()) {
+            throw new RuntimeException("Method Applies only to Leaf nodes");
         }
-        if (isLeaf()) {
-            int size = keys.size();
-
-            boolean foundPos = false;
-            for (int i = 0; i < size; i++) {
-                List k = keys.get(i);
+        List<Object> key = keyFromRecord(value);
+        materialize();
 
-                if (keyComparator.compare(key, k) < 0) {
-                    keys.add(i, key);
-                    data.add(i, value);
+        int i = search(key);
+        boolean appended = false;
+        if (i >= 0) {
+            usedBytes += entryBytes(value) - entryBytes(data[i]);
+            data[i] = value;
+        } else {
+            insertEntry(-i - 1, key, value);
+            container.addRecords(1);
+            appended = -i - 1 == numKeys - 1;
+        }
 
-                    foundPos = true;
-                    break;
-                } else if (keyComparator.compare(key, k) == 0) {
-                    data.set(i, value);
-                    foundPos = true;
-                    break;
-                }
-            }
-            if (!foundPos) {
-                keys.add(key);
-                data.add(value);
-            }
+        int size = numKeys;
+        if (usedBytes <= container.getLeafCapacity()) {
+            writeToDisk();
+            return null;
+        }
 
-            size = keys.size();
-            if (size <= Mleaf) {
-                writeToDisk();
-                return null;
-            }
+        BPlusNode newNode = new BPlusNode(container);
+        newNode.setLeaf(true);
+        newNode.nextBlockPointer = nextBlockPointer;
 
-            BPlusNode newNode = new BPlusNode(container);
-            newNode.setLeaf(true);
+        // one entry over the capacity: two halves of about equal bytes both fit,
+        // and so do the entries before the new one, which fit before it came
+        newNode.rightEdgeSplit = appended && nextBlockPointer == 0 && container.isAppendOptimized();
+        int s_half_b = newNode.rightEdgeSplit ? size - 1 : byteCuts(2)[0];
 
-            int s_half_b = Mleaf / 2;
+        newNode.appendEntries(this, s_half_b, size);
+        var promotedKey = getKey(s_half_b);
+        truncate(s_half_b);
 
-            int s_half_e = size - 1;
+        nextBlockPointer = newNode.getPointer();
+        newNode.setPromotedKey(promotedKey);
+        container.metrics().split(1);
 
-            for (int i = s_half_b; i <= s_half_e; i++) {
-                var lKey = getKey(i);
-                var lData = getData(i);
-                newNode.insert(lData);
-            }
-            var promotedKey = getKey(s_half_b);
+        int[] promotedPointers = new int[2];
+        promotedPointers[0] = getPointer();
+        promotedPointers[1] = newNode.getPointer();
+        newNode.setPromotedPointers(promotedPointers);
 
-            for (int i = s_half_e; i >= s_half_b; i--) {
-                removeKey(i);
-                removeData(i);
-            }
-            nextBlockPointer = newNode.getPointer();
-            newNode.setPromotedKey(promotedKey);
+        writeToDisk();
+        newNode.writeToDisk();
+        return newNode;
+    }
 
-            int[] promotedPointers = new int[2];
-            promotedPointers[0] = getPointer();
-            promotedPointers[1] = newNode.getPointer();
-            newNode.setPromotedPointers(promotedPointers);
 
-            writeToDisk();
-            newNode.writeToDisk();
-            return newNode;
-        }
-        return null;
+    public BPlusNode insert(List<Object> key, int[] blockPointer) {
+        return insert(key, blockPointer, false);
     }
 
+    /**
+     * Inserts the promoted key and right pointer of child, a node that has
+     * just split, into this node and writes it. Returns the new right sibling
+     * if this node split in turn.
+     */
+    BPlusNode insertPromoted(BPlusNode child) {
+        return insert(child.getPromotedKey(), child.getPromotedPointers(), child.rightEdgeSplit);
+    }
 
-    public BPlusNode insert(List<Object> key, int[] blockPointer) {
+    private BPlusNode insert(List<Object> key, int[] blockPointer, boolean rightEdge) {
         if (isLeaf()) {
             throw new RuntimeException("Method Applies only to Non Leaf nodes");
         }
 
-        int size = keys.size();
-        boolean foundPos = false;
-        for (int i = 0; i < size; i++) {
-
-            List<Object> k = keys.get(i);
-
-            if (keyComparator.compare(key, k) < 0) {
-                keys.add(i, key);
-                children.add(i + 1, blockPointer[1]);
-                foundPos = true;
-                break;
-
-            } else if (keyComparator.compare(key, k) == 0) {
-                children.set(i + 1, blockPointer[1]);
-                foundPos = true;
-                break;
-            }
-        }
-        if (!foundPos) {
-            keys.add(size, key);
-            children.add(size + 1, blockPointer[1]);
+        int i = search(key);
+        boolean appended = false;
+        if (i >= 0) {
+            children[i + 1] = blockPointer[1];
+        } else {
+            i = -i - 1;
+            insertKey(i, key);
+            insertChildPtr(i + 1, blockPointer[1]);
+            appended = i == numKeys - 1;
         }
 
-        size = keys.size();
+        int size = numKeys;
         if (size <= Mnonleaf) {
             writeToDisk();
             return null;
@@ -365,127 +559,705 @@ public class BPlusNode {
         BPlusNode newNode = new BPlusNode(container);
         newNode.setLeaf(false);
 
-        int s_half_b = Mnonleaf / 2;
-        int s_half_e = size - 1;
+        // at the right edge the new last key moves up and leaves the new node
+        // with only the new child, see rightEdgeSplit
+        newNode.rightEdgeSplit = rightEdge && appended;
+        int s_half_b = newNode.rightEdgeSplit ? size - 1 : Mnonleaf / 2;
 
-        for (int i = s_half_b + 1; i <= s_half_e; i++) {
-            List lKey = getKey(i);
-            newNode.appendKey(lKey);
+        // keys right of the middle and the children they separate move to the new node
+        for (int k = s_half_b + 1; k < size; k++) {
+            newNode.appendKey(keys[k]);
         }
-
-        for (int i = s_half_e; i >= s_half_b + 1; i--) {
-            removeKey(i);
-        }
-
-        for (int i = s_half_b + 1; i <= s_half_e + 1; i++) {
-            newNode.appendChildPtr(getChildPtr(i));
-        }
-
-        for (int i = s_half_e + 1; i >= s_half_b + 1; i--) {
-            removeChildPtr(i);
+        for (int k = s_half_b + 1; k < numChildren; k++) {
+            newNode.appendChildPtr(children[k]);
         }
 
         int middleIndex = s_half_b;
-        newNode.setPromotedKey(keys.get(middleIndex));
+        newNode.setPromotedKey(keys[middleIndex]);
 
         int[] promotedPointers = new int[2];
         promotedPointers[0] = getChildPtr(middleIndex);
         promotedPointers[1] = newNode.getPointer();
         newNode.setPromotedPointers(promotedPointers);
 
-        keys.remove(middleIndex);
+        // the middle key moves up to the parent
+        truncate(middleIndex);
+        numChildren = middleIndex + 1;
+        container.metrics().split(1);
+
+        writeToDisk();
         newNode.writeToDisk();
         return newNode;
     }
 
+    /**
+     * Inserts the records batchValues[from, to) into the subtree under this node.
+     * batchKeys holds the key of each record; the batch is sorted by key and has
+     * no duplicate keys.
+     * <p>
+     * Each node on the way is visited once for the whole batch: the records are
+     * partitioned between the children, every changed node is written once, and
+     * an overflowing node is split into as many nodes as it needs in one go.
+     * Returns the new right siblings in key order, each carrying its promoted
+     * key, for the caller to link into the parent; the list is empty if this
+     * node did not split.
+     */
+    List<BPlusNode> insertBatch(List<List<Object>> batchKeys, List<List<Object>> batchValues, int from, int to) {
+        if (isLeaf()) {
+            mergeEntries(batchKeys, batchValues, from, to);
+            return split();
+        }
+
+        List<BPlusNode> promoted = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            int c = search(batchKeys.get(i));
+            c = c >= 0 ? c + 1 : -c - 1;
+
+            // the records up to the separator right of child c all go to c
+            int j = i + 1;
+            if (c < numKeys) {
+                while (j < to && keyComparator.compare(batchKeys.get(j), keys[c]) < 0) {
+                    j++;
+                }
+            } else {
+                j = to;
+            }
+
+            // the caller holds this node exclusively, so nothing can wait on a child for it
+            BPlusNode nextNode = readFromDisk(children[c]);
+            nextNode.latchExclusive();
+            try {
+                promoted.addAll(nextNode.insertBatch(batchKeys, batchValues, i, j));
+            } finally {
+                nextNode.unlatchExclusive();
+                release(nextNode);
+            }
+            i = j;
+        }
+
+        if (promoted.isEmpty()) {
+            return promoted;
+        }
+        for (BPlusNode sibling : promoted) {
+            addSeparator(sibling.getPromotedKey(), sibling.getPointer());
+        }
+        return split();
+    }
+
+    /**
+     * Merges sorted entries into this leaf. An entry whose key is already
+     * present replaces the stored record.
+     */
+    private void mergeEntries(List<List<Object>> batchKeys, List<List<Object>> batchValues, int from, int to) {
+        materialize();
+        List<Object>[] mergedKeys = newArray(Math.max(Mleaf + 1, numKeys + to - from));
+        List<Object>[] mergedData = newArray(mergedKeys.length);
+
+        int a = 0;
+        int b = from;
+        int m = 0;
+        while (a < numKeys || b < to) {
+            int c;
+            if (b == to) {
+                c = -1;
+            } else if (a == numKeys) {
+                c = 1;
+            } else {
+                c = keyComparator.compare(keys[a], batchKeys.get(b));
+            }
+
+            if (c < 0) {
+                mergedKeys[m] = keys[a];
+                mergedData[m++] = data[a++];
+            } else {
+                if (c == 0) {
+                    a++;
+                }
+                mergedKeys[m] = batchKeys.get(b);
+                mergedData[m++] = batchValues.get(b++);
+            }
+        }
+        container.addRecords(m - numKeys);
+        keys = mergedKeys;
+        data = mergedData;
+        numKeys = m;
+        usedBytes = entryBytes(0, m);
+    }
+
+    private void addSeparator(List<Object> key, int pointer) {
+        int i = search(key);
+        if (i >= 0) {
+            children[i + 1] = pointer;
+        } else {
+            i = -i - 1;
+            insertKey(i, key);
+            insertChildPtr(i + 1, pointer);
+        }
+    }
+
+    /**
+     * Writes this node, first splitting it into as few evenly filled nodes as
+     * hold its entries if it overflows. Returns the new right siblings, which
+     * are written as well.
+     */
+    List<BPlusNode> split() {
+        List<BPlusNode> siblings = new ArrayList<>();
+        int capacity = container.getLeafCapacity();
+        if (isLeaf() ? usedBytes <= capacity : numKeys <= Mnonleaf) {
+            writeToDisk();
+            return siblings;
+        }
+
+        if (isLeaf()) {
+            // a cut is at most half an entry off, so parts of capacity less one entry always fit
+            int room = capacity - container.getMaxLeafEntry();
+            int parts = Math.max(2, (usedBytes + room - 1) / room);
+            int[] cuts = byteCuts(parts);
+            int keep = cuts[0];
+
+            BPlusNode prev = this;
+            for (int p = 1; p < parts; p++) {
+                int start = cuts[p - 1];
+                int end = p < cuts.length ? cuts[p] : numKeys;
+                BPlusNode newNode = new BPlusNode(container);
+                newNode.setLeaf(true);
+                newNode.appendEntries(this, start, end);
+                newNode.setPromotedKey(newNode.keys[0]);
+                newNode.setPromotedPointers(new int[]{prev.getPointer(), newNode.getPointer()});
+
+                newNode.nextBlockPointer = prev.nextBlockPointer;
+                prev.nextBlockPointer = newNode.getPointer();
+                siblings.add(newNode);
+                prev = newNode;
+            }
+            truncate(keep);
+        } else {
+            // the key between two groups of children moves up to the parent
+            int n = numChildren;
+            int parts = (n + Mnonleaf) / (Mnonleaf + 1);
+            int start = n / parts + (n % parts > 0 ? 1 : 0);
+            int keep = start;
+
+            for (int p = 1; p < parts; p++) {
+                int size = n / parts + (p < n % parts ? 1 : 0);
+                BPlusNode newNode = new BPlusNode(container);
+                newNode.setLeaf(false);
+                for (int k = start; k < start + size - 1; k++) {
+                    newNode.appendKey(keys[k]);
+                }
+                for (int k = start; k < start + size; k++) {
+                    newNode.appendChildPtr(children[k]);
+                }
+                newNode.setPromotedKey(keys[start - 1]);
+                newNode.setPromotedPointers(new int[]{children[start - 1], newNode.getPointer()});
+                siblings.add(newNode);
+                start += size;
+            }
+            truncate(keep - 1);
+            numChildren = keep;
+        }
+
+        container.metrics().split(siblings.size());
+        writeToDisk();
+        for (BPlusNode sibling : siblings) {
+            sibling.writeToDisk();
+        }
+        return siblings;
+    }
+
     public Object getSmallestKey() {
-        return keys.get(0);
+        return key(0);
     }
 
     public int getPointer() {
         return blockPointer;
     }
 
-    public List<Integer> getChildren() {
-        return children;
+    /**
+     * Pointer to the next leaf in key order, 0 for the last leaf.
+     * Block 0 holds the file header or the root, so it can never be a right sibling.
+     */
+    public int getNextBlockPointer() {
+        return nextBlockPointer;
     }
 
-    public List<NodeBounds> getChildrenNodeBounds() {
-        List<NodeBounds> clist = new ArrayList<>();
-        int numChildren = children.size();
+    public int size() {
+        return numKeys;
+    }
+
+    public KeyComparator getKeyComparator() {
+        return keyComparator;
+    }
 
+    public List<Integer> getChildren() {
+        List<Integer> ret = new ArrayList<>(numChildren);
         for (int i = 0; i < numChildren; i++) {
+            ret.add(children[i]);
+        }
+        return ret;
+    }
 
-            List<Object> low = new ArrayList<>();
-            List<Object> high = new ArrayList<>();
-            int ptr;
+    /**
+     * Called on the root once it has split into itself and siblings: a new
+     * root above them becomes the root, and the tree gains a level. A big
+     * batch can leave more siblings than one node holds, in which case the
+     * new root splits in turn and another level is added. The caller holds
+     * this node exclusively; threads waiting on its latch find it is no
+     * longer the root and start again from the new one.
+     */
+    void growRoot(List<BPlusNode> siblings) {
+        if (!isRoot)
+            throw new RuntimeException("Method should be called for root only!");
 
-            if (i == 0) {
-                high = keys.get(i);
-            } else if (i == numChildren - 1) {
-                low = keys.get(i - 1);
-            } else {
-                low = keys.get(i - 1);
-                high = keys.get(i);
+        BPlusNode root = this;
+        int levels = 0;
+        while (!siblings.isEmpty()) {
+            BPlusNode parent = new BPlusNode(container);
+            parent.setLeaf(false);
+            parent.appendChildPtr(root.getPointer());
+            for (BPlusNode sibling : siblings) {
+                parent.appendKey(sibling.getPromotedKey());
+                parent.appendChildPtr(sibling.getPointer());
             }
-            ptr = children.get(i);
+            siblings = parent.split();
+            root = parent;
+            levels++;
+        }
+        container.metrics().rootSplit(levels);
+        changeRoot(root, levels);
+    }
 
-            NodeBounds n = new NodeBounds(low, high, ptr);
-            clist.add(n);
+    /**
+     * Fixes an underflow in child, the child of this node on the way to key.
+     * The child is merged with a sibling if the two fit in one node, otherwise
+     * entries move over from the sibling until both are about half full.
+     * Every changed node is written; a node merged away is marked deleted and
+     * its block released, and its separator is removed from this node.
+     * <p>
+     * The caller holds this node and child exclusively. Siblings are latched
+     * left to right, the order range cursors follow the leaves in, so the
+     * child is let go while its left sibling is latched; holding this node
+     * keeps every writer away from both meanwhile.
+     */
+    void rebalance(BPlusNode child, List<Object> key) {
+        int i = search(key);
+        i = i >= 0 ? i + 1 : -i - 1;
+
+        BPlusNode left;
+        BPlusNode right;
+        BPlusNode sibling;
+        int separator;
+        if (i > 0) {
+            sibling = readFromDisk(children[i - 1]);
+            child.unlatchExclusive();
+            sibling.latchExclusive();
+            child.latchExclusive();
+            left = sibling;
+            right = child;
+            separator = i - 1;
+        } else {
+            sibling = readFromDisk(children[1]);
+            sibling.latchExclusive();
+            left = child;
+            right = sibling;
+            separator = 0;
+        }
+
+        try {
+            boolean fits = left.isLeaf
+                    ? left.usedBytes + right.usedBytes <= container.getLeafCapacity()
+                    : left.numChildren + right.numChildren <= Mnonleaf + 1;
+            if (fits) {
+                left.mergeFrom(right, keys[separator]);
+                removeKey(separator);
+                removeChildPtr(separator + 1);
+                right.deleted = true;
+                releaseBlock(right);
+                container.metrics().merge();
+            } else {
+                keys[separator] = left.redistribute(right, keys[separator]);
+                right.writeToDisk();
+            }
+            left.writeToDisk();
+            writeToDisk();
+        } finally {
+            sibling.unlatchExclusive();
+            release(sibling);
         }
-        return clist;
     }
 
-    public void addChildren(BPlusNode oldRoot, BPlusNode newChild) {
+    /**
+     * Appends every entry of right, the next sibling, to this node. For
+     * non-leaf nodes separator, the parent key between the two, comes down
+     * between their keys.
+     */
+    private void mergeFrom(BPlusNode right, List<Object> separator) {
+        if (isLeaf) {
+            appendEntries(right, 0, right.numKeys);
+            nextBlockPointer = right.nextBlockPointer;
+            return;
+        }
+        appendKey(separator);
+        for (int k = 0; k < right.numKeys; k++) {
+            appendKey(right.keys[k]);
+        }
+        for (int k = 0; k < right.numChildren; k++) {
+            appendChildPtr(right.children[k]);
+        }
+    }
 
+    /**
+     * Evens out this node and right, its next sibling, and returns the new
+     * separator between them.
+     */
+    private List<Object> redistribute(BPlusNode right, List<Object> separator) {
+        if (isLeaf) {
+            materialize();
+            right.materialize();
+            // move entries one at a time while that brings both closer to half
+            int half = (usedBytes + right.usedBytes) / 2;
+            int n = 0;
+            if (usedBytes > right.usedBytes) {
+                int left = usedBytes;
+                while (n < numKeys - 1) {
+                    int b = entryBytes(data[numKeys - 1 - n]);
+                    if (Math.abs(left - b - half) >= Math.abs(left - half)) {
+                        break;
+                    }
+                    left -= b;
+                    n++;
+                }
+                return n > 0 ? shiftEntriesTo(right, n) : right.keys[0];
+            }
+            int left = usedBytes;
+            while (n < right.numKeys - 1) {
+                int b = entryBytes(right.data[n]);
+                if (Math.abs(left + b - half) >= Math.abs(left - half)) {
+                    break;
+                }
+                left += b;
+                n++;
+            }
+            return n > 0 ? takeEntriesFrom(right, n) : right.keys[0];
+        }
+        int half = (numChildren + right.numChildren + 1) / 2;
+        return numChildren > half
+                ? shiftChildrenTo(right, numChildren - half, separator)
+                : takeChildrenFrom(right, half - numChildren, separator);
+    }
 
+    /**
+     * Called on the root once it is down to a single child: the child becomes
+     * the root and this block is released, so the tree loses a level. The
+     * caller holds the root exclusively.
+     */
+    void collapseRoot() {
         if (!isRoot)
             throw new RuntimeException("Method should be called for root only!");
-        List key = newChild.getPromotedKey();
 
-        appendKey(key);
-        int[] promotedPointers = newChild.getPromotedPointers();
+        BPlusNode child = readFromDisk(children[0]);
+        child.latchExclusive();
+        try {
+            changeRoot(child, -1);
+            deleted = true;
+            releaseBlock(this);
+        } finally {
+            child.unlatchExclusive();
+            release(child);
+        }
+    }
 
-        appendChildPtr(oldRoot.getPointer());
-        appendChildPtr(promotedPointers[1]);
+    private void changeRoot(BPlusNode newRoot, int levels) {
+        try {
+            container.changeRoot(this, newRoot, levels);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public List<Object> getKey(int index) {
-        return keys.get(index);
+        return key(index);
     }
 
     public List get(List key) {
+        int i = search(key);
+        if (i < 0) {
+            return null;
+        }
+        return record(i);
+    }
 
-        int index = 0;
-        for (List k : keys) {
-            if (keyComparator.compare(k, key) == 0)
-                break;
-            ++index;
+    private void insertEntry(int index, List<Object> key, List<Object> value) {
+        materialize();
+        ensureKeyCapacity(numKeys + 1);
+        System.arraycopy(keys, index, keys, index + 1, numKeys - index);
+        System.arraycopy(data, index, data, index + 1, numKeys - index);
+        keys[index] = key;
+        data[index] = value;
+        numKeys++;
+        usedBytes += entryBytes(value);
+    }
+
+    /**
+     * Appends a leaf entry; the caller guarantees key order.
+     */
+    void appendEntry(List<Object> key, List<Object> value) {
+        materialize();
+        ensureKeyCapacity(numKeys + 1);
+        keys[numKeys] = key;
+        data[numKeys] = value;
+        numKeys++;
+        usedBytes += entryBytes(value);
+    }
+
+    /**
+     * Bytes the entries of this leaf take, see usedBytes.
+     */
+    int usedBytes() {
+        return usedBytes;
+    }
+
+    private int entryBytes(List<Object> record) {
+        return container.leafEntryBytes(record);
+    }
+
+    private int entryBytes(int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            n += entryBytes(record(i));
         }
-        if (index == 10)
-            return null;
+        return n;
+    }
 
-        return data.get(index);
+    /**
+     * The key of entry i, decoded from the page if the leaf has not been.
+     */
+    private List<Object> key(int i) {
+        ByteBuffer p = page;
+        return p == null ? keys[i] : recordSerDeserializer.readFields(p, recordOffset(p, i), container.getKeyPositions());
     }
 
-    private void removeKey(int index) {
-        keys.remove(index);
+    /**
+     * The record of entry i, decoded from the page if the leaf has not been.
+     */
+    private List<Object> record(int i) {
+        ByteBuffer p = page;
+        return p == null ? data[i] : recordSerDeserializer.read(p, recordOffset(p, i));
     }
 
-    public int getChildPtr(int index) {
-        return children.get(index);
+    private int recordOffset(ByteBuffer p, int i) {
+        if (p.get(1) == 2) {
+            return Short.toUnsignedInt(p.getShort(BPlusTreeImpl.LEAF_HEADER + BPlusTreeImpl.SLOT_SIZE * i));
+        }
+        return PACKED_RECORDS_START + container.getRecordSize() * i;
+    }
+
+    /**
+     * True while the entries of this leaf are read from its page, see page.
+     */
+    boolean isPageBacked() {
+        return page != null;
+    }
+
+    /**
+     * Decodes the entries of a leaf still backed by its page, before it changes.
+     */
+    private void materialize() {
+        ByteBuffer p = page;
+        if (p == null) {
+            return;
+        }
+        ensureKeyCapacity(numKeys);
+        for (int i = 0; i < numKeys; i++) {
+            data[i] = recordSerDeserializer.read(p, recordOffset(p, i));
+            keys[i] = keyFromRecord(data[i]);
+        }
+        page = null;
+    }
+
+    /**
+     * Where to cut the entries of this leaf into parts of about equal bytes:
+     * the index each part after the first starts at. Every cut is at the
+     * entry boundary closest to its share, and every part gets an entry.
+     */
+    private int[] byteCuts(int parts) {
+        int[] cuts = new int[parts - 1];
+        int i = 0;
+        int acc = 0;
+        for (int p = 1; p < parts; p++) {
+            long target = (long) usedBytes * p / parts;
+            int min = p == 1 ? 1 : cuts[p - 2] + 1;
+            int max = numKeys - (parts - p);
+            while (i < max) {
+                int b = entryBytes(record(i));
+                if (i >= min && Math.abs(acc + b - target) >= Math.abs(acc - target)) {
+                    break;
+                }
+                acc += b;
+                i++;
+            }
+            cuts[p - 1] = i;
+        }
+        return cuts;
+    }
+
+    /**
+     * Moves the last n entries of this leaf to the front of its right sibling.
+     * Returns the new separator between the two, the first key of right.
+     */
+    List<Object> shiftEntriesTo(BPlusNode right, int n) {
+        materialize();
+        right.materialize();
+        right.ensureKeyCapacity(right.numKeys + n);
+        System.arraycopy(right.keys, 0, right.keys, n, right.numKeys);
+        System.arraycopy(right.data, 0, right.data, n, right.numKeys);
+        System.arraycopy(keys, numKeys - n, right.keys, 0, n);
+        System.arraycopy(data, numKeys - n, right.data, 0, n);
+        right.numKeys += n;
+        right.usedBytes += entryBytes(numKeys - n, numKeys);
+        truncate(numKeys - n);
+        return right.keys[0];
+    }
+
+    /**
+     * Moves the last n children of this non-leaf node to the front of its right
+     * sibling. separator is the parent key between the two nodes; the new
+     * separator is returned.
+     */
+    List<Object> shiftChildrenTo(BPlusNode right, int n, List<Object> separator) {
+        right.ensureKeyCapacity(right.numKeys + n);
+        right.ensureChildCapacity(right.numChildren + n);
+
+        System.arraycopy(right.keys, 0, right.keys, n, right.numKeys);
+        right.keys[n - 1] = separator;
+        System.arraycopy(keys, numKeys - n + 1, right.keys, 0, n - 1);
+        right.numKeys += n;
+
+        System.arraycopy(right.children, 0, right.children, n, right.numChildren);
+        System.arraycopy(children, numChildren - n, right.children, 0, n);
+        right.numChildren += n;
+
+        List<Object> newSeparator = keys[numKeys - n];
+        truncate(numKeys - n);
+        numChildren -= n;
+        return newSeparator;
+    }
+
+    /**
+     * Moves the first n entries of right, the next sibling of this leaf, to
+     * the end of this leaf. Returns the new separator, the first key of right.
+     */
+    List<Object> takeEntriesFrom(BPlusNode right, int n) {
+        materialize();
+        right.materialize();
+        right.usedBytes -= right.entryBytes(0, n);
+        appendEntries(right, 0, n);
+        int moved = right.numKeys - n;
+        System.arraycopy(right.keys, n, right.keys, 0, moved);
+        System.arraycopy(right.data, n, right.data, 0, moved);
+        Arrays.fill(right.keys, moved, right.numKeys, null);
+        Arrays.fill(right.data, moved, right.numKeys, null);
+        right.numKeys = moved;
+        return right.keys[0];
+    }
+
+    /**
+     * Moves the first n children of right, the next sibling of this non-leaf
+     * node, to the end of this node. separator is the parent key between the
+     * two nodes; the new separator is returned.
+     */
+    List<Object> takeChildrenFrom(BPlusNode right, int n, List<Object> separator) {
+        appendKey(separator);
+        for (int k = 0; k < n - 1; k++) {
+            appendKey(right.keys[k]);
+        }
+        for (int k = 0; k < n; k++) {
+            appendChildPtr(right.children[k]);
+        }
+        List<Object> newSeparator = right.keys[n - 1];
+
+        int movedKeys = right.numKeys - n;
+        System.arraycopy(right.keys, n, right.keys, 0, movedKeys);
+        Arrays.fill(right.keys, movedKeys, right.numKeys, null);
+        right.numKeys = movedKeys;
+        System.arraycopy(right.children, n, right.children, 0, right.numChildren - n);
+        right.numChildren -= n;
+        return newSeparator;
+    }
+
+    int getNumChildren() {
+        return numChildren;
+    }
+
+    private void insertKey(int index, List<Object> key) {
+        ensureKeyCapacity(numKeys + 1);
+        System.arraycopy(keys, index, keys, index + 1, numKeys - index);
+        keys[index] = key;
+        numKeys++;
+    }
+
+    private void insertChildPtr(int index, int p) {
+        ensureChildCapacity(numChildren + 1);
+        System.arraycopy(children, index, children, index + 1, numChildren - index);
+        children[index] = p;
+        numChildren++;
+    }
+
+    /**
+     * Appends the leaf entries [from, to) of another node.
+     */
+    private void appendEntries(BPlusNode other, int from, int to) {
+        materialize();
+        other.materialize();
+        int n = to - from;
+        ensureKeyCapacity(numKeys + n);
+        System.arraycopy(other.keys, from, keys, numKeys, n);
+        System.arraycopy(other.data, from, data, numKeys, n);
+        numKeys += n;
+        usedBytes += other.entryBytes(from, to);
+    }
+
+    /**
+     * Drops every key (and leaf entry) from index on.
+     */
+    private void truncate(int index) {
+        materialize();
+        Arrays.fill(keys, index, numKeys, null);
+        if (isLeaf) {
+            usedBytes -= entryBytes(index, numKeys);
+            Arrays.fill(data, index, numKeys, null);
+        }
+        numKeys = index;
+    }
+
+    private void removeKey(int index) {
+        System.arraycopy(keys, index + 1, keys, index, numKeys - index - 1);
+        keys[--numKeys] = null;
     }
 
     private void removeChildPtr(int index) {
-        children.remove(index);
+        System.arraycopy(children, index + 1, children, index, numChildren - index - 1);
+        numChildren--;
     }
 
-    public List<Object> getData(int index) {
-        return data.get(index);
+    private void removeEntry(int index) {
+        materialize();
+        usedBytes -= entryBytes(data[index]);
+        int moved = numKeys - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(data, index + 1, data, index, moved);
+        numKeys--;
+        keys[numKeys] = null;
+        data[numKeys] = null;
     }
 
-    private void removeData(int index) {
-        data.remove(index);
+    public int getChildPtr(int index) {
+        return children[index];
+    }
+
+    public List<Object> getData(int index) {
+        return record(index);
     }
 
     public void setPromotedKey(List<Object> key) {
@@ -505,11 +1277,13 @@ public class BPlusNode {
     }
 
     public void appendKey(List<Object> key) {
-        keys.add(key);
+        ensureKeyCapacity(numKeys + 1);
+        keys[numKeys++] = key;
     }
 
     public void appendChildPtr(int p) {
-        children.add(p);
+        ensureChildCapacity(numChildren + 1);
+        children[numChildren++] = p;
     }
 
     public void writeToDisk() {
@@ -517,81 +1291,146 @@ public class BPlusNode {
         try {
             container.writeToDisk(this);
         } catch (IOException e) {
-            // throw a domain exception
+            throw new UncheckedIOException("cannot write block " + blockPointer, e);
         }
 
     }
 
-    private void readNode(DataInputStream ds) throws IOException {
+    private void readNode(DataInputStream ds, ByteBuffer page) throws IOException {
 
         byte type = ds.readByte();
 
-        if (type == 1) {
-            this.isLeaf = true;
+        if (type == 1 || type == 2) {
+            setLeaf(true);
         } else if (type == 0) {
-            this.isLeaf = false;
+            setLeaf(false);
         } else {
-            throw new RuntimeException("first byte of the block is not 0 or 1. Invalid");
+            throw new RuntimeException("node type byte of the block is not 0, 1 or 2. Invalid");
         }
-        if (isLeaf) {
-            readLeaf(ds);
+        if (type == 2) {
+            readSlottedLeaf(ds, page);
+        } else if (isLeaf) {
+            readLeaf(ds, page);
         } else {
             readNonLeaf(ds);
         }
     }
 
-    private void readLeaf(DataInputStream ds) throws IOException {
+    /**
+     * Reads the header of a leaf; its entries stay in the page, see page.
+     * A leaf without slots in a tree with string fields was written before
+     * slotted leaves, with records of their own length one after the other,
+     * so it is decoded in full; it is written back slotted once it changes.
+     */
+    private void readLeaf(DataInputStream ds, ByteBuffer page) throws IOException {
 
         int numItems = ds.readInt();
+        if (container.hasSlottedLeaves()) {
+            ensureKeyCapacity(numItems);
+            int offset = PACKED_RECORDS_START;
+            for (int i = 0; i < numItems; i++) {
+                data[i] = recordSerDeserializer.read(page, offset);
+                keys[i] = keyFromRecord(data[i]);
+                offset += recordSerDeserializer.size(data[i]);
+                usedBytes += entryBytes(data[i]);
+            }
+            numKeys = numItems;
+            this.nextBlockPointer = page.getInt(offset);
+            return;
+        }
+        numKeys = numItems;
+        usedBytes = container.getRecordSize() * numItems;
+        this.nextBlockPointer = page.getInt(PACKED_RECORDS_START + usedBytes);
+        this.page = page;
+    }
 
-        for (int i = 0; i < numItems; i++) {
+    private void readSlottedLeaf(DataInputStream ds, ByteBuffer page) throws IOException {
 
-            List<Object> dataItem = recordSerDeserializer.read(ds);
-            data.add(dataItem);
-            List<Object> key = keyFromRecord(dataItem);
-            keys.add(key);
-        }
+        int numItems = ds.readInt();
         this.nextBlockPointer = ds.readInt();
+        int heapStart = ds.readInt();
+        numKeys = numItems;
+        usedBytes = BPlusTreeImpl.SLOT_SIZE * numItems + container.getPageSize() - heapStart;
+        this.page = page;
     }
 
-    private List<Object> keyFromRecord(List<Object> dataItem) {
-        List<Object> ret = new ArrayList<>();
-        for (String fieldName : keySpec) {
-            Object val = dataItem.get(fieldPositionMap.get(fieldName));
-            ret.add(val);
-        }
-        return ret;
+    List<Object> keyFromRecord(List<Object> dataItem) {
+        return container.keyFromRecord(dataItem);
     }
 
     public void writeLeaf(DataOutputStream ds) throws IOException {
+        if (container.hasSlottedLeaves()) {
+            writeSlottedLeaf(ds);
+            return;
+        }
         ds.writeByte(1);
 
         ds.writeByte(1);
-        int num = data.size();
+        int num = numKeys;
         ds.writeInt(num);
 
         for (int i = 0; i < num; i++) {
-            List<Object> val = data.get(i);
+            List<Object> val = record(i);
             recordSerDeserializer.write(val, ds);
         }
         ds.writeInt(nextBlockPointer);
     }
 
+    /**
+     * Writes a leaf with variable length records: after the header, a slot per
+     * entry holding the offset of its record in the page, then free space, then
+     * the records packed against the end of the page in slot order.
+     */
+    private void writeSlottedLeaf(DataOutputStream ds) throws IOException {
+        int num = numKeys;
+        int[] sizes = new int[num];
+        int heapSize = 0;
+        for (int i = 0; i < num; i++) {
+            sizes[i] = recordSerDeserializer.size(record(i));
+            heapSize += sizes[i];
+        }
+        int heapStart = container.getPageSize() - heapSize;
+        int free = heapStart - BPlusTreeImpl.LEAF_HEADER - BPlusTreeImpl.SLOT_SIZE * num;
+        if (free < 0) {
+            throw new IllegalStateException("leaf " + blockPointer + " is " + (-free)
+                    + " bytes over the page size");
+        }
+
+        ds.writeByte(1);
+
+        ds.writeByte(2);
+        ds.writeInt(num);
+        ds.writeInt(nextBlockPointer);
+        ds.writeInt(heapStart);
+
+        int offset = heapStart;
+        for (int i = 0; i < num; i++) {
+            ds.writeShort(offset);
+            offset += sizes[i];
+        }
+        ds.write(new byte[free]);
+        for (int i = 0; i < num; i++) {
+            recordSerDeserializer.write(record(i), ds);
+        }
+    }
+
     private void readNonLeaf(DataInputStream ds) throws IOException {
 
         int numKeys = ds.readInt();
+        ensureKeyCapacity(numKeys);
 
         for (int i = 0; i < numKeys; i++) {
-            List<Object> key = keySerDeserializer.read(ds);
-            keys.add(key);
+            keys[i] = keySerDeserializer.read(ds);
         }
+        this.numKeys = numKeys;
 
         int numChildPointers = ds.readInt();
+        ensureChildCapacity(numChildPointers);
 
         for (int i = 0; i < numChildPointers; i++) {
-            int ptr = ds.readInt();
-            children.add(ptr);
+            children[i] = ds.readInt();
         }
+        numChildren = numChildPointers;
     }
 
     public void writeNonLeaf(DataOutputStream ds) throws IOException {
@@ -599,54 +1438,44 @@ public class BPlusNode {
 
         ds.writeByte(0);
 
-        int num_keys = keys.size();
+        int num_keys = numKeys;
 
         ds.writeInt(num_keys);
 
         for (int i = 0; i < num_keys; i++) {
-            List <Object>val = keys.get(i);
+            List <Object>val = keys[i];
             keySerDeserializer.write(val, ds);
         }
-        int numChildPointers = children.size();
+        int numChildPointers = numChildren;
         ds.writeInt(numChildPointers);
 
         for (int i = 0; i < numChildPointers; i++) {
-            Integer ptr = children.get(i);
-            ds.writeInt(ptr.intValue());
+            ds.writeInt(children[i]);
         }
     }
 
 
-    public void moveBlock() {
-        blockPointer = container.getNextBlockPointer();
-        writeToDisk();
-
-    }
     public BPlusNode readFromDisk(int pointer) {
 
         try {
             return container.readFromDisk(pointer);
-        } catch (Exception e) {
-            System.out.println(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read block " + pointer, e);
         }
-        return null;
     }
 
+    private void release(BPlusNode node) {
+        if (node != null) {
+            container.unpin(node);
+        }
+    }
 
-    public boolean isNodeValid(List low, List high) {
-
-        for (int i = 0; i < keys.size(); i++) {
-            List<Object> key = keys.get(i);
-            if (keyComparator.compare(low, key) <= 0 && keyComparator.compare(key, high) <= 0) {
-                continue;
-            }
-            else {
-                System.out.println("Invalid node: low =" + low + " high=" + high + "key =" + key);
-                printNode();
-                return false;
-            }
+    private void releaseBlock(BPlusNode node) {
+        try {
+            container.releaseBlock(node.getPointer());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return true;
     }
 
 
@@ -661,10 +1490,10 @@ public class BPlusNode {
 
         if (isLeaf) {
             System.out.println("Leaf ");
-            System.out.println("data : " + keys.size());
+            System.out.println("data : " + numKeys);
             StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < data.size(); i++) {
-                sb.append(data.get(i)).append(",");
+            for (int i = 0; i < numKeys; i++) {
+                sb.append(record(i)).append(",");
             }
             System.out.println(sb);
             System.out.println("--- End Node ");
@@ -673,11 +1502,11 @@ public class BPlusNode {
         }
         else {
             System.out.println("Non leaf \n");
-            System.out.println("Keys: " + keys.size() + "keys \n");
+            System.out.println("Keys: " + numKeys + "keys \n");
 
             StringBuilder kb = new StringBuilder();
-            for (int i = 0; i < keys.size(); i++) {
-                kb.append(keys.get(i));
+            for (int i = 0; i < numKeys; i++) {
+                kb.append(key(i));
                 kb.append(',');
             }
 
@@ -686,8 +1515,8 @@ public class BPlusNode {
             System.out.println("Child Pointers: \n");
 
             StringBuilder cb = new StringBuilder();
-            for (int i = 0; i < children.size(); i++) {
-                cb.append(children.get(i));
+            for (int i = 0; i < numChildren; i++) {
+                cb.append(children[i]);
                 cb.append(',');
             }
             System.out.println(cb);
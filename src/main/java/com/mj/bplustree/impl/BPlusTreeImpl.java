@@ -1,49 +1,209 @@
 package com.mj.bplustree.impl;
 
 import com.mj.bplustree.BPlusTree;
-import com.mj.bplustree.NodeBounds;
+import com.mj.bplustree.Cursor;
+import com.mj.bplustree.Durability;
+import com.mj.bplustree.TreeMetrics;
+import com.mj.bplustree.TreeOptions;
+import com.mj.bplustree.TreeStats;
+import com.mj.bplustree.VerifyReport;
 import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.db.buffer.BufferPool;
+import com.mj.db.buffer.PageLoader;
+import com.mj.db.serialization.KeySerDeserializer;
+import com.mj.db.serialization.RecordSerDeserializer;
+import com.mj.db.storage.MappedPageStore;
+import com.mj.db.storage.PageStore;
+import com.mj.db.storage.RandomAccessPageStore;
+import com.mj.db.storage.StoreType;
+import com.mj.db.wal.WriteAheadLog;
+import com.mj.util.KeyComparator;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
 public class BPlusTreeImpl implements BPlusTree {
 
-    private final int BLOCK_SIZE = 1024;
+    private final int BLOCK_SIZE;
     private final int VALUE_SIZE = 8;
     private int keySize;
     private int recordSize;
-    private RandomAccessFile treeStore;
-    private BPlusNode root = null;
-    private int nextBlockPointer = 0;
+    private PageStore treeStore;
+    private BufferPool<BPlusNode> bufferPool;
+    // made once, so a pin does not allocate a method reference each time
+    private final PageLoader<BPlusNode> blockLoader = this::loadBlock;
+    private final AtomicInteger nextBlockPointer = new AtomicInteger();
+
+    /**
+     * The free list: released blocks, most recently freed first. A free block
+     * has 0 in its used byte followed by the number of the next free block,
+     * so only the head and the length are kept here. Guarded by freeLock.
+     */
+    private final Object freeLock = new Object();
+    private int freeListHead = 0;
+    private int freeBlockCount = 0;
     private boolean newTree = false;
 
+    /**
+     * rootPointer: the block holding the root, 0 while the tree is empty. A
+     * root split or collapse makes another block the root, see changeRoot.
+     * <p>
+     * height: the number of levels, 0 while the tree is empty.
+     * <p>
+     * recordCount: the records in the leaves.
+     * <p>
+     * All three are kept in the file header; see FileHeader.
+     */
+    private volatile int rootPointer = 0;
+    private volatile int height = 0;
+    private final LongAdder recordCount = new LongAdder();
+
     private int MLeaf = 0;
     private int MNonLeaf = 0;
 
+    /**
+     * Leaves are filled by bytes, not by number of records.
+     * <p>
+     * slottedLeaves: set when records can vary in size, that is the schema
+     * has a string field. Such leaves are slotted pages, see
+     * BPlusNode.writeLeaf; fixed size records are stored back to back.
+     * <p>
+     * leafCapacity: the bytes a leaf has for its entries.
+     * <p>
+     * maxLeafEntry: the most bytes one entry can take, a record of
+     * recordSize and its slot.
+     * <p>
+     * MLeaf is the number of entries of maxLeafEntry bytes a leaf holds.
+     */
+    static final int LEAF_HEADER = 14;
+    static final int SLOT_SIZE = 2;
+    private boolean slottedLeaves;
+    private int leafCapacity;
+    private int maxLeafEntry;
+
     private List<String> keySpec = null;
     private List<Field> tableSpec;
     private Map<String, Field> tableSpecMap = new HashMap<>();
     private Map<String, Integer> fieldPositionMap = new HashMap<>();
 
+    /**
+     * keyPositions: the position in a record of each key field.
+     * <p>
+     * The codecs and the comparator are built once from the schema and
+     * shared by every node.
+     */
+    private final int[] keyPositions;
+    private final KeySerDeserializer keySerDeserializer;
+    private final RecordSerDeserializer recordSerDeserializer;
+    private final KeyComparator keyComparator;
+
     private boolean isClustered = false;
 
+    /**
+     * appendOptimized: see TreeOptions.setAppendOptimized.
+     * <p>
+     * rightmostLeaf: the last leaf as of the last insert that went to it, a
+     * hint for inserts past the last key. It is only trusted if it is still
+     * the node the buffer pool holds for its block, see latchRightmostLeaf.
+     */
+    private final boolean appendOptimized;
+    private volatile BPlusNode rightmostLeaf;
+
+    /**
+     * wal: redo log of changed pages, null when the tree writes through.
+     * <p>
+     * durability: whether an operation syncs the log itself before it
+     * returns, ON_COMMIT, or leaves that to logSyncer, PERIODIC, a thread
+     * that syncs it every sync interval. With GROUP every
+     * groupCommitOperations-th commit, counted by groupCommits, syncs the
+     * log for the group and logSyncer syncs what is left of a group.
+     * <p>
+     * operationPages: pages changed by the running operation of each thread.
+     * With the log on they stay pinned until the operation commits, so none of
+     * them can be written to the index file before its image is in the log.
+     * <p>
+     * operationFreed: blocks released by the running operation of each
+     * thread, put on the free list once it has committed.
+     * <p>
+     * operationRootChanged: set when the running operation of a thread moved
+     * the root, so the header is logged with its pages.
+     * <p>
+     * bulkLoading: set while bulkLoad builds the tree under the write side
+     * of operationLock. Its blocks go straight to the index file and only the
+     * header that makes the new root current is logged, so the load needs
+     * neither a pin nor a log image per block.
+     * <p>
+     * operationLock: every mutating operation holds the read side; a
+     * checkpoint, bulk load or close takes the write side to run alone.
+     * <p>
+     * The tree is safe for concurrent use. Readers descend with shared page
+     * latches, each child latched before its parent is released. A writer
+     * first descends the same way and latches only the leaf exclusively; if
+     * the leaf could split it starts again, latching the path exclusively from
+     * the root and releasing the ancestors of every node that cannot split.
+     */
+    private WriteAheadLog wal;
+    private final Durability durability;
+    private ScheduledExecutorService logSyncer;
+    private final int groupCommitOperations;
+    private final AtomicLong groupCommits = new AtomicLong();
+    private long checkpointBytes;
+    private final ThreadLocal<Map<Integer, BPlusNode>> operationPages = ThreadLocal.withInitial(LinkedHashMap::new);
+    private final ThreadLocal<List<Integer>> operationFreed = ThreadLocal.withInitial(ArrayList::new);
+    private final ThreadLocal<Boolean> operationRootChanged = ThreadLocal.withInitial(() -> false);
+    private boolean bulkLoading;
+    private final ReentrantReadWriteLock operationLock = new ReentrantReadWriteLock();
+
+    /**
+     * mbeanName: the name the metrics are registered under with the platform
+     * MBean server, null unless TreeOptions.setJmxEnabled.
+     */
+    private final TreeMetricsImpl metrics = new TreeMetricsImpl(this);
+    private ObjectName mbeanName;
+
     public BPlusTreeImpl(String storeDir, String filename,
                          List<String> keySpec, List<Field> tableSpec) throws IOException {
+        this(storeDir, filename, keySpec, tableSpec, new TreeOptions());
+    }
 
-        this.keySpec = keySpec;
-        this.tableSpec = tableSpec;
+    /**
+     * Opens an existing tree with the schema stored in its file.
+     */
+    public BPlusTreeImpl(String filename, TreeOptions options) throws IOException {
+        this(null, filename, null, null, options);
+    }
 
-        int i = 0;
-        for (Field f : tableSpec) {
-            tableSpecMap.put(f.getName(), f);
-            fieldPositionMap.put(f.getName(), i);
-            i++;
-        }
+    /**
+     * Creates a tree, or opens an existing one. The schema of an existing
+     * file is checked against keySpec and tableSpec, which may be left null
+     * to take it from the file, before any page is read.
+     */
+    public BPlusTreeImpl(String storeDir, String filename,
+                         List<String> keySpec, List<Field> tableSpec, TreeOptions options) throws IOException {
 
         String fName;
 
@@ -53,23 +213,174 @@ public class BPlusTreeImpl implements BPlusTree {
             fName = filename;
         }
 
-        File f = new File(fName);
+        // an existing file keeps the page size and the schema it was created with
+        FileHeader header = FileHeader.read(Paths.get(fName));
+        newTree = header == null;
+        BLOCK_SIZE = newTree ? options.getPageSize() : header.getPageSize();
+
+        if (!newTree && header.getTableSpec() != null) {
+            if (tableSpec != null && !tableSpec.equals(header.getTableSpec())) {
+                throw new IllegalArgumentException(fName + " holds records " + header.getTableSpec()
+                        + ", not " + tableSpec);
+            }
+            if (keySpec != null && !keySpec.equals(header.getKeySpec())) {
+                throw new IllegalArgumentException(fName + " is keyed on " + header.getKeySpec()
+                        + ", not " + keySpec);
+            }
+            tableSpec = header.getTableSpec();
+            keySpec = header.getKeySpec();
+        } else if (tableSpec == null || keySpec == null) {
+            if (newTree) {
+                throw new NoSuchFileException(fName);
+            }
+            throw new IllegalArgumentException(fName + " has no stored schema, it must be opened with one");
+        }
+
+        this.keySpec = List.copyOf(keySpec);
+        this.tableSpec = List.copyOf(tableSpec);
+
+        int i = 0;
+        for (Field f : tableSpec) {
+            tableSpecMap.put(f.getName(), f);
+            fieldPositionMap.put(f.getName(), i);
+            i++;
+        }
+        keyPositions = new int[keySpec.size()];
+        for (int k = 0; k < keyPositions.length; k++) {
+            Integer position = fieldPositionMap.get(keySpec.get(k));
+            if (position == null) {
+                throw new IllegalArgumentException("key field " + keySpec.get(k) + " is not in " + tableSpec);
+            }
+            keyPositions[k] = position;
+        }
+        FileHeader.encodeSchema(this.tableSpec, this.keySpec, BLOCK_SIZE);
 
-        newTree = !f.exists();
+        // stateless, so shared by every node of the tree
+        keySerDeserializer = new KeySerDeserializer(tableSpecMap, this.keySpec);
+        recordSerDeserializer = new RecordSerDeserializer(this.tableSpec);
+        keyComparator = new KeyComparator(this.keySpec, tableSpecMap);
 
         keySize = calcKeySize();
-        System.out.println("keySize is " + keySize);
         recordSize = calcRecordSize();
-        System.out.println("recordSize is " + recordSize);
 
-        MLeaf = (BLOCK_SIZE - 14) / (recordSize);
-        MNonLeaf = (BLOCK_SIZE - 14) / (recordSize);
-        System.out.println("MLeaf is " + MLeaf);
-        System.out.println("MNonLeaf is " + MLeaf);
+        // a leaf holds records; a non-leaf node only keys and one more 4 byte child pointer than keys
+        slottedLeaves = this.tableSpec.stream().anyMatch(f -> f.getFieldType() == FieldType.string);
+        leafCapacity = BLOCK_SIZE - LEAF_HEADER;
+        maxLeafEntry = recordSize + (slottedLeaves ? SLOT_SIZE : 0);
+        MLeaf = leafCapacity / maxLeafEntry;
+        MNonLeaf = (BLOCK_SIZE - 14) / (keySize + 4);
+        if (MLeaf < 2 || MNonLeaf < 2) {
+            throw new IllegalArgumentException("page size " + BLOCK_SIZE
+                    + " does not hold two records of " + recordSize + " bytes");
+        }
+        for (Field f : this.tableSpec) {
+            if (f.getFieldType() == FieldType.string && f.getLength() <= 0) {
+                throw new IllegalArgumentException("string field " + f.getName() + " needs a length");
+            }
+        }
+
+        int cachedBlocks = (int) Math.max(8, options.getCacheSizeBytes() / BLOCK_SIZE);
+        bufferPool = new BufferPool<>(cachedBlocks, options.getEvictionPolicy().get(),
+                (pointer, node) -> {
+                    if (wal != null) {
+                        wal.syncCommitted();
+                    }
+                    writeBlock(node);
+                });
+
+        if (options.getStoreType() == StoreType.MEMORY_MAPPED) {
+            treeStore = new MappedPageStore(fName, BLOCK_SIZE, options.getMappedChunkSize());
+        } else {
+            treeStore = new RandomAccessPageStore(fName, BLOCK_SIZE);
+        }
+        appendOptimized = options.isAppendOptimized();
+        durability = options.getDurability();
+        groupCommitOperations = options.getGroupCommitOperations();
+        if (durability != Durability.WRITE_THROUGH) {
+            wal = new WriteAheadLog(Paths.get(fName + ".wal"));
+            checkpointBytes = options.getCheckpointBytes();
+        }
+        if (newTree) {
+            nextBlockPointer.set(1);
+        } else {
+            load(fName);
+        }
+        // until close writes it back, the header on disk says the tree is open
+        writeHeader(false);
+        treeStore.sync();
+
+        if (durability == Durability.PERIODIC || durability == Durability.GROUP) {
+            startLogSyncer(fName, options.getSyncIntervalMillis());
+        }
+
+        if (options.isJmxEnabled()) {
+            try {
+                registerMBean(fName);
+            } catch (IllegalStateException e) {
+                close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Registers the metrics as an MXBean named after the absolute path of the
+     * file. Throws IllegalStateException if that name is taken, by the same
+     * file opened twice in this JVM.
+     */
+    private void registerMBean(String fName) {
+        try {
+            ObjectName name = new ObjectName("com.mj.bplustree:type=BPlusTree,file="
+                    + ObjectName.quote(Paths.get(fName).toAbsolutePath().toString()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            mbeanName = name;
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register the metrics of " + fName, e);
+        }
+    }
+
+    private void startLogSyncer(String fName, long intervalMillis) {
+        logSyncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log sync " + fName);
+            t.setDaemon(true);
+            return t;
+        });
+        logSyncer.scheduleWithFixedDelay(() -> {
+            try {
+                wal.syncCommitted();
+            } catch (IOException e) {
+                // the log keeps the failure and fails the next operation with it
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
 
-        treeStore = new RandomAccessFile(fName, "rw");
-        load();
+    /**
+     * Stops the log sync thread once a sync it is running has finished. The
+     * log is synced again when it is closed.
+     */
+    private void stopLogSyncer() {
+        if (logSyncer == null) {
+            return;
+        }
+        logSyncer.shutdown();
+        try {
+            logSyncer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logSyncer = null;
+    }
 
+    private void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            // already gone
+        }
+        mbeanName = null;
     }
 
     private int calcRecordSize() {
@@ -105,73 +416,781 @@ public class BPlusTreeImpl implements BPlusTree {
         return fieldPositionMap;
     }
 
+    List<Object> keyFromRecord(List<Object> record) {
+        List<Object> key = new ArrayList<>(keyPositions.length);
+        for (int position : keyPositions) {
+            key.add(record.get(position));
+        }
+        return key;
+    }
+
+    /**
+     * The position in a record of each key field, in key order.
+     */
+    int[] getKeyPositions() {
+        return keyPositions;
+    }
+
+    int getRecordSize() {
+        return recordSize;
+    }
+
+    KeySerDeserializer getKeySerDeserializer() {
+        return keySerDeserializer;
+    }
+
+    RecordSerDeserializer getRecordSerDeserializer() {
+        return recordSerDeserializer;
+    }
+
+    public KeyComparator getKeyComparator() {
+        return keyComparator;
+    }
+
+    int getRootPointer() {
+        return rootPointer;
+    }
+
+    /**
+     * Levels in the tree, 0 if it is empty.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Records in the tree. Exact once concurrent operations have returned.
+     */
+    public long getRecordCount() {
+        return recordCount.sum();
+    }
+
+    void addRecords(long n) {
+        recordCount.add(n);
+    }
+
+    public int getPageSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public TreeMetrics getMetrics() {
+        return metrics;
+    }
+
+    TreeMetricsImpl metrics() {
+        return metrics;
+    }
+
     protected int getNumKeysPerBlock() {
         return MNonLeaf;
     }
 
+    /**
+     * Leaf entries of the largest size that fit in a block.
+     */
     protected int getNumRecordsPerBlock() {
         return MLeaf;
     }
 
+    /**
+     * Bytes a leaf has for its entries.
+     */
+    int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    /**
+     * The most bytes a single leaf entry can take.
+     */
+    int getMaxLeafEntry() {
+        return maxLeafEntry;
+    }
+
+    boolean hasSlottedLeaves() {
+        return slottedLeaves;
+    }
+
+    /**
+     * Bytes record takes in a leaf, its slot included. Throws
+     * IllegalArgumentException for a string longer than its field.
+     */
+    int leafEntryBytes(List<Object> record) {
+        return slottedLeaves ? SLOT_SIZE + recordSerDeserializer.size(record) : recordSize;
+    }
+
+    /**
+     * Pins the root, or returns null if the tree is empty. The root may have
+     * moved by the time the caller latches it, see latchRoot.
+     */
+    BPlusNode pinRoot() throws IOException {
+        while (true) {
+            int pointer = rootPointer;
+            if (pointer == 0) {
+                return null;
+            }
+            // null if a collapse freed the block after the pointer was read
+            BPlusNode root = readFromDisk(pointer);
+            if (root != null) {
+                return root;
+            }
+        }
+    }
+
+    /**
+     * Pins and latches the root, or returns null if the tree is empty. A
+     * thread can read the root pointer just before a split or collapse moves
+     * the root elsewhere, and get the latch only after; the node it holds is
+     * then no longer marked root, and it starts over.
+     */
+    BPlusNode latchRoot(boolean exclusive) throws IOException {
+        while (true) {
+            BPlusNode root = pinRoot();
+            if (root == null) {
+                return null;
+            }
+            if (exclusive) {
+                root.latchExclusive();
+            } else {
+                root.latchShared();
+            }
+            if (root.isRoot()) {
+                return root;
+            }
+            release(root, exclusive);
+        }
+    }
+
+    private synchronized BPlusNode pinOrCreateRoot() throws IOException {
+        BPlusNode root = pinRoot();
+        if (root == null) {
+            root = new BPlusNode(this);
+            root.setLeaf(true);
+            writeToDisk(root);
+            changeRoot(null, root, 1);
+            root = pinRoot();
+        }
+        return root;
+    }
+
+    /**
+     * Makes newRoot the root in place of oldRoot, null if the tree was empty,
+     * and adds levels to the height. newRoot is already written; only once the
+     * pointer is published is the node in the buffer pool marked root, since
+     * a copy loaded before would not be. The caller holds oldRoot exclusively,
+     * so no other thread moves the root meanwhile.
+     */
+    void changeRoot(BPlusNode oldRoot, BPlusNode newRoot, int levels) throws IOException {
+        rootPointer = newRoot.getPointer();
+        height += levels;
+        BPlusNode pooled = readFromDisk(rootPointer);
+        pooled.setRoot(true);
+        newRoot.setRoot(true);
+        unpin(pooled);
+        if (oldRoot != null) {
+            oldRoot.setRoot(false);
+        }
+
+        if (wal != null) {
+            // logged with the operation's pages, see logOperation
+            operationRootChanged.set(true);
+        } else {
+            writeHeader(false);
+        }
+    }
+
+    /**
+     * Writes the header page from the in-memory state. clean is only set by
+     * close, once every page is on disk.
+     */
+    private void writeHeader(boolean clean) throws IOException {
+        writePage(0, header(clean).encode());
+    }
+
+    /**
+     * Writes a block of the index file and counts the bytes.
+     */
+    private void writePage(int pointer, byte[] page) throws IOException {
+        treeStore.write(pointer, page);
+        metrics.bytesWritten(page.length);
+    }
+
+    private FileHeader header(boolean clean) {
+        synchronized (freeLock) {
+            return new FileHeader(BLOCK_SIZE, rootPointer, height, recordCount.sum(),
+                    freeListHead, freeBlockCount, nextBlockPointer.get(), clean, tableSpec, keySpec);
+        }
+    }
+
+    /**
+     * Drops the latch and the pin taken on a node.
+     */
+    void release(BPlusNode node, boolean exclusive) {
+        if (exclusive) {
+            node.unlatchExclusive();
+        } else {
+            node.unlatchShared();
+        }
+        unpin(node);
+    }
+
+    private void releaseAll(Deque<BPlusNode> latched) {
+        while (!latched.isEmpty()) {
+            release(latched.pollLast(), true);
+        }
+    }
 
     @Override
     public List find(List key) {
-        return root.find(key);
+        long start = System.nanoTime();
+        try {
+            BPlusNode node = latchRoot(false);
+            if (node == null) {
+                return null;
+            }
+            try {
+                // latch coupling: the child is latched before its parent is let go
+                while (!node.isLeaf()) {
+                    BPlusNode child = readFromDisk(node.childPointerFor(key));
+                    child.latchShared();
+                    release(node, false);
+                    node = child;
+                }
+                return node.find(key);
+            } finally {
+                release(node, false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            metrics.finds.record(System.nanoTime() - start);
+        }
     }
 
-    public byte[] getNext() {
+    @Override
+    public Cursor scan(List lowKey, List highKey, boolean lowInclusive, boolean highInclusive) {
+        try {
+            return new RangeCursor(this, lowKey, highKey, lowInclusive, highInclusive);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Descends to the leaf for key with shared latches and returns it pinned
+     * and latched exclusively, or null if the tree is empty.
+     */
+    private BPlusNode latchLeafForUpdate(List<Object> key) throws IOException {
+        while (true) {
+            BPlusNode node = latchRoot(false);
+            if (node == null) {
+                return null;
+            }
+            if (node.isLeaf()) {
+                // a shared latch cannot be upgraded: latch the root again and recheck
+                release(node, false);
+                node = latchRoot(true);
+                if (node.isLeaf()) {
+                    return node;
+                }
+                release(node, true);
+                continue;
+            }
+
+            try {
+                while (true) {
+                    // a node never changes between leaf and non-leaf
+                    BPlusNode child = readFromDisk(node.childPointerFor(key));
+                    if (child.isLeaf()) {
+                        child.latchExclusive();
+                        release(node, false);
+                        return child;
+                    }
+                    child.latchShared();
+                    release(node, false);
+                    node = child;
+                }
+            } catch (IOException | RuntimeException e) {
+                release(node, false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * In an append optimized tree, returns the last leaf pinned and latched
+     * exclusively if key goes after every key in it, which then needs no
+     * descent from the root; otherwise null. A copy of the block loaded since
+     * the hint was taken may be stale, with the log on the file can still hold
+     * a leaf that was merged away, so only the very node that was remembered
+     * is used.
+     */
+    private BPlusNode latchRightmostLeaf(List<Object> key) throws IOException {
+        BPlusNode hint = rightmostLeaf;
+        if (hint == null) {
+            return null;
+        }
+        BPlusNode leaf = readFromDisk(hint.getPointer());
+        if (leaf == null) {
+            return null;
+        }
+        if (leaf != hint) {
+            unpin(leaf);
+            return null;
+        }
+        leaf.latchExclusive();
+        if (!leaf.isDeleted() && leaf.getNextBlockPointer() == 0 && leaf.endsBefore(key)) {
+            return leaf;
+        }
+        release(leaf, true);
         return null;
     }
 
+    /**
+     * Remembers leaf for latchRightmostLeaf if it is the last leaf. The
+     * caller holds it latched exclusively.
+     */
+    private void rememberRightmost(BPlusNode leaf) {
+        if (appendOptimized && leaf.getNextBlockPointer() == 0) {
+            rightmostLeaf = leaf;
+        }
+    }
+
+    boolean isAppendOptimized() {
+        return appendOptimized;
+    }
+
+    /**
+     * A mutating operation. It returns with every latch released and hands
+     * back the log position to sync, or -1.
+     */
+    private interface Operation {
+        long run() throws IOException;
+    }
+
+    private void runOperation(Operation operation) {
+        operationLock.readLock().lock();
+        try {
+            long lsn = -1;
+            boolean completed = false;
+            try {
+                lsn = operation.run();
+                completed = true;
+            } finally {
+                finishOperation(lsn, completed);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            operationLock.readLock().unlock();
+        }
+        checkpointIfDue();
+    }
 
     @Override
     public void insert(List value) {
-		BPlusNode node;
+        // a record that cannot be stored is rejected before any page changes
+        leafEntryBytes(value);
+        long start = System.nanoTime();
+        runOperation(() -> {
+            List<Object> key = keyFromRecord(value);
+            BPlusNode leaf = appendOptimized ? latchRightmostLeaf(key) : null;
+            if (leaf == null) {
+                leaf = latchLeafForUpdate(key);
+            }
+            if (leaf == null) {
+                unpin(pinOrCreateRoot());
+                leaf = latchLeafForUpdate(key);
+            }
+            try {
+                if (leaf.isSafeForInsert()) {
+                    leaf.insert(value);
+                    rememberRightmost(leaf);
+                    return logOperation();
+                }
+            } finally {
+                release(leaf, true);
+            }
+            return insertPessimistic(value, key);
+        });
+        metrics.inserts.record(System.nanoTime() - start);
+    }
 
-		if (root == null) {
-			node = new BPlusNode(this);
-			root = node;
-			node.setRoot(true);
-			node.setLeaf(true);
-		}
+    /**
+     * Insert that may split: the path is latched exclusively from the root,
+     * and the latches above a node that cannot split are dropped early.
+     */
+    private long insertPessimistic(List value, List<Object> key) throws IOException {
+        Deque<BPlusNode> path = new ArrayDeque<>();
+        try {
+            BPlusNode node = latchRoot(true);
+            path.push(node);
+            while (!node.isLeaf()) {
+                BPlusNode child = readFromDisk(node.childPointerFor(key));
+                child.latchExclusive();
+                if (child.isSafeForInsert()) {
+                    releaseAll(path);
+                }
+                path.push(child);
+                node = child;
+            }
 
-		BPlusNode newChild = root.insert(value);
-		if (newChild != null) {
-
-			BPlusNode newNode = new BPlusNode(this);
-			newNode.setRoot(true);
-			newNode.setLeaf(false);
-			root.setRoot(false);
-			root.moveBlock();
-			newNode.addChildren(root, newChild);
-			newNode.writeToDisk();
-			root = newNode;
-		}
-	}
+            Iterator<BPlusNode> up = path.iterator();
+            BPlusNode newChild = up.next().insert(value);
+            rememberRightmost(newChild != null ? newChild : node);
+            BPlusNode top = node;
+            while (newChild != null && up.hasNext()) {
+                top = up.next();
+                newChild = top.insertPromoted(newChild);
+            }
+            // the topmost latched node is the root or cannot split, so only the root is left split
+            if (newChild != null) {
+                top.growRoot(List.of(newChild));
+            }
+            return logOperation();
+        } finally {
+            releaseAll(path);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void insertAll(Collection<? extends List> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        runOperation(() -> {
+            BPlusNode root = latchRoot(true);
+            if (root == null) {
+                unpin(pinOrCreateRoot());
+                root = latchRoot(true);
+            }
+
+            // the batch touches any part of the tree: hold the root exclusively
+            try {
+                List<List<Object>> records = new ArrayList<>(values.size());
+                List<List<Object>> keys = new ArrayList<>(values.size());
+                for (List value : values) {
+                    leafEntryBytes(value);
+                    records.add(value);
+                    keys.add(keyFromRecord(value));
+                }
+
+                // a stable sort keeps equal keys in batch order, so the last one is kept
+                Integer[] order = new Integer[records.size()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> keyComparator.compare(keys.get(a), keys.get(b)));
+
+                List<List<Object>> sortedKeys = new ArrayList<>(order.length);
+                List<List<Object>> sortedRecords = new ArrayList<>(order.length);
+                for (int i : order) {
+                    int last = sortedKeys.size() - 1;
+                    if (last >= 0 && keyComparator.compare(sortedKeys.get(last), keys.get(i)) == 0) {
+                        sortedRecords.set(last, records.get(i));
+                    } else {
+                        sortedKeys.add(keys.get(i));
+                        sortedRecords.add(records.get(i));
+                    }
+                }
+
+                List<BPlusNode> siblings = root.insertBatch(sortedKeys, sortedRecords, 0, sortedKeys.size());
+
+                if (!siblings.isEmpty()) {
+                    root.growRoot(siblings);
+                }
+                return logOperation();
+            } finally {
+                release(root, true);
+            }
+        });
+    }
 
 
+    @Override
+    public void bulkLoad(Iterator<? extends List> sortedRecords, double fillFactor) throws IOException {
+        // no other writer may run, or create a root, while the tree is built
+        operationLock.writeLock().lock();
+        try {
+            BPlusNode root = pinRoot();
+            if (root != null) {
+                unpin(root);
+                throw new IllegalStateException("bulk load requires an empty tree");
+            }
+            long lsn = -1;
+            boolean completed = false;
+            if (wal != null) {
+                // nothing older in the log may be replayed over the new blocks
+                writeCheckpoint();
+            }
+            bulkLoading = true;
+            try {
+                BulkLoader loader = new BulkLoader(this, fillFactor);
+                while (sortedRecords.hasNext()) {
+                    loader.add(sortedRecords.next());
+                }
+                loader.finish();
+                // the blocks are on disk before the commit record that links them in
+                treeStore.sync();
+                lsn = logOperation();
+                completed = true;
+            } finally {
+                bulkLoading = false;
+                finishOperation(lsn, completed);
+            }
+        } finally {
+            operationLock.writeLock().unlock();
+        }
+        checkpointIfDue();
+    }
+
 	@Override
     public void delete(List key) {
-		root.delete(key);
+        long start = System.nanoTime();
+        runOperation(() -> {
+            BPlusNode leaf = latchLeafForUpdate(key);
+            if (leaf == null) {
+                return -1;
+            }
+            try {
+                if (leaf.isSafeForDelete() || leaf.search(key) < 0) {
+                    leaf.delete(key);
+                    return logOperation();
+                }
+            } finally {
+                release(leaf, true);
+            }
+            return deletePessimistic(key);
+        });
+        metrics.deletes.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Delete that may leave the leaf underfull: the path is latched
+     * exclusively from the root, and the latches above a node that cannot
+     * underflow are dropped early. Underfull nodes are rebalanced bottom up
+     * and a root left with a single child is collapsed.
+     */
+    private long deletePessimistic(List<Object> key) throws IOException {
+        Deque<BPlusNode> path = new ArrayDeque<>();
+        try {
+            BPlusNode node = latchRoot(true);
+            path.push(node);
+            while (!node.isLeaf()) {
+                BPlusNode child = readFromDisk(node.childPointerFor(key));
+                child.latchExclusive();
+                if (child.isSafeForDelete()) {
+                    releaseAll(path);
+                }
+                path.push(child);
+                node = child;
+            }
+
+            Iterator<BPlusNode> up = path.iterator();
+            BPlusNode child = up.next();
+            if (child.delete(key)) {
+                while (child.isUnderflow() && up.hasNext()) {
+                    BPlusNode parent = up.next();
+                    parent.rebalance(child, key);
+                    child = parent;
+                }
+                BPlusNode top = path.peekLast();
+                if (top.isRoot() && !top.isLeaf() && top.getNumChildren() == 1) {
+                    top.collapseRoot();
+                }
+            }
+            return logOperation();
+        } finally {
+            releaseAll(path);
+        }
+    }
+
+    /**
+     * With the log on, appends the images of the pages the running operation
+     * changed and its commit record. Called while those pages are still
+     * latched, so operations reach the log in the order they changed a page.
+     * Returns the position to sync, or -1 if there is nothing to log.
+     */
+    private long logOperation() throws IOException {
+        Map<Integer, BPlusNode> pages = operationPages.get();
+        List<Integer> freed = operationFreed.get();
+        boolean rootChanged = operationRootChanged.get();
+        if (wal == null || (pages.isEmpty() && freed.isEmpty() && !rootChanged)) {
+            return -1;
+        }
+        Map<Integer, byte[]> images = new LinkedHashMap<>();
+        if (rootChanged) {
+            // only the root pointer counts on replay, the rest is rebuilt
+            images.put(0, header(false).encode());
+        }
+        for (Map.Entry<Integer, BPlusNode> e : pages.entrySet()) {
+            images.put(e.getKey(), encode(e.getValue()));
+        }
+        // so that replaying an older image cannot bring a freed block back;
+        // the link is only known once the block is pushed on the free list
+        for (int pointer : freed) {
+            images.put(pointer, freePage(0));
+        }
+        return wal.commit(images);
+    }
+
+    /**
+     * Ends a mutating operation once its latches are released: with ON_COMMIT
+     * durability, or GROUP for the last operation of a group, waits for the
+     * log to be durable up to lsn, sharing the fsync with any other operation
+     * committing at the same time, and unpins the changed pages. An
+     * operation that released blocks always waits for the log. They reach
+     * the index file later, on eviction or at a checkpoint. The blocks the
+     * operation released are freed only if it completed and committed.
+     */
+    private void finishOperation(long lsn, boolean completed) throws IOException {
+        Map<Integer, BPlusNode> pages = operationPages.get();
+        List<Integer> freed = operationFreed.get();
+        try {
+            try {
+                // freeBlock writes straight to the index file, so an operation
+                // that frees blocks is made durable first whatever the mode:
+                // a crash must not leave a free block that a parent points at
+                if (lsn >= 0 && (durability == Durability.ON_COMMIT || durability == Durability.GROUP
+                        && groupCommits.incrementAndGet() % groupCommitOperations == 0 || !freed.isEmpty())) {
+                    wal.sync(lsn);
+                }
+            } finally {
+                // before any block is freed, and so possibly reused by another thread
+                for (int pointer : pages.keySet()) {
+                    bufferPool.unpin(pointer);
+                }
+                pages.clear();
+            }
+            if (completed) {
+                for (int pointer : freed) {
+                    freeBlock(pointer);
+                }
+            }
+        } finally {
+            freed.clear();
+            operationRootChanged.remove();
+        }
+    }
+
+    private void checkpointIfDue() {
+        if (wal == null || wal.size() < checkpointBytes) {
+            return;
+        }
+        operationLock.writeLock().lock();
+        try {
+            if (wal.size() >= checkpointBytes) {
+                writeCheckpoint();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            operationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes every dirty page, syncs the index file and empties the log.
+     * The caller holds the operation lock exclusively.
+     */
+    private void writeCheckpoint() throws IOException {
+        bufferPool.flush();
+        writeHeader(false);
+        treeStore.sync();
+        wal.truncate();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (wal != null) {
+            wal.syncCommitted();
+        } else {
+            treeStore.sync();
+        }
+    }
+
+    /**
+     * Without a log the pages are already written, so this only brings the
+     * header up to date and syncs the file.
+     */
+    @Override
+    public void checkpoint() throws IOException {
+        operationLock.writeLock().lock();
+        try {
+            if (wal != null) {
+                writeCheckpoint();
+            } else {
+                bufferPool.flush();
+                writeHeader(false);
+                treeStore.sync();
+            }
+        } finally {
+            operationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Syncs of the log so far, 0 without one.
+     */
+    long getLogSyncCount() {
+        return wal == null ? 0 : wal.getSyncCount();
     }
 
+    /**
+     * Returns the node stored at blockPointer, pinned in the buffer pool.
+     * Every node obtained here must be handed back through unpin.
+     */
     public BPlusNode readFromDisk(int blockPointer) throws IOException {
-		treeStore.seek((long) blockPointer * BLOCK_SIZE);
+        return bufferPool.pin(blockPointer, blockLoader);
+    }
+
+    /**
+     * Hands back a node obtained from readFromDisk. The frame of a deleted
+     * node is dropped with its pins once its block is freed, and the block may
+     * already hold another page, so a deleted node is not unpinned.
+     */
+    public void unpin(BPlusNode node) {
+        if (!node.isDeleted()) {
+            bufferPool.unpin(node.getPointer());
+        }
+    }
 
-        int freeOrNot = treeStore.readByte();
+    private BPlusNode loadBlock(int blockPointer) throws IOException {
+        ByteBuffer page = treeStore.read(blockPointer);
+
+        int freeOrNot = page.get();
 
         if (freeOrNot == 1) {
-			byte[] b = new byte[BLOCK_SIZE - 1];
-			treeStore.readFully(b, 0, BLOCK_SIZE - 1);
-			return new BPlusNode(this, b, blockPointer);
+            // the node type follows the used byte: 0 for a non-leaf node
+            metrics.pageRead(page.get(page.position()) != 0);
+			return new BPlusNode(this, page, blockPointer);
         }
         return null;
     }
 
     public void writeToDisk(BPlusNode node) throws IOException {
-		int pointer = node.getPointer();
-        treeStore.seek((long) pointer * BLOCK_SIZE);
+        if (wal == null || bulkLoading) {
+            writeBlock(node);
+            bufferPool.put(node.getPointer(), node, false);
+            return;
+        }
+
+        // logged when the operation commits, with whatever the page holds by then
+        int pointer = node.getPointer();
+        if (operationPages.get().put(pointer, node) == null) {
+            bufferPool.putPinned(pointer, node, true);
+        } else {
+            bufferPool.put(pointer, node, true);
+        }
+    }
+
+    private void writeBlock(BPlusNode node) throws IOException {
+        writePage(node.getPointer(), encode(node));
+        metrics.nodeWritten(node.isLeaf());
+    }
 
+    private byte[] encode(BPlusNode node) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream(BLOCK_SIZE);
         DataOutputStream ds = new DataOutputStream(bos);
 
@@ -194,78 +1213,386 @@ public class BPlusTreeImpl implements BPlusTree {
             node.printNode();
             throw new RuntimeException("rec size= " + record.length + " block size=" + BLOCK_SIZE);
         }
+        return record;
+    }
+
+    /**
+     * Returns a block for a new node: the most recently freed one, or a new
+     * block at the end of the file.
+     */
+    public int allocateBlock() {
+        synchronized (freeLock) {
+            if (freeListHead != 0) {
+                int free = freeListHead;
+                try {
+                    // the link is in the block itself, which is about to be overwritten anyway
+                    freeListHead = treeStore.read(free).getInt(1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                freeBlockCount--;
+                return free;
+            }
+        }
+        return nextBlockPointer.getAndIncrement();
+    }
+
+    /**
+     * Frees a block the tree no longer points to. Inside a mutating operation
+     * the block is only handed out again once the operation has committed, so
+     * neither a rollback by crash nor a reader still on the page can see it
+     * reused early.
+     */
+    void releaseBlock(int pointer) throws IOException {
+        if (operationLock.getReadHoldCount() > 0) {
+            operationFreed.get().add(pointer);
+        } else {
+            freeBlock(pointer);
+        }
+    }
+
+    /**
+     * Marks the block free on disk and pushes it on the free list. The page
+     * links to the previous head, so the list is threaded through the free
+     * blocks themselves and needs no space of its own.
+     */
+    private void freeBlock(int pointer) throws IOException {
+        bufferPool.discard(pointer);
+        synchronized (freeLock) {
+            writePage(pointer, freePage(freeListHead));
+            freeListHead = pointer;
+            freeBlockCount++;
+        }
+    }
+
+    private byte[] freePage(int nextFree) {
+        byte[] page = new byte[BLOCK_SIZE];
+        ByteBuffer.wrap(page).putInt(1, nextFree);
+        return page;
+    }
+
+    /**
+     * Number of blocks on the free list.
+     */
+    public int getFreeBlockCount() {
+        synchronized (freeLock) {
+            return freeBlockCount;
+        }
+    }
+
+    /**
+     * Blocks of the file in use or on the free list, the header included.
+     */
+    int getBlockCount() {
+        return nextBlockPointer.get();
+    }
 
-		treeStore.write(record);
+    int getFreeListHead() {
+        synchronized (freeLock) {
+            return freeListHead;
+        }
     }
 
+    /**
+     * Blocks the index file holds now. Without the log this is the block
+     * count; with it, new blocks may still only be in the buffer pool.
+     */
+    int getFilePages() throws IOException {
+        return treeStore.getNumPages();
+    }
 
-    public long getFilePointer() throws IOException {
-		return treeStore.getFilePointer();
+    /**
+     * Reads a block from the file, past the buffer pool.
+     */
+    ByteBuffer readPage(int pointer) throws IOException {
+        return treeStore.read(pointer);
     }
 
-    public int getNextBlockPointer() {
-		int next = nextBlockPointer;
-        nextBlockPointer++;
-        return next;
+    @Override
+    public TreeStats stats() throws IOException {
+        return new StatsCollector(this).full();
     }
 
-    public void decNextBlockPointer() {
-		if (nextBlockPointer > 1)
-            nextBlockPointer--;
+    @Override
+    public TreeStats stats(int samples) throws IOException {
+        return new StatsCollector(this).sample(samples);
     }
 
+    /**
+     * True if verify finds nothing wrong. The violations are printed.
+     */
     public boolean isTreeValid() throws IOException {
-		if (root == null) {
-            System.out.println("Root is null. Tree is empty");
-            return true;
+        VerifyReport report = verify();
+        if (!report.isValid()) {
+            System.out.println(report);
         }
-		ArrayDeque<NodeBounds> queue = new ArrayDeque<>(root.getChildrenNodeBounds());
-        NodeBounds current;
-        while (!queue.isEmpty() && (current = queue.poll()) != null) {
-			BPlusNode cNode = readFromDisk(current.blockPointer);
+        return report.isValid();
+    }
 
-			if (cNode.isNodeValid(current.low, current.high)) {
-				queue.addAll(cNode.getChildrenNodeBounds());
-			}
-            else {
-				return false;
-			}
+    /**
+     * Checks the whole tree in parallel, see TreeVerifier. Writers wait until
+     * it is done, so it sees the tree as of one moment; readers carry on.
+     */
+    @Override
+    public VerifyReport verify() throws IOException {
+        operationLock.writeLock().lock();
+        try {
+            return new TreeVerifier(this).verify();
+        } finally {
+            operationLock.writeLock().unlock();
         }
-		return true;
     }
 	@Override
     public void printTree() throws IOException {
+		BPlusNode root = latchRoot(false);
 		if (root == null) {
             System.out.println("Root is null. Tree is empty");
             return;
         }
 		root.printNode();
 		ArrayDeque<Integer> queue = new ArrayDeque<>(root.getChildren());
+		release(root, false);
 
         Integer current;
         while (!queue.isEmpty() && (current = queue.poll()) != null) {
 			BPlusNode cNode = readFromDisk(current);
+			cNode.latchShared();
             cNode.printNode();
             queue.addAll(cNode.getChildren());
+            release(cNode, false);
         }
     }
 
-    private void load() throws IOException {
+    /**
+     * Opens an existing file. After a clean close the header has everything:
+     * only the root block is read to check it. Otherwise the log is replayed
+     * and what the header does not record reliably is rebuilt from the blocks.
+     */
+    private void load(String name) throws IOException {
 
-        try {
-			long filesize = treeStore.length();
-            int numBlocks = (int) filesize / this.BLOCK_SIZE;
+        if (wal != null) {
+            // redo whatever committed operations had not reached the index file
+            if (wal.replay(treeStore::write) > 0) {
+                treeStore.sync();
+            }
+            wal.truncate();
+        }
 
-            nextBlockPointer = numBlocks;
-            root = readFromDisk(0);
+        FileHeader header = FileHeader.decode(treeStore.read(0), name);
+        int numPages = treeStore.getNumPages();
+        boolean legacy = header.isLegacy();
+        if (legacy) {
+            if (numPages > 0 && treeStore.read(0).get(0) == 1) {
+                // decode the root before the file is changed, so a file this
+                // version cannot read is left as it was
+                ByteBuffer root = treeStore.read(0);
+                root.get();
+                new BPlusNode(this, root, 0);
+            }
+            header = upgradeLegacy(numPages);
+            numPages++;
+        }
+        numPages = usedPages(header, numPages);
 
-        } catch (EOFException e) {
-            root = null;
+        int root = header.getRootPointer();
+        if (header.getVersion() == 1 && numPages <= 1) {
+            // version 1 reserved block 1 for the root, but had not written it yet
+            root = 0;
+        }
+        if (root >= numPages) {
+            throw new IOException(name + ": root block " + root + " is past the end of the file");
         }
+        if (root != 0 && treeStore.read(root).get(0) != 1) {
+            throw new IOException(name + ": root block " + root + " is not in use");
+        }
+        rootPointer = root;
+        if (legacy) {
+            relinkLeaves();
+        }
+
+        if (header.isClean() && header.getNextBlockPointer() == numPages) {
+            height = header.getHeight();
+            recordCount.add(header.getRecordCount());
+            freeListHead = header.getFreeListHead();
+            freeBlockCount = header.getFreeBlockCount();
+            nextBlockPointer.set(numPages);
+            return;
+        }
+        nextBlockPointer.set(numPages);
+        rebuildFreeList(numPages);
+        countRecords();
+    }
+
+    /**
+     * Blocks of the file that belong to the tree. A memory-mapped store leaves
+     * the file a whole number of chunks long, with zeros past the last block
+     * written. The header records where the blocks ended when it was last
+     * written, and blocks are never given back to the file, so only zero
+     * pages past that point are dropped: the tail of a mapped file, or after
+     * a crash also free blocks at the very end, which are allocated again.
+     */
+    private int usedPages(FileHeader header, int numPages) throws IOException {
+        int known = Math.max(1, header.getNextBlockPointer());
+        while (numPages > known && isZeroPage(numPages - 1)) {
+            numPages--;
+        }
+        return numPages;
+    }
+
+    private boolean isZeroPage(int pointer) throws IOException {
+        ByteBuffer page = treeStore.read(pointer);
+        while (page.hasRemaining()) {
+            if (page.get() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the root of a file written before the header existed from block 0
+     * to the end of the file and writes a header in its place. The root is
+     * copied and synced first, so a crash in between leaves the old layout
+     * and one unused block.
+     */
+    private FileHeader upgradeLegacy(int numPages) throws IOException {
+        if (numPages > 0) {
+            byte[] root = new byte[BLOCK_SIZE];
+            treeStore.read(0).get(root);
+            treeStore.write(numPages, root);
+            treeStore.sync();
+        }
+        FileHeader header = new FileHeader(BLOCK_SIZE, numPages, 0, 0, 0, 0, numPages + 1, false,
+                tableSpec, keySpec);
+        treeStore.write(0, header.encode());
+        treeStore.sync();
+        return header;
+    }
+
+    /**
+     * Links the leaves of a file written before the header existed in key
+     * order. Back then a leaf split did not hand the old link on to the new
+     * leaf, so the chain ended early wherever a leaf had split twice.
+     */
+    private void relinkLeaves() throws IOException {
+        List<Integer> leaves = new ArrayList<>();
+        Deque<Integer> pending = new ArrayDeque<>();
+        if (rootPointer != 0) {
+            pending.push(rootPointer);
+        }
+        while (!pending.isEmpty()) {
+            BPlusNode node = readFromDisk(pending.pop());
+            try {
+                if (node.isLeaf()) {
+                    leaves.add(node.getPointer());
+                } else {
+                    for (int i = node.getNumChildren() - 1; i >= 0; i--) {
+                        pending.push(node.getChildPtr(i));
+                    }
+                }
+            } finally {
+                unpin(node);
+            }
+        }
+        for (int i = 0; i < leaves.size(); i++) {
+            int next = i + 1 < leaves.size() ? leaves.get(i + 1) : 0;
+            BPlusNode leaf = readFromDisk(leaves.get(i));
+            try {
+                if (leaf.getNextBlockPointer() != next) {
+                    leaf.setNextBlockPointer(next);
+                    writeBlock(leaf);
+                }
+            } finally {
+                unpin(leaf);
+            }
+        }
+        treeStore.sync();
+    }
+
+    /**
+     * Collects every unused block and links them up again, since the links
+     * on disk may be stale after a crash.
+     */
+    private void rebuildFreeList(int numPages) throws IOException {
+        List<Integer> free = new ArrayList<>();
+        for (int pointer = 1; pointer < numPages; pointer++) {
+            if (treeStore.read(pointer).get(0) == 0) {
+                free.add(pointer);
+            }
+        }
+        int next = 0;
+        for (int i = free.size() - 1; i >= 0; i--) {
+            writePage(free.get(i), freePage(next));
+            next = free.get(i);
+        }
+        freeListHead = next;
+        freeBlockCount = free.size();
+    }
+
+    /**
+     * Recomputes the height and the record count: down the leftmost path,
+     * then along the leaf chain.
+     */
+    private void countRecords() throws IOException {
+        height = 0;
+        BPlusNode node = pinRoot();
+        if (node == null) {
+            return;
+        }
+        height = 1;
+        while (!node.isLeaf()) {
+            BPlusNode child = readFromDisk(node.getChildPtr(0));
+            unpin(node);
+            node = child;
+            height++;
+        }
+        long count = 0;
+        while (true) {
+            count += node.size();
+            int next = node.getNextBlockPointer();
+            unpin(node);
+            if (next == 0) {
+                break;
+            }
+            node = readFromDisk(next);
+        }
+        recordCount.add(count);
+    }
+
+    public BufferPool<BPlusNode> getBufferPool() {
+        return bufferPool;
     }
 
     public void close() throws IOException {
-        treeStore.close();
+        operationLock.writeLock().lock();
+        try {
+            unregisterMBean();
+            stopLogSyncer();
+            closeStores();
+        } finally {
+            operationLock.writeLock().unlock();
+        }
+    }
+
+    private void closeStores() throws IOException {
+        if (wal == null) {
+            try {
+                bufferPool.flush();
+                writeHeader(true);
+                treeStore.sync();
+            } finally {
+                treeStore.close();
+            }
+            return;
+        }
+        try {
+            writeCheckpoint();
+            writeHeader(true);
+            treeStore.sync();
+        } finally {
+            treeStore.close();
+            wal.close();
+        }
     }
 
 }
\ No newline at end of file
@@ -194,7 +194,7 @@ public class BTree {
                     Node erasureNode = predecessorNode;
                     while (!predecessorNode.mIsLeafNode) {
                         erasureNode = predecessorNode;
-                        predecessorNode = predecessorNode.mChildNodes[node.mNumKeys - 1];
+                        predecessorNode = predecessorNode.mChildNodes[predecessorNode.mNumKeys];
                     }
                     node.mKeys[i] = predecessorNode.mKeys[predecessorNode.mNumKeys - 1];
                     node.mObjects[i] = predecessorNode.mObjects[predecessorNode.mNumKeys - 1];
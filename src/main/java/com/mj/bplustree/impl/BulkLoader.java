@@ -0,0 +1,193 @@
+package com.mj.bplustree.impl;
+
+import com.mj.util.KeyComparator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a tree bottom-up from records sorted by key.
+ * <p>
+ * Leaves are filled to fillFactor of their capacity in bytes, non-leaf
+ * nodes to fillFactor * Mnonleaf, and written in key order, so the
+ * leaf chain is laid out sequentially in the file. Every finished node hands
+ * (smallest key, block pointer) to the level above, which is filled the same
+ * way; nothing is ever re-read or rewritten.
+ * <p>
+ * Each level keeps its last full node in memory until the next one is
+ * complete, so at the end the rightmost node can take entries from it
+ * instead of being left nearly empty. The root is written last and only then
+ * made the root of the tree.
+ */
+class BulkLoader {
+
+    private class Level {
+        final boolean leaf;
+        BPlusNode pending;
+        List<Object> pendingMin;
+        BPlusNode current;
+        List<Object> currentMin;
+        int count = 0;
+
+        Level(boolean leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    private final BPlusTreeImpl tree;
+    private final KeyComparator keyComparator;
+    private final int leafCapacity;
+    private final int nonLeafCapacity;
+    private final List<Level> levels = new ArrayList<>();
+    private List<Object> lastKey;
+
+    BulkLoader(BPlusTreeImpl tree, double fillFactor) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("fill factor must be in (0, 1]: " + fillFactor);
+        }
+        this.tree = tree;
+        this.keyComparator = tree.getKeyComparator();
+        this.leafCapacity = Math.max(tree.getMaxLeafEntry(), (int) (tree.getLeafCapacity() * fillFactor));
+        this.nonLeafCapacity = Math.max(2, (int) (tree.getNumKeysPerBlock() * fillFactor));
+        levels.add(new Level(true));
+    }
+
+    void add(List<Object> record) throws IOException {
+        Level level = levels.get(0);
+        if (level.current == null) {
+            open(level);
+        }
+
+        List<Object> key = level.current.keyFromRecord(record);
+        if (lastKey != null && keyComparator.compare(lastKey, key) >= 0) {
+            throw new IllegalArgumentException("records are not sorted by key: " + key + " after " + lastKey);
+        }
+        int bytes = tree.leafEntryBytes(record);
+        lastKey = key;
+
+        if (level.current.size() > 0 && level.current.usedBytes() + bytes > leafCapacity) {
+            next(0);
+        }
+        if (level.current.size() == 0) {
+            level.currentMin = key;
+        }
+        level.current.appendEntry(key, record);
+        tree.addRecords(1);
+    }
+
+    private void addChild(int l, List<Object> minKey, int pointer) throws IOException {
+        if (l == levels.size()) {
+            levels.add(new Level(false));
+        }
+        Level level = levels.get(l);
+        if (level.current == null) {
+            open(level);
+        } else if (level.current.size() == nonLeafCapacity) {
+            next(l);
+        }
+
+        if (level.current.getNumChildren() == 0) {
+            level.currentMin = minKey;
+        } else {
+            level.current.appendKey(minKey);
+        }
+        level.current.appendChildPtr(pointer);
+    }
+
+    private void open(Level level) {
+        // blocks are assigned in next(), so a lone node, the root, gets its block after all others
+        level.current = new BPlusNode(tree, -1);
+        level.current.setLeaf(level.leaf);
+        level.count++;
+    }
+
+    /**
+     * The current node of level l is full: write the pending one and make
+     * the current node pending.
+     */
+    private void next(int l) throws IOException {
+        Level level = levels.get(l);
+        writePending(l);
+
+        level.pending = level.current;
+        level.pendingMin = level.currentMin;
+        if (level.pending.getPointer() < 0) {
+            level.pending.setPointer(tree.allocateBlock());
+        }
+        open(level);
+        level.current.setPointer(tree.allocateBlock());
+        if (level.leaf) {
+            level.pending.setNextBlockPointer(level.current.getPointer());
+        }
+    }
+
+    private void writePending(int l) throws IOException {
+        Level level = levels.get(l);
+        if (level.pending != null) {
+            tree.writeToDisk(level.pending);
+            addChild(l + 1, level.pendingMin, level.pending.getPointer());
+            level.pending = null;
+        }
+    }
+
+    /**
+     * Writes what is left on every level and returns the root, or null if no
+     * record was added.
+     */
+    BPlusNode finish() throws IOException {
+        if (levels.get(0).current == null) {
+            return null;
+        }
+
+        for (int l = 0; ; l++) {
+            Level level = levels.get(l);
+
+            if (level.count == 1) {
+                BPlusNode root = level.current;
+                if (root.getPointer() < 0) {
+                    root.setPointer(tree.allocateBlock());
+                }
+                tree.writeToDisk(root);
+                tree.changeRoot(null, root, l + 1);
+                return root;
+            }
+
+            balance(level);
+            writePending(l);
+            tree.writeToDisk(level.current);
+            addChild(l + 1, level.currentMin, level.current.getPointer());
+        }
+    }
+
+    /**
+     * Evens out the last two nodes of a level if the last one is underfull.
+     */
+    private void balance(Level level) {
+        BPlusNode left = level.pending;
+        BPlusNode right = level.current;
+
+        if (level.leaf) {
+            // move entries as long as the left one stays the larger
+            int half = (left.usedBytes() - right.usedBytes()) / 2;
+            int n = 0;
+            int moved = 0;
+            while (n < left.size() - 1) {
+                int b = tree.leafEntryBytes(left.getData(left.size() - 1 - n));
+                if (moved + b > half) {
+                    break;
+                }
+                moved += b;
+                n++;
+            }
+            if (right.usedBytes() < leafCapacity / 2 && n > 0) {
+                level.currentMin = left.shiftEntriesTo(right, n);
+            }
+        } else {
+            int n = (left.getNumChildren() - right.getNumChildren()) / 2;
+            if (right.getNumChildren() <= nonLeafCapacity / 2 && n > 0) {
+                level.currentMin = left.shiftChildrenTo(right, n, level.currentMin);
+            }
+        }
+    }
+}
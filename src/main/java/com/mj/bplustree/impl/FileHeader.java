@@ -0,0 +1,284 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.db.storage.ByteBufferInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Block 0 of an index file, the superblock: a magic number, the format
+ * version and the page size the file was created with, then where the tree
+ * is: its root block and height, the number of records, the head and length
+ * of the free list and the first block past the end of the tree, and last the
+ * schema: the record fields with their type and length, and the key fields.
+ * <p>
+ * The root can move, a root split is a new root block and an update of the
+ * pointer here. Everything else is derived state that the tree keeps in
+ * memory while it is open. It is written back, with the clean flag set, when
+ * the tree is closed; an open tree leaves the flag cleared on disk, so after
+ * a crash the tree knows to rebuild it from the blocks themselves.
+ * <p>
+ * Version 4 leaves may be slotted pages, see BPlusNode.writeLeaf; the
+ * header itself is as in version 3. Version 2 files have no schema. Version 1 files hold only the page size
+ * and have the root in block 1.
+ * Files written before the header existed start directly with the root node
+ * and are recognised by the missing magic number: 1 KB pages and the root in
+ * block 0.
+ */
+final class FileHeader {
+
+    static final int MAGIC = 0x4D4A4254; // "MJBT"
+    static final int VERSION = 4;
+    static final int LEGACY_PAGE_SIZE = 1024;
+
+    /**
+     * Magic, version, page size, root, height, record count, free list head
+     * and length, next block and the clean flag.
+     */
+    private static final int SIZE = 41;
+    private static final int VERSION_1_SIZE = 12;
+    private static final int MAX_PAGE_SIZE = 64 * 1024;
+
+    private final int version;
+    private final int pageSize;
+    private final int rootPointer;
+    private final int height;
+    private final long recordCount;
+    private final int freeListHead;
+    private final int freeBlockCount;
+    private final int nextBlockPointer;
+    private final boolean clean;
+    private final List<Field> tableSpec;
+    private final List<String> keySpec;
+
+    FileHeader(int pageSize, int rootPointer, int height, long recordCount,
+               int freeListHead, int freeBlockCount, int nextBlockPointer, boolean clean,
+               List<Field> tableSpec, List<String> keySpec) {
+        this(VERSION, pageSize, rootPointer, height, recordCount,
+                freeListHead, freeBlockCount, nextBlockPointer, clean, tableSpec, keySpec);
+    }
+
+    private FileHeader(int version, int pageSize, int rootPointer, int height, long recordCount,
+                       int freeListHead, int freeBlockCount, int nextBlockPointer, boolean clean,
+                       List<Field> tableSpec, List<String> keySpec) {
+        this.version = version;
+        this.pageSize = pageSize;
+        this.rootPointer = rootPointer;
+        this.height = height;
+        this.recordCount = recordCount;
+        this.freeListHead = freeListHead;
+        this.freeBlockCount = freeBlockCount;
+        this.nextBlockPointer = nextBlockPointer;
+        this.clean = clean;
+        this.tableSpec = tableSpec;
+        this.keySpec = keySpec;
+    }
+
+    /**
+     * Reads the header of an existing index file. Returns null if the file
+     * does not exist or is empty.
+     */
+    static FileHeader read(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer b = readFully(channel, SIZE);
+            if (b.remaining() >= VERSION_1_SIZE && b.getInt(0) == MAGIC && b.getInt(4) >= 3) {
+                // the schema follows, anywhere up to the end of the page
+                b = readFully(channel, Math.min(b.getInt(8), MAX_PAGE_SIZE));
+            }
+            return decode(b, path.toString());
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int size) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(size);
+        while (b.hasRemaining() && channel.read(b, b.position()) >= 0) {
+            // keep reading until the buffer is full or the file ends
+        }
+        return b.flip();
+    }
+
+    /**
+     * Decodes the header from the start of block 0. Older versions lack fields
+     * that the tree then rebuilds, or, for the schema, has to be given.
+     */
+    static FileHeader decode(ByteBuffer page, String name) throws IOException {
+        ByteBuffer b = page.duplicate();
+        int start = b.position();
+        if (b.remaining() < VERSION_1_SIZE || b.getInt(start) != MAGIC) {
+            // no free list, no count: the root in block 0 and nothing else known
+            return new FileHeader(0, LEGACY_PAGE_SIZE, 0, 0, 0, 0, 0, 0, false, null, null);
+        }
+
+        int version = b.getInt(start + 4);
+        int pageSize = b.getInt(start + 8);
+        if (version > VERSION) {
+            throw new IOException(name + " has format version " + version
+                    + ", this version reads up to " + VERSION);
+        }
+        if (version == 1) {
+            return new FileHeader(1, pageSize, 1, 0, 0, 0, 0, 0, false, null, null);
+        }
+        if (b.remaining() < SIZE) {
+            throw new IOException(name + " has a truncated header");
+        }
+
+        List<Field> tableSpec = null;
+        List<String> keySpec = null;
+        if (version >= 3) {
+            tableSpec = new ArrayList<>();
+            keySpec = new ArrayList<>();
+            b.position(start + SIZE);
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(b));
+            try {
+                int fields = in.readUnsignedShort();
+                for (int i = 0; i < fields; i++) {
+                    String fieldName = in.readUTF();
+                    FieldType type = FieldType.valueOf(in.readUTF());
+                    tableSpec.add(new Field(fieldName, type, in.readInt()));
+                }
+                int keys = in.readUnsignedShort();
+                for (int i = 0; i < keys; i++) {
+                    keySpec.add(in.readUTF());
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IOException(name + " has a corrupt schema", e);
+            }
+        }
+        return new FileHeader(version, pageSize, b.getInt(start + 12), b.getInt(start + 16),
+                b.getLong(start + 20), b.getInt(start + 28), b.getInt(start + 32),
+                b.getInt(start + 36), b.get(start + 40) == 1, tableSpec, keySpec);
+    }
+
+    /**
+     * The header as a full page, always in the current version.
+     */
+    byte[] encode() {
+        byte[] page = new byte[pageSize];
+        ByteBuffer.wrap(page)
+                .putInt(MAGIC).putInt(VERSION).putInt(pageSize)
+                .putInt(rootPointer).putInt(height).putLong(recordCount)
+                .putInt(freeListHead).putInt(freeBlockCount).putInt(nextBlockPointer)
+                .put((byte) (clean ? 1 : 0));
+        byte[] schema = encodeSchema(tableSpec, keySpec);
+        System.arraycopy(schema, 0, page, SIZE, schema.length);
+        return page;
+    }
+
+    /**
+     * The schema as it follows the fixed fields. Throws
+     * IllegalArgumentException if it does not fit in a page of pageSize.
+     */
+    static byte[] encodeSchema(List<Field> tableSpec, List<String> keySpec, int pageSize) {
+        byte[] schema = encodeSchema(tableSpec, keySpec);
+        if (SIZE + schema.length > pageSize) {
+            throw new IllegalArgumentException("the schema takes " + schema.length
+                    + " bytes and does not fit in a " + pageSize + " byte header page");
+        }
+        return schema;
+    }
+
+    private static byte[] encodeSchema(List<Field> tableSpec, List<String> keySpec) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        try {
+            out.writeShort(tableSpec.size());
+            for (Field f : tableSpec) {
+                out.writeUTF(f.getName());
+                out.writeUTF(f.getFieldType().name());
+                out.writeInt(f.getLength());
+            }
+            out.writeShort(keySpec.size());
+            for (String k : keySpec) {
+                out.writeUTF(k);
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * The version the file was written in, 0 for a legacy file.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * True for a file without a header, whose root lives in block 0.
+     */
+    boolean isLegacy() {
+        return version == 0;
+    }
+
+    /**
+     * The block holding the root node, 0 for an empty tree. In a legacy file
+     * the root is in block 0 as well, see isLegacy.
+     */
+    int getRootPointer() {
+        return rootPointer;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    int getFreeListHead() {
+        return freeListHead;
+    }
+
+    int getFreeBlockCount() {
+        return freeBlockCount;
+    }
+
+    int getNextBlockPointer() {
+        return nextBlockPointer;
+    }
+
+    /**
+     * True if the tree was closed properly after the header was written, so
+     * the derived fields match the blocks.
+     */
+    boolean isClean() {
+        return clean;
+    }
+
+    /**
+     * The record fields the file was created with, or null if it predates
+     * stored schemas.
+     */
+    List<Field> getTableSpec() {
+        return tableSpec;
+    }
+
+    /**
+     * The key fields the file was created with, or null if it predates
+     * stored schemas.
+     */
+    List<String> getKeySpec() {
+        return keySpec;
+    }
+}
@@ -0,0 +1,112 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.IntKeyBPlusTree;
+import com.mj.bplustree.TreeOptions;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * BPlusTreeImpl with lookups by int. They crab down with shared latches as
+ * find does, but search every node with BPlusNode.search(int).
+ */
+public class IntKeyBPlusTreeImpl extends BPlusTreeImpl implements IntKeyBPlusTree {
+
+    public IntKeyBPlusTreeImpl(String storeDir, String filename,
+                               List<String> keySpec, List<Field> tableSpec, TreeOptions options) throws IOException {
+        // a spec that is given is checked before the file is created or opened
+        super(storeDir, filename, checkIntKey(keySpec, tableSpec), tableSpec, options);
+        if (keySpec == null) {
+            try {
+                checkIntKey(getKeySpec(), getTableSpec());
+            } catch (IllegalArgumentException e) {
+                close();
+                throw e;
+            }
+        }
+    }
+
+    private static List<String> checkIntKey(List<String> keySpec, List<Field> tableSpec) {
+        if (keySpec == null || tableSpec == null) {
+            return keySpec;
+        }
+        if (keySpec.size() != 1) {
+            throw new IllegalArgumentException("an int key tree has a single key field, not " + keySpec);
+        }
+        for (Field f : tableSpec) {
+            if (f.getName().equals(keySpec.get(0)) && f.getFieldType() != FieldType.integer) {
+                throw new IllegalArgumentException("key field " + f.getName() + " is " + f.getFieldType()
+                        + ", not integer");
+            }
+        }
+        return keySpec;
+    }
+
+    @Override
+    public List find(int key) {
+        long start = System.nanoTime();
+        try {
+            BPlusNode leaf = latchLeaf(key);
+            if (leaf == null) {
+                return null;
+            }
+            try {
+                int i = leaf.search(key);
+                return i >= 0 ? leaf.getData(i) : null;
+            } finally {
+                release(leaf, false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            metrics().finds.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean contains(int key) {
+        long start = System.nanoTime();
+        try {
+            BPlusNode leaf = latchLeaf(key);
+            if (leaf == null) {
+                return false;
+            }
+            try {
+                return leaf.search(key) >= 0;
+            } finally {
+                release(leaf, false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            metrics().finds.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the leaf for key pinned and latched shared, or null if the tree
+     * is empty.
+     */
+    private BPlusNode latchLeaf(int key) throws IOException {
+        BPlusNode node = latchRoot(false);
+        if (node == null) {
+            return null;
+        }
+        try {
+            // latch coupling: the child is latched before its parent is let go
+            while (!node.isLeaf()) {
+                BPlusNode child = readFromDisk(node.childPointerFor(key));
+                child.latchShared();
+                release(node, false);
+                node = child;
+            }
+        } catch (IOException | RuntimeException e) {
+            release(node, false);
+            throw e;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,176 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.Cursor;
+import com.mj.util.KeyComparator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor over a key range. It descends from the root once to the leaf holding
+ * the low bound and then follows the leaf nextBlockPointer chain, so a range
+ * read costs one traversal plus one read per leaf.
+ * <p>
+ * Only the records of the current leaf are held. A leaf is copied into the
+ * cursor under a shared latch and stays pinned, but not latched, while its
+ * records are handed out. Moving on latches the current leaf again to read
+ * its next pointer, so a concurrent split of that leaf is seen; records that
+ * a split moved to the next leaf are skipped by resuming after the last key
+ * returned. If the leaf was merged into its sibling meanwhile, the cursor
+ * descends again from the root.
+ */
+class RangeCursor implements Cursor {
+
+    private final BPlusTreeImpl tree;
+    private final KeyComparator keyComparator;
+    private final List<Object> highKey;
+    private final boolean highInclusive;
+    private final List<Object> lowKey;
+    private final boolean lowInclusive;
+
+    private final List<List<Object>> keys = new ArrayList<>();
+    private final List<List<Object>> data = new ArrayList<>();
+    private int position = 0;
+    private BPlusNode leaf;
+    private List<Object> lastKey;
+    private boolean done = false;
+
+    RangeCursor(BPlusTreeImpl tree, List<Object> lowKey, List<Object> highKey,
+                boolean lowInclusive, boolean highInclusive) throws IOException {
+        this.tree = tree;
+        this.lowKey = lowKey;
+        this.lowInclusive = lowInclusive;
+        this.highKey = highKey;
+        this.highInclusive = highInclusive;
+        this.keyComparator = tree.getKeyComparator();
+
+        BPlusNode node = tree.latchRoot(false);
+        if (node == null) {
+            done = true;
+            return;
+        }
+        node = descend(node, lowKey);
+        try {
+            bufferLeaf(node, node.lowerBound(lowKey, lowInclusive));
+        } finally {
+            node.unlatchShared();
+        }
+        leaf = node;
+    }
+
+    /**
+     * Crabs down from the node, pinned and latched shared, to the leaf for key
+     * and returns that leaf pinned and latched shared.
+     */
+    private BPlusNode descend(BPlusNode node, List<Object> key) throws IOException {
+        try {
+            while (!node.isLeaf()) {
+                BPlusNode child = tree.readFromDisk(node.childPointerFor(key));
+                child.latchShared();
+                tree.release(node, false);
+                node = child;
+            }
+        } catch (IOException | RuntimeException e) {
+            tree.release(node, false);
+            throw e;
+        }
+        return node;
+    }
+
+    private void bufferLeaf(BPlusNode leaf, int from) {
+        keys.clear();
+        data.clear();
+        position = 0;
+
+        int size = leaf.size();
+        for (int i = from; i < size; i++) {
+            // the key comes from the record rather than decoding it a second time
+            List<Object> record = leaf.getData(i);
+            keys.add(leaf.keyFromRecord(record));
+            data.add(record);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (done) {
+            return false;
+        }
+
+        // empty leaves are skipped
+        while (position >= keys.size()) {
+            BPlusNode next = null;
+            try {
+                leaf.latchShared();
+                if (leaf.isDeleted()) {
+                    // merged away: find the place again from the root
+                    leaf.unlatchShared();
+                    tree.unpin(leaf);
+                    leaf = null;
+                    BPlusNode root = tree.latchRoot(false);
+                    if (root != null) {
+                        next = descend(root, lastKey == null ? lowKey : lastKey);
+                    }
+                } else {
+                    try {
+                        int nextLeaf = leaf.getNextBlockPointer();
+                        if (nextLeaf != 0) {
+                            next = tree.readFromDisk(nextLeaf);
+                            next.latchShared();
+                        }
+                    } finally {
+                        leaf.unlatchShared();
+                        tree.unpin(leaf);
+                        leaf = null;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (next == null) {
+                close();
+                return false;
+            }
+            leaf = next;
+            try {
+                bufferLeaf(next, lastKey == null
+                        ? next.lowerBound(lowKey, lowInclusive) : next.lowerBound(lastKey, false));
+            } finally {
+                next.unlatchShared();
+            }
+        }
+
+        if (highKey != null) {
+            int c = keyComparator.compare(keys.get(position), highKey);
+            if (c > 0 || (c == 0 && !highInclusive)) {
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        lastKey = keys.get(position);
+        return data.get(position++);
+    }
+
+    @Override
+    public void close() {
+        if (leaf != null) {
+            tree.unpin(leaf);
+            leaf = null;
+        }
+        done = true;
+        keys.clear();
+        data.clear();
+    }
+}
@@ -0,0 +1,246 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.FillSummary;
+import com.mj.bplustree.TreeStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Collects the shape of a tree for BPlusTree.stats.
+ * <p>
+ * The full pass goes level by level. The nodes of a level are visited in
+ * parallel, each pinned and latched shared only while it is read, and hand
+ * their children on to the next level. The sampled pass descends from the
+ * root to random leaves with latch coupling, as find does, choosing each
+ * child uniformly.
+ */
+class StatsCollector {
+
+    /**
+     * Fill factors in whole percent buckets, for the percentiles.
+     */
+    private static class Fill {
+        final long[] counts = new long[101];
+        long nodes;
+        double sum;
+        double min = 1;
+        double max = 0;
+
+        void add(double fill) {
+            counts[(int) Math.min(100, fill * 100)]++;
+            nodes++;
+            sum += fill;
+            min = Math.min(min, fill);
+            max = Math.max(max, fill);
+        }
+
+        void addAll(Fill other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            nodes += other.nodes;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        FillSummary summary() {
+            if (nodes == 0) {
+                return new FillSummary(0, 0, 0, 0, 0, 0, 0);
+            }
+            return new FillSummary(nodes, sum / nodes, min, percentile(0.1), percentile(0.5), percentile(0.9), max);
+        }
+
+        /**
+         * The floor of the bucket the percentile falls in, kept within
+         * [min, max]: a bucket floor can lie below the smallest fill in it.
+         */
+        private double percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * nodes);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(max, Math.max(min, i / 100.0));
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * What was seen of the nodes of one level. children counts the child
+     * pointers of the non-leaf nodes, next collects them in a full pass.
+     */
+    private class Level {
+        final Fill fill = new Fill();
+        long nodes;
+        long children;
+        long chained;
+        long sequential;
+        int[] next = new int[0];
+        int numNext;
+
+        void visit(BPlusNode node, boolean collectChildren) {
+            nodes++;
+            if (node.isLeaf()) {
+                fill.add((double) node.usedBytes() / leafCapacity);
+                int following = node.getNextBlockPointer();
+                if (following != 0) {
+                    chained++;
+                    if (following == node.getPointer() + 1) {
+                        sequential++;
+                    }
+                }
+                return;
+            }
+            fill.add(Math.min(1, (double) node.size() / keysPerNode));
+            int n = node.getNumChildren();
+            children += n;
+            if (collectChildren) {
+                if (numNext + n > next.length) {
+                    next = Arrays.copyOf(next, Math.max(numNext + n, next.length * 2));
+                }
+                for (int i = 0; i < n; i++) {
+                    next[numNext++] = node.getChildPtr(i);
+                }
+            }
+        }
+
+        void merge(Level other) {
+            fill.addAll(other.fill);
+            nodes += other.nodes;
+            children += other.children;
+            chained += other.chained;
+            sequential += other.sequential;
+            if (other.numNext > 0) {
+                next = Arrays.copyOf(next, numNext + other.numNext);
+                System.arraycopy(other.next, 0, next, numNext, other.numNext);
+                numNext += other.numNext;
+            }
+        }
+    }
+
+    private final BPlusTreeImpl tree;
+    private final int leafCapacity;
+    private final int keysPerNode;
+
+    StatsCollector(BPlusTreeImpl tree) {
+        this.tree = tree;
+        this.leafCapacity = tree.getLeafCapacity();
+        this.keysPerNode = tree.getNumKeysPerBlock();
+    }
+
+    TreeStats full() throws IOException {
+        List<Level> levels = new ArrayList<>();
+        BPlusNode root = tree.latchRoot(false);
+        if (root == null) {
+            return stats(false, levels);
+        }
+        Level level = new Level();
+        try {
+            level.visit(root, true);
+        } finally {
+            tree.release(root, false);
+        }
+        levels.add(level);
+
+        try {
+            while (level.numNext > 0) {
+                int[] pointers = Arrays.copyOf(level.next, level.numNext);
+                level = IntStream.of(pointers).parallel().collect(Level::new, this::visit, Level::merge);
+                levels.add(level);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return stats(false, levels);
+    }
+
+    private void visit(Level level, int pointer) {
+        BPlusNode node;
+        try {
+            node = tree.readFromDisk(pointer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (node == null) {
+            // freed by a merge since its parent was read
+            return;
+        }
+        node.latchShared();
+        try {
+            level.visit(node, true);
+        } finally {
+            tree.release(node, false);
+        }
+    }
+
+    TreeStats sample(int samples) throws IOException {
+        if (samples < 1) {
+            throw new IllegalArgumentException("at least one sample is needed: " + samples);
+        }
+        List<Level> levels = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int s = 0; s < samples; s++) {
+            BPlusNode node = tree.latchRoot(false);
+            if (node == null) {
+                break;
+            }
+            try {
+                for (int depth = 0; ; depth++) {
+                    if (depth == levels.size()) {
+                        levels.add(new Level());
+                    }
+                    levels.get(depth).visit(node, false);
+                    if (node.isLeaf()) {
+                        break;
+                    }
+                    BPlusNode child = tree.readFromDisk(node.getChildPtr(random.nextInt(node.getNumChildren())));
+                    child.latchShared();
+                    tree.release(node, false);
+                    node = child;
+                }
+            } finally {
+                tree.release(node, false);
+            }
+        }
+        return stats(true, levels);
+    }
+
+    /**
+     * Puts the levels together. For a sample the nodes of a level are
+     * estimated as those of the level above times its mean fanout.
+     */
+    private TreeStats stats(boolean sampled, List<Level> levels) {
+        List<Long> nodesPerLevel = new ArrayList<>();
+        Fill internal = new Fill();
+        double estimate = 1;
+        for (int i = 0; i < levels.size(); i++) {
+            Level level = levels.get(i);
+            nodesPerLevel.add(sampled ? Math.round(estimate) : level.nodes);
+            estimate *= (double) level.children / level.nodes;
+            if (i < levels.size() - 1) {
+                internal.addAll(level.fill);
+            }
+        }
+
+        Fill leafFill = new Fill();
+        double contiguity = 1;
+        if (!levels.isEmpty()) {
+            Level leaves = levels.get(levels.size() - 1);
+            leafFill = leaves.fill;
+            if (leaves.chained > 0) {
+                contiguity = (double) leaves.sequential / leaves.chained;
+            }
+        }
+        return new TreeStats(sampled, levels.size(), nodesPerLevel, leafFill.summary(), internal.summary(),
+                tree.getBlockCount(), tree.getFreeBlockCount(), contiguity);
+    }
+}
@@ -0,0 +1,142 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.LatencySummary;
+import com.mj.bplustree.TreeMetrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of one tree. The tree and its nodes add to them as they go;
+ * the cache counts and the shape of the tree are read from the buffer pool
+ * and the tree when asked for.
+ */
+final class TreeMetricsImpl implements TreeMetrics {
+
+    private final BPlusTreeImpl tree;
+
+    private final LongAdder leafPageReads = new LongAdder();
+    private final LongAdder internalPageReads = new LongAdder();
+    private final LongAdder leafPageWrites = new LongAdder();
+    private final LongAdder internalPageWrites = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder rootSplits = new LongAdder();
+
+    final LatencyHistogram finds = new LatencyHistogram();
+    final LatencyHistogram inserts = new LatencyHistogram();
+    final LatencyHistogram deletes = new LatencyHistogram();
+
+    TreeMetricsImpl(BPlusTreeImpl tree) {
+        this.tree = tree;
+    }
+
+    void pageRead(boolean leaf) {
+        (leaf ? leafPageReads : internalPageReads).increment();
+    }
+
+    void nodeWritten(boolean leaf) {
+        (leaf ? leafPageWrites : internalPageWrites).increment();
+    }
+
+    void bytesWritten(int bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    void split(int newNodes) {
+        splits.add(newNodes);
+    }
+
+    void merge() {
+        merges.increment();
+    }
+
+    void rootSplit(int levels) {
+        rootSplits.add(levels);
+    }
+
+    @Override
+    public long getLeafPageReads() {
+        return leafPageReads.sum();
+    }
+
+    @Override
+    public long getInternalPageReads() {
+        return internalPageReads.sum();
+    }
+
+    @Override
+    public long getLeafPageWrites() {
+        return leafPageWrites.sum();
+    }
+
+    @Override
+    public long getInternalPageWrites() {
+        return internalPageWrites.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getSplits() {
+        return splits.sum();
+    }
+
+    @Override
+    public long getMerges() {
+        return merges.sum();
+    }
+
+    @Override
+    public long getRootSplits() {
+        return rootSplits.sum();
+    }
+
+    @Override
+    public long getLogSyncs() {
+        return tree.getLogSyncCount();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return tree.getBufferPool().getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return tree.getBufferPool().getMisses();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return tree.getBufferPool().getEvictions();
+    }
+
+    @Override
+    public int getHeight() {
+        return tree.getHeight();
+    }
+
+    @Override
+    public long getRecordCount() {
+        return tree.getRecordCount();
+    }
+
+    @Override
+    public LatencySummary getFindLatency() {
+        return finds.summary();
+    }
+
+    @Override
+    public LatencySummary getInsertLatency() {
+        return inserts.summary();
+    }
+
+    @Override
+    public LatencySummary getDeleteLatency() {
+        return deletes.summary();
+    }
+}
@@ -0,0 +1,370 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.VerifyReport;
+import com.mj.util.KeyComparator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Checks a whole tree for BPlusTree.verify, on a tree no writer changes
+ * meanwhile.
+ * <p>
+ * Subtrees are checked in parallel by fork-join tasks, each given the key
+ * range its node must keep to: a child of a non-leaf node holds keys from
+ * the separator left of it, inclusive, up to the one right of it. Every node
+ * must have its keys in order and within its range, a non-leaf node one more
+ * child than keys, and every leaf must be at the depth the tree's height
+ * says. A task hands back the first and last leaf of its subtree, so the
+ * parent checks that the last leaf of each child links to the first leaf of
+ * the next one, and the leaf chain is checked without walking it. Leaves
+ * are too little work each for a task of their own: the leaves under one
+ * node are checked in runs of LEAVES_PER_TASK adjacent ones, a task per
+ * run, so even a tree of height 2 checks its leaf level in parallel.
+ * <p>
+ * Every block a node points to is marked in a bitmap; a block reached twice
+ * is shared or part of a cycle. The free list is then walked and marked as
+ * well, and any block left unmarked is reported: in use but unreachable, or
+ * free but not on the list, and lost either way.
+ */
+class TreeVerifier {
+
+    static final int LEAVES_PER_TASK = 16;
+
+    /**
+     * What a task reports on its subtree: the leaves at either end, what the
+     * last of them links to, and what was counted.
+     */
+    private static class Subtree {
+        int firstLeaf;
+        int lastLeaf;
+        int lastNext;
+        long nodes;
+        long leaves;
+        long records;
+    }
+
+    private final BPlusTreeImpl tree;
+    private final KeyComparator keyComparator;
+    private final int height;
+    private final int blocks;
+    private final AtomicLongArray marked;
+    private final ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong violationCount = new AtomicLong();
+
+    TreeVerifier(BPlusTreeImpl tree) {
+        this.tree = tree;
+        this.keyComparator = tree.getKeyComparator();
+        this.height = tree.getHeight();
+        this.blocks = tree.getBlockCount();
+        this.marked = new AtomicLongArray((blocks + 63) / 64);
+    }
+
+    VerifyReport verify() throws IOException {
+        Subtree all = null;
+        int root = tree.getRootPointer();
+        if (root == 0) {
+            if (height != 0) {
+                violation("the tree is empty but has height " + height);
+            }
+        } else if (mark(root, "the root pointer")) {
+            all = ForkJoinPool.commonPool().invoke(new NodeTask(root, null, null, 1));
+        }
+        if (all != null) {
+            if (all.lastNext != 0) {
+                violation("block " + all.lastLeaf + ": the last leaf links to block " + all.lastNext);
+            }
+            if (all.records != tree.getRecordCount()) {
+                violation("the leaves hold " + all.records + " records, the tree counts " + tree.getRecordCount());
+            }
+        } else if (root == 0 && tree.getRecordCount() != 0) {
+            violation("the tree is empty but counts " + tree.getRecordCount() + " records");
+        }
+
+        walkFreeList();
+        findLostBlocks();
+
+        return new VerifyReport(new ArrayList<>(violations), violationCount.get(),
+                all == null ? 0 : all.nodes, all == null ? 0 : all.leaves, all == null ? 0 : all.records, blocks);
+    }
+
+    private void violation(String message) {
+        if (violationCount.incrementAndGet() <= VerifyReport.MAX_REPORTED) {
+            violations.add(message);
+        }
+    }
+
+    /**
+     * Marks block as reached from what. Returns false, after reporting it, if
+     * the block is not a block of the tree or was reached before.
+     */
+    private boolean mark(int block, String what) {
+        if (block <= 0 || block >= blocks) {
+            violation(what + " points to block " + block + ", outside blocks 1 to " + (blocks - 1));
+            return false;
+        }
+        long bit = 1L << (block & 63);
+        long word;
+        do {
+            word = marked.get(block >> 6);
+            if ((word & bit) != 0) {
+                violation(what + " points to block " + block + ", which is reached twice");
+                return false;
+            }
+        } while (!marked.compareAndSet(block >> 6, word, word | bit));
+        return true;
+    }
+
+    private boolean isMarked(int block) {
+        return (marked.get(block >> 6) & (1L << (block & 63))) != 0;
+    }
+
+    private class NodeTask extends RecursiveTask<Subtree> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int pointer;
+        private final List<Object> low;
+        private final List<Object> high;
+        private final int level;
+
+        /**
+         * The node at pointer, on level (the root is level 1), must hold keys
+         * from low, inclusive, to high; a null bound is open.
+         */
+        NodeTask(int pointer, List<Object> low, List<Object> high, int level) {
+            this.pointer = pointer;
+            this.low = low;
+            this.high = high;
+            this.level = level;
+        }
+
+        @Override
+        protected Subtree compute() {
+            List<List<Object>> keys = new ArrayList<>();
+            int[] children;
+            Subtree result = new Subtree();
+            result.nodes = 1;
+
+            BPlusNode node;
+            try {
+                node = tree.readFromDisk(pointer);
+            } catch (IOException | RuntimeException e) {
+                violation("block " + pointer + " cannot be read: " + e);
+                return null;
+            }
+            if (node == null) {
+                violation("block " + pointer + " is in the tree but marked free");
+                return null;
+            }
+            node.latchShared();
+            try {
+                checkKeys(node, keys);
+                if (node.isLeaf()) {
+                    if (level != height) {
+                        violation("block " + pointer + ": leaf on level " + level + " of a tree of height " + height);
+                    }
+                    result.firstLeaf = pointer;
+                    result.lastLeaf = pointer;
+                    result.lastNext = node.getNextBlockPointer();
+                    result.leaves = 1;
+                    result.records = node.size();
+                    return result;
+                }
+                if (level >= height) {
+                    violation("block " + pointer + ": non-leaf node on level " + level
+                            + " of a tree of height " + height);
+                    return null;
+                }
+                children = new int[node.getNumChildren()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = node.getChildPtr(i);
+                }
+            } finally {
+                tree.release(node, false);
+            }
+
+            if (children.length != keys.size() + 1) {
+                violation("block " + pointer + ": " + keys.size() + " keys and " + children.length + " children");
+                if (children.length == 0) {
+                    return null;
+                }
+            }
+
+            List<NodeTask> tasks = new ArrayList<>(children.length);
+            for (int i = 0; i < children.length; i++) {
+                if (mark(children[i], "block " + pointer + " child " + i)) {
+                    tasks.add(new NodeTask(children[i],
+                            i == 0 ? low : keys.get(Math.min(i, keys.size()) - 1),
+                            i < keys.size() ? keys.get(i) : high, level + 1));
+                } else {
+                    tasks.add(null);
+                }
+            }
+            if (level + 1 == height) {
+                return combine(result, checkLeaves(tasks));
+            }
+            List<NodeTask> forked = new ArrayList<>();
+            for (NodeTask task : tasks) {
+                if (task != null) {
+                    forked.add(task);
+                }
+            }
+            invokeAll(forked);
+            List<Subtree> subtrees = new ArrayList<>(tasks.size());
+            for (NodeTask task : tasks) {
+                subtrees.add(task == null ? null : task.join());
+            }
+            return combine(result, subtrees);
+        }
+
+        /**
+         * Runs the leaf tasks in runs of adjacent leaves, one fork-join task
+         * per run, and returns their subtrees in key order.
+         */
+        private List<Subtree> checkLeaves(List<NodeTask> tasks) {
+            if (tasks.size() <= LEAVES_PER_TASK) {
+                return new LeafRun(tasks).compute();
+            }
+            List<LeafRun> runs = new ArrayList<>();
+            for (int from = 0; from < tasks.size(); from += LEAVES_PER_TASK) {
+                runs.add(new LeafRun(tasks.subList(from, Math.min(tasks.size(), from + LEAVES_PER_TASK))));
+            }
+            invokeAll(runs);
+            List<Subtree> leaves = new ArrayList<>(tasks.size());
+            for (LeafRun run : runs) {
+                leaves.addAll(run.join());
+            }
+            return leaves;
+        }
+
+        /**
+         * Copies the keys of node to keys and checks their order and range.
+         * Each kind of fault is reported once per node.
+         */
+        private void checkKeys(BPlusNode node, List<List<Object>> keys) {
+            boolean unordered = false;
+            boolean outside = false;
+            for (int i = 0; i < node.size(); i++) {
+                List<Object> key = node.getKey(i);
+                if (!unordered && i > 0 && keyComparator.compare(keys.get(i - 1), key) >= 0) {
+                    violation("block " + pointer + ": key " + key + " at " + i + " is not above " + keys.get(i - 1));
+                    unordered = true;
+                }
+                if (!outside && ((low != null && keyComparator.compare(key, low) < 0)
+                        || (high != null && keyComparator.compare(key, high) >= 0))) {
+                    violation("block " + pointer + ": key " + key + " is outside [" + low + ", " + high + ")");
+                    outside = true;
+                }
+                keys.add(key);
+            }
+        }
+
+        /**
+         * Adds up the subtrees of the children in order, checking that each
+         * one's last leaf links to the next one's first. A null subtree could
+         * not be checked, so neither can the links around it.
+         */
+        private Subtree combine(Subtree result, List<Subtree> subtrees) {
+            Subtree previous = null;
+            boolean first = true;
+            for (Subtree s : subtrees) {
+                if (s == null) {
+                    previous = null;
+                    continue;
+                }
+                if (previous != null && previous.lastNext != s.firstLeaf) {
+                    violation("block " + previous.lastLeaf + ": leaf links to block " + previous.lastNext
+                            + ", the next leaf is block " + s.firstLeaf);
+                }
+                if (first) {
+                    result.firstLeaf = s.firstLeaf;
+                    first = false;
+                }
+                result.lastLeaf = s.lastLeaf;
+                result.lastNext = s.lastNext;
+                result.nodes += s.nodes;
+                result.leaves += s.leaves;
+                result.records += s.records;
+                previous = s;
+            }
+            return first ? null : result;
+        }
+    }
+
+    /**
+     * Checks a run of adjacent leaves, null standing for a leaf that was not
+     * checked, and hands back their subtrees in order.
+     */
+    private static class LeafRun extends RecursiveTask<List<Subtree>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<NodeTask> tasks;
+
+        LeafRun(List<NodeTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected List<Subtree> compute() {
+            List<Subtree> leaves = new ArrayList<>(tasks.size());
+            for (NodeTask task : tasks) {
+                leaves.add(task == null ? null : task.compute());
+            }
+            return leaves;
+        }
+    }
+
+    /**
+     * Follows the free list, checking that every block on it is free, not in
+     * the tree and on it once, and that its length is the one kept.
+     */
+    private void walkFreeList() throws IOException {
+        int count = 0;
+        String from = "the free list head";
+        int pointer = tree.getFreeListHead();
+        while (pointer != 0) {
+            if (!mark(pointer, from)) {
+                break;
+            }
+            ByteBuffer page = tree.readPage(pointer);
+            if (page.get(page.position()) != 0) {
+                violation("block " + pointer + " is on the free list but in use");
+                break;
+            }
+            count++;
+            from = "free block " + pointer;
+            pointer = page.getInt(page.position() + 1);
+        }
+        if (count != tree.getFreeBlockCount()) {
+            violation("the free list has " + count + " blocks, the tree counts " + tree.getFreeBlockCount());
+        }
+    }
+
+    private void findLostBlocks() throws IOException {
+        int filePages = tree.getFilePages();
+        for (int pointer = 1; pointer < blocks; pointer++) {
+            if (isMarked(pointer)) {
+                continue;
+            }
+            if (tree.getBufferPool().contains(pointer)) {
+                violation("block " + pointer + " is a cached node not reachable from the root");
+            } else if (pointer >= filePages) {
+                violation("block " + pointer + " was allocated but never written");
+            } else {
+                ByteBuffer page = tree.readPage(pointer);
+                violation(page.get(page.position()) == 0
+                        ? "block " + pointer + " is free but not on the free list"
+                        : "block " + pointer + " is in use but not reachable from the root");
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mj.db.buffer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * The cache hits the buffer pool has not yet reported to its eviction
+ * policy, recorded without a lock or an allocation.
+ * <p>
+ * Each thread writes to one of a few rings of page numbers, picked by its
+ * id. A ring that is not drained in time overwrites its oldest entries, so
+ * the policy misses some hits and its order is only approximate under heavy
+ * load. A slot that is being written while the ring is drained may be read
+ * with the page number it held before; that is harmless the same way.
+ */
+final class AccessRing {
+
+    private static final int SIZE = 1024;
+
+    private final AtomicLong[] tails;
+    private final long[] heads;
+    private final AtomicIntegerArray[] slots;
+    private final int mask;
+
+    AccessRing() {
+        int rings = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        tails = new AtomicLong[rings];
+        heads = new long[rings];
+        slots = new AtomicIntegerArray[rings];
+        for (int r = 0; r < rings; r++) {
+            tails[r] = new AtomicLong();
+            slots[r] = new AtomicIntegerArray(SIZE);
+        }
+        mask = rings - 1;
+    }
+
+    void record(int pageId) {
+        int r = (int) Thread.currentThread().getId() & mask;
+        long tail = tails[r].getAndIncrement();
+        slots[r].lazySet((int) tail & (SIZE - 1), pageId);
+    }
+
+    /**
+     * Hands every recorded page to consumer, oldest first within a ring.
+     * Only one thread may drain at a time.
+     */
+    void drain(IntConsumer consumer) {
+        for (int r = 0; r < tails.length; r++) {
+            long tail = tails[r].get();
+            for (long i = Math.max(heads[r], tail - SIZE); i < tail; i++) {
+                consumer.accept(slots[r].get((int) i & (SIZE - 1)));
+            }
+            heads[r] = tail;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package com.mj.db.buffer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounded cache of pages keyed by block pointer.
+ * <p>
+ * A page handed out by pin stays resident until the matching unpin; only
+ * unpinned pages are offered to the eviction policy. Dirty pages are written
+ * through the PageWriter before they are dropped, or all at once by flush.
+ * If every resident page is pinned the pool temporarily grows past its
+ * capacity instead of failing the traversal.
+ * <p>
+ * The pool is thread-safe, and a hit neither locks nor allocates: the frames
+ * are in a PageTable keyed by int, a pin is a compare-and-set on the
+ * frame's pin count, and the hit is written to an AccessRing. The eviction
+ * policy is not thread-safe; it is told about new pages under policyLock,
+ * and about the hits in the ring when a miss next takes that lock. A miss is loaded
+ * outside any lock; threads that miss on a page which is already being
+ * loaded wait for that load instead of reading it again. A dirty victim is
+ * written outside any lock as well, while its frame, marked evicting, keeps
+ * other threads from reading the block before the write is done.
+ */
+public class BufferPool<P> {
+
+    /**
+     * Pin count of a frame claimed for eviction; pins fail until the frame
+     * is gone, or back in the pool if its write failed.
+     */
+    private static final int EVICTING = -1;
+
+    /**
+     * pins: the pin count, or EVICTING.
+     * <p>
+     * loading: set while the page is read; removed: set once the frame has
+     * left the map; writing: set while flush writes the page, which keeps it
+     * from being evicted meanwhile. Changes of these and of pins to or from
+     * EVICTING are made holding the frame's monitor, which is also what
+     * threads waiting on the frame wait on.
+     */
+    private static final class Frame<P> {
+        final int pageId;
+        final AtomicInteger pins = new AtomicInteger();
+        volatile P page;
+        volatile boolean dirty;
+        volatile boolean loading;
+        volatile boolean removed;
+        volatile boolean writing;
+
+        Frame(int pageId, P page) {
+            this.pageId = pageId;
+            this.page = page;
+        }
+
+        /**
+         * Adds a pin unless the frame is being evicted.
+         */
+        boolean tryPin() {
+            while (true) {
+                int c = pins.get();
+                if (c == EVICTING) {
+                    return false;
+                }
+                if (pins.compareAndSet(c, c + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void unpin() {
+            while (true) {
+                int c = pins.get();
+                if (c <= 0 || pins.compareAndSet(c, c - 1)) {
+                    return;
+                }
+            }
+        }
+
+        boolean isEvictable() {
+            return pins.get() == 0 && !loading && !writing && !removed;
+        }
+
+        synchronized void await() throws IOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for page " + pageId);
+            }
+        }
+
+        /**
+         * Waits like await, keeping an interrupt for later; for callers that
+         * cannot fail.
+         */
+        synchronized void awaitUninterruptibly() {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final PageTable<Frame<P>> frames = new PageTable<>();
+    private final int capacity;
+    private final EvictionPolicy policy;
+    private final PageWriter<P> writer;
+
+    /**
+     * policyLock guards the policy and draining hits; hits holds those not
+     * yet reported to it.
+     */
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final AccessRing hits = new AccessRing();
+    private final IntConsumer reportHit = this::reportHit;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BufferPool(int capacity, EvictionPolicy policy, PageWriter<P> writer) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("buffer pool capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.writer = writer;
+    }
+
+    /**
+     * Returns the page, loading it on a miss, and pins it.
+     * Returns null without pinning if the loader reports the page unused.
+     */
+    public P pin(int pageId, PageLoader<P> loader) throws IOException {
+        while (true) {
+            Frame<P> frame = frames.get(pageId);
+            if (frame == null) {
+                // placeholder: pinned, so never a victim, and unknown to the policy until loaded
+                Frame<P> placeholder = new Frame<>(pageId, null);
+                placeholder.pins.set(1);
+                placeholder.loading = true;
+                if (frames.putIfAbsent(pageId, placeholder) == null) {
+                    misses.increment();
+                    return load(placeholder, loader);
+                }
+                continue;
+            }
+
+            if (!frame.tryPin()) {
+                awaitEvicted(frame);
+                continue;
+            }
+            if (frame.loading) {
+                awaitLoaded(frame);
+            }
+            if (frame.removed && frame.page == null) {
+                // the load failed or found the page unused: try for ourselves
+                frame.unpin();
+                continue;
+            }
+            hitCount.increment();
+            hits.record(pageId);
+            return frame.page;
+        }
+    }
+
+    private P load(Frame<P> frame, PageLoader<P> loader) throws IOException {
+        P page = null;
+        try {
+            page = loader.load(frame.pageId);
+        } finally {
+            synchronized (frame) {
+                frame.page = page;
+                frame.loading = false;
+                if (page == null) {
+                    frame.removed = true;
+                    frames.remove(frame.pageId, frame);
+                }
+                frame.notifyAll();
+            }
+        }
+        if (page == null) {
+            return null;
+        }
+        register(frame.pageId);
+        try {
+            makeRoom(capacity);
+        } catch (IOException | RuntimeException e) {
+            // the caller never gets the page, so it cannot unpin it
+            frame.unpin();
+            throw e;
+        }
+        return page;
+    }
+
+    private void awaitLoaded(Frame<P> frame) throws IOException {
+        synchronized (frame) {
+            while (frame.loading) {
+                frame.await();
+            }
+        }
+    }
+
+    private void awaitEvicted(Frame<P> frame) throws IOException {
+        synchronized (frame) {
+            while (frame.pins.get() == EVICTING && !frame.removed) {
+                frame.await();
+            }
+        }
+    }
+
+    public void unpin(int pageId) {
+        Frame<P> frame = frames.get(pageId);
+        if (frame != null) {
+            frame.unpin();
+        }
+    }
+
+    /**
+     * Installs or replaces the cached copy of a page. Pins held on a replaced
+     * page are carried over to the new one.
+     */
+    public void put(int pageId, P page, boolean dirty) throws IOException {
+        install(pageId, page, dirty, false);
+    }
+
+    /**
+     * Like put, and pins the page in the same step, so it cannot be evicted
+     * and read back as a different copy before the caller holds a pin.
+     */
+    public void putPinned(int pageId, P page, boolean dirty) throws IOException {
+        install(pageId, page, dirty, true);
+    }
+
+    private void install(int pageId, P page, boolean dirty, boolean pin) throws IOException {
+        while (true) {
+            Frame<P> frame = frames.get(pageId);
+            if (frame == null) {
+                frame = new Frame<>(pageId, page);
+                frame.dirty = dirty;
+                frame.pins.set(pin ? 1 : 0);
+                if (frames.putIfAbsent(pageId, frame) != null) {
+                    continue;
+                }
+                register(pageId);
+                makeRoom(capacity);
+                return;
+            }
+
+            synchronized (frame) {
+                if (frame.removed) {
+                    continue;
+                }
+                if (frame.loading || frame.pins.get() == EVICTING) {
+                    frame.await();
+                    continue;
+                }
+                frame.page = page;
+                frame.dirty = frame.dirty || dirty;
+                if (pin) {
+                    frame.pins.incrementAndGet();
+                }
+            }
+            hits.record(pageId);
+            return;
+        }
+    }
+
+    public void markDirty(int pageId) {
+        Frame<P> frame = frames.get(pageId);
+        if (frame != null) {
+            frame.dirty = true;
+        }
+    }
+
+    public boolean isDirty(int pageId) {
+        Frame<P> frame = frames.get(pageId);
+        return frame != null && frame.dirty;
+    }
+
+    public boolean contains(int pageId) {
+        return frames.containsKey(pageId);
+    }
+
+    /**
+     * Drops a page without writing it back, e.g. after the block is freed.
+     * An eviction of the page that is writing it is waited for, so the old
+     * content cannot reach the block after the caller's next write.
+     */
+    public void discard(int pageId) {
+        Frame<P> frame = frames.get(pageId);
+        if (frame == null) {
+            return;
+        }
+        synchronized (frame) {
+            while (frame.pins.get() == EVICTING && !frame.removed) {
+                frame.awaitUninterruptibly();
+            }
+            if (frame.removed) {
+                return;
+            }
+            frame.removed = true;
+            frames.remove(pageId, frame);
+            frame.notifyAll();
+        }
+        policyLock.lock();
+        try {
+            policy.remove(pageId);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Writes every dirty page in block order and marks it clean.
+     */
+    public void flush() throws IOException {
+        List<Integer> dirty = new ArrayList<>();
+        for (Frame<P> frame : frames.values()) {
+            if (frame.dirty) {
+                dirty.add(frame.pageId);
+            }
+        }
+        dirty.sort(null);
+
+        for (int pageId : dirty) {
+            Frame<P> frame = frames.get(pageId);
+            if (frame == null) {
+                continue;
+            }
+            P page;
+            synchronized (frame) {
+                // an eviction in progress writes the page itself
+                while (frame.pins.get() == EVICTING && !frame.removed) {
+                    frame.await();
+                }
+                if (frame.removed || !frame.dirty) {
+                    continue;
+                }
+                frame.writing = true;
+                frame.dirty = false;
+                page = frame.page;
+            }
+            try {
+                writer.write(pageId, page);
+            } catch (IOException | RuntimeException e) {
+                frame.dirty = true;
+                throw e;
+            } finally {
+                frame.writing = false;
+            }
+        }
+    }
+
+    /**
+     * Drops every page. Dirty pages are lost; call flush first.
+     */
+    public void clear() {
+        for (Frame<P> frame : frames.values()) {
+            discard(frame.pageId);
+        }
+    }
+
+    /**
+     * Tells the policy about a page new to the pool, after the hits before
+     * it, so it can be chosen as a victim from now on.
+     */
+    private void register(int pageId) {
+        policyLock.lock();
+        try {
+            hits.drain(reportHit);
+            policy.recordAccess(pageId);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Passes a hit from the ring on to the policy, unless the page has left
+     * the pool since. The caller holds policyLock.
+     */
+    private void reportHit(int pageId) {
+        Frame<P> frame = frames.get(pageId);
+        if (frame != null && !frame.removed && frame.pins.get() != EVICTING) {
+            policy.recordAccess(pageId);
+        }
+    }
+
+    /**
+     * Evicts unpinned pages until at most limit remain, or none can go. A
+     * dirty page is dropped only once it is written: if the write fails the
+     * page stays cached and dirty, and the error goes to the caller.
+     */
+    private void makeRoom(int limit) throws IOException {
+        while (frames.size() > limit) {
+            Frame<P> victim;
+            policyLock.lock();
+            try {
+                hits.drain(reportHit);
+                victim = claimVictim();
+            } finally {
+                policyLock.unlock();
+            }
+            if (victim == null) {
+                return;
+            }
+            evict(victim);
+        }
+    }
+
+    /**
+     * Picks a victim and marks it evicting, or returns null if every page is
+     * pinned. The caller holds policyLock.
+     */
+    private Frame<P> claimVictim() {
+        while (true) {
+            int pageId = policy.selectVictim(id -> {
+                Frame<P> frame = frames.get(id);
+                return frame == null || frame.isEvictable();
+            });
+            if (pageId < 0) {
+                return null;
+            }
+            Frame<P> frame = frames.get(pageId);
+            if (frame == null) {
+                policy.remove(pageId);
+                continue;
+            }
+            synchronized (frame) {
+                if (frame.removed) {
+                    policy.remove(pageId);
+                    continue;
+                }
+                // pinned since the policy looked: it is skipped next time round
+                if (!frame.loading && !frame.writing && frame.pins.compareAndSet(0, EVICTING)) {
+                    policy.remove(pageId);
+                    return frame;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a claimed victim if it is dirty, outside any lock, then drops it.
+     */
+    private void evict(Frame<P> frame) throws IOException {
+        try {
+            if (frame.dirty) {
+                writer.write(frame.pageId, frame.page);
+                frame.dirty = false;
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (frame) {
+                frame.pins.set(0);
+                frame.notifyAll();
+            }
+            register(frame.pageId);
+            throw e;
+        }
+        synchronized (frame) {
+            frame.removed = true;
+            frames.remove(frame.pageId, frame);
+            frame.notifyAll();
+        }
+        evictions.increment();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public long getHits() {
+        return hitCount.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,81 @@
+package com.mj.db.buffer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * CLOCK (second chance): pages sit in a ring with a reference bit. A hit only
+ * sets the bit, so the hot path does no list manipulation; the hand clears
+ * bits as it sweeps and evicts the first unreferenced, unpinned page.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private static final int FREE = -1;
+
+    private int[] ring = new int[64];
+    private boolean[] referenced = new boolean[64];
+    private int used = 0;
+    private int hand = 0;
+
+    private final Map<Integer, Integer> slots = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    @Override
+    public void recordAccess(int pageId) {
+        Integer slot = slots.get(pageId);
+        if (slot != null) {
+            referenced[slot] = true;
+            return;
+        }
+
+        int s;
+        if (!freeSlots.isEmpty()) {
+            s = freeSlots.poll();
+        } else {
+            if (used == ring.length) {
+                ring = Arrays.copyOf(ring, used * 2);
+                referenced = Arrays.copyOf(referenced, used * 2);
+            }
+            s = used++;
+        }
+        ring[s] = pageId;
+        referenced[s] = true;
+        slots.put(pageId, s);
+    }
+
+    @Override
+    public void remove(int pageId) {
+        Integer slot = slots.remove(pageId);
+        if (slot != null) {
+            ring[slot] = FREE;
+            referenced[slot] = false;
+            freeSlots.add(slot);
+        }
+    }
+
+    @Override
+    public int selectVictim(IntPredicate evictable) {
+        if (slots.isEmpty()) {
+            return -1;
+        }
+        // two full sweeps: the first may only clear reference bits
+        for (int i = 0; i < 2 * used; i++) {
+            int s = hand;
+            hand = (hand + 1) % used;
+
+            int pageId = ring[s];
+            if (pageId == FREE) {
+                continue;
+            }
+            if (referenced[s]) {
+                referenced[s] = false;
+            } else if (evictable.test(pageId)) {
+                return pageId;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,30 @@
+package com.mj.db.buffer;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Decides which cached page the buffer pool drops when it is over budget.
+ * The pool reports accesses and removals one at a time, never concurrently;
+ * the policy only keeps the bookkeeping it needs to pick a victim.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called for every newly cached page, and for hits. Hits are reported in
+     * batches, once the pool next misses, and under heavy load some may not
+     * be reported at all.
+     */
+    void recordAccess(int pageId);
+
+    /**
+     * Called when a page leaves the pool for any reason.
+     */
+    void remove(int pageId);
+
+    /**
+     * Picks the next page to evict among those accepted by evictable
+     * (pinned pages are rejected). Returns -1 if there is no candidate.
+     */
+    int selectVictim(IntPredicate evictable);
+
+}
@@ -0,0 +1,37 @@
+package com.mj.db.buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Least recently used: victims are taken from the cold end of an access
+ * ordered set, skipping pinned pages.
+ */
+public class LRUEvictionPolicy implements EvictionPolicy {
+
+    private final LinkedHashSet<Integer> order = new LinkedHashSet<>();
+
+    @Override
+    public void recordAccess(int pageId) {
+        order.remove(pageId);
+        order.add(pageId);
+    }
+
+    @Override
+    public void remove(int pageId) {
+        order.remove(pageId);
+    }
+
+    @Override
+    public int selectVictim(IntPredicate evictable) {
+        Iterator<Integer> it = order.iterator();
+        while (it.hasNext()) {
+            int pageId = it.next();
+            if (evictable.test(pageId)) {
+                return pageId;
+            }
+        }
+        return -1;
+    }
+}
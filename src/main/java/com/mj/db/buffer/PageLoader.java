@@ -0,0 +1,13 @@
+package com.mj.db.buffer;
+
+import java.io.IOException;
+
+/**
+ * Reads a page from the backing store on a buffer pool miss.
+ * Returning null means the page is not in use and must not be cached.
+ */
+public interface PageLoader<P> {
+
+    P load(int pageId) throws IOException;
+
+}
@@ -0,0 +1,216 @@
+package com.mj.db.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Map from page number to frame for the buffer pool. Keys are plain ints, so
+ * a lookup neither boxes nor allocates.
+ * <p>
+ * The table is split into stripes, each an open addressing table behind its
+ * own StampedLock. A lookup reads optimistically and only takes the read
+ * lock if a writer changed the stripe meanwhile; writers lock their stripe.
+ * Entries are deleted by shifting the following ones back, so there are no
+ * tombstones and a probe ends at the first empty slot.
+ */
+final class PageTable<V> {
+
+    private static final int STRIPES = 16;
+    private static final int INITIAL_SLOTS = 16;
+
+    /**
+     * keys and values of one stripe, replaced as a whole when it grows, so
+     * a reader always sees two arrays of the same length.
+     */
+    private static final class Slots {
+        final int[] keys;
+        final Object[] values;
+
+        Slots(int n) {
+            keys = new int[n];
+            values = new Object[n];
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Stripe extends StampedLock {
+        Slots slots = new Slots(INITIAL_SLOTS);
+        int count;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+
+    PageTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe stripe(int hash) {
+        return stripes[hash >>> 28];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int h = hash(key);
+        Stripe s = stripe(h);
+        long stamp = s.tryOptimisticRead();
+        if (stamp != 0) {
+            Object value = find(s.slots, key, h);
+            if (s.validate(stamp)) {
+                return (V) value;
+            }
+        }
+        stamp = s.readLock();
+        try {
+            return (V) find(s.slots, key, h);
+        } finally {
+            s.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The probe is bounded by the table length, so a reader racing a writer
+     * ends, if with a wrong answer that validate then rejects.
+     */
+    private static Object find(Slots t, int key, int hash) {
+        int mask = t.keys.length - 1;
+        int i = hash & mask;
+        for (int n = 0; n <= mask; n++) {
+            Object value = t.values[i];
+            if (value == null) {
+                return null;
+            }
+            if (t.keys[i] == key) {
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Adds the entry unless the key is present, and returns the value that
+     * was there, or null if value was added.
+     */
+    @SuppressWarnings("unchecked")
+    V putIfAbsent(int key, V value) {
+        int h = hash(key);
+        Stripe s = stripe(h);
+        long stamp = s.writeLock();
+        try {
+            Object existing = find(s.slots, key, h);
+            if (existing != null) {
+                return (V) existing;
+            }
+            if ((s.count + 1) * 2 > s.slots.keys.length) {
+                s.slots = grow(s.slots);
+            }
+            insert(s.slots, key, value, h);
+            s.count++;
+            size.incrementAndGet();
+            return null;
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    private static void insert(Slots t, int key, Object value, int hash) {
+        int mask = t.keys.length - 1;
+        int i = hash & mask;
+        while (t.values[i] != null) {
+            i = (i + 1) & mask;
+        }
+        t.keys[i] = key;
+        t.values[i] = value;
+    }
+
+    private static Slots grow(Slots t) {
+        Slots bigger = new Slots(t.keys.length * 2);
+        for (int i = 0; i < t.keys.length; i++) {
+            if (t.values[i] != null) {
+                insert(bigger, t.keys[i], t.values[i], hash(t.keys[i]));
+            }
+        }
+        return bigger;
+    }
+
+    /**
+     * Removes the entry if key maps to this very value.
+     */
+    boolean remove(int key, V value) {
+        int h = hash(key);
+        Stripe s = stripe(h);
+        long stamp = s.writeLock();
+        try {
+            Slots t = s.slots;
+            int mask = t.keys.length - 1;
+            int i = h & mask;
+            while (t.values[i] != null && (t.keys[i] != key || t.values[i] != value)) {
+                i = (i + 1) & mask;
+            }
+            if (t.values[i] == null) {
+                return false;
+            }
+            // shift back every following entry whose home slot is not in (i, j]
+            t.values[i] = null;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (t.values[j] == null) {
+                    break;
+                }
+                int home = hash(t.keys[j]) & mask;
+                boolean between = i <= j ? i < home && home <= j : i < home || home <= j;
+                if (!between) {
+                    t.keys[i] = t.keys[j];
+                    t.values[i] = t.values[j];
+                    t.values[j] = null;
+                    i = j;
+                }
+            }
+            s.count--;
+            size.decrementAndGet();
+            return true;
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * The values present at some point during the call, stripe by stripe.
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        for (Stripe s : stripes) {
+            long stamp = s.readLock();
+            try {
+                for (Object value : s.slots.values) {
+                    if (value != null) {
+                        values.add((V) value);
+                    }
+                }
+            } finally {
+                s.unlockRead(stamp);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,12 @@
+package com.mj.db.buffer;
+
+import java.io.IOException;
+
+/**
+ * Writes a dirty page back to the backing store on eviction or flush.
+ */
+public interface PageWriter<P> {
+
+    void write(int pageId, P page) throws IOException;
+
+}
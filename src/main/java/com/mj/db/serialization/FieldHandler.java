@@ -0,0 +1,272 @@
+package com.mj.db.serialization;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.util.FloatComparator;
+import com.mj.util.IntegerComparator;
+import com.mj.util.StringComparator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Everything done with the values of one field type: reading and writing
+ * them, their size, comparing them and their normalized form, see
+ * NormalizedKeyEncoder.
+ * <p>
+ * The codecs, KeyComparator and NormalizedKeyEncoder look the handler of each
+ * field up once, when they are built from the schema, and then run a plain
+ * loop over an array of handlers rather than testing the type of every value
+ * or looking fields up by name.
+ */
+public enum FieldHandler {
+
+    INTEGER {
+        @Override
+        Object read(DataInputStream dis) throws IOException {
+            return dis.readInt();
+        }
+
+        @Override
+        Object read(ByteBuffer page, int offset) {
+            return page.getInt(offset);
+        }
+
+        @Override
+        void write(Object value, DataOutputStream dos) throws IOException {
+            dos.writeInt((int) value);
+        }
+
+        @Override
+        int size(Object value) {
+            return 4;
+        }
+
+        @Override
+        int size(ByteBuffer page, int offset) {
+            return 4;
+        }
+
+        @Override
+        public int compare(Object a, Object b) {
+            return INTEGERS.compare((Integer) a, (Integer) b);
+        }
+
+        @Override
+        int normalizedSize(Object value) {
+            return 4;
+        }
+
+        @Override
+        int putNormalized(Object value, byte[] out, int pos) {
+            return putInt(out, pos, (int) value ^ Integer.MIN_VALUE);
+        }
+    },
+
+    DECIMAL {
+        @Override
+        Object read(DataInputStream dis) throws IOException {
+            return dis.readFloat();
+        }
+
+        @Override
+        Object read(ByteBuffer page, int offset) {
+            return page.getFloat(offset);
+        }
+
+        @Override
+        void write(Object value, DataOutputStream dos) throws IOException {
+            dos.writeFloat((float) value);
+        }
+
+        @Override
+        int size(Object value) {
+            return 4;
+        }
+
+        @Override
+        int size(ByteBuffer page, int offset) {
+            return 4;
+        }
+
+        @Override
+        public int compare(Object a, Object b) {
+            return FLOATS.compare((Float) a, (Float) b);
+        }
+
+        @Override
+        int normalizedSize(Object value) {
+            return 4;
+        }
+
+        @Override
+        int putNormalized(Object value, byte[] out, int pos) {
+            int bits = Float.floatToIntBits((float) value);
+            return putInt(out, pos, bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE);
+        }
+    },
+
+    BOOL {
+        @Override
+        Object read(DataInputStream dis) throws IOException {
+            return dis.readBoolean();
+        }
+
+        @Override
+        Object read(ByteBuffer page, int offset) {
+            return page.get(offset) != 0;
+        }
+
+        @Override
+        void write(Object value, DataOutputStream dos) throws IOException {
+            dos.writeBoolean((boolean) value);
+        }
+
+        @Override
+        int size(Object value) {
+            return 1;
+        }
+
+        @Override
+        int size(ByteBuffer page, int offset) {
+            return 1;
+        }
+
+        @Override
+        public int compare(Object a, Object b) {
+            return Boolean.compare((boolean) a, (boolean) b);
+        }
+
+        @Override
+        int normalizedSize(Object value) {
+            return 1;
+        }
+
+        @Override
+        int putNormalized(Object value, byte[] out, int pos) {
+            out[pos] = (byte) ((boolean) value ? 1 : 0);
+            return pos + 1;
+        }
+    },
+
+    /**
+     * A 4 byte length and the UTF-8 bytes.
+     */
+    STRING {
+        @Override
+        Object read(DataInputStream dis) throws IOException {
+            byte[] sBytes = new byte[dis.readInt()];
+            dis.readFully(sBytes);
+            return new String(sBytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        Object read(ByteBuffer page, int offset) {
+            byte[] sBytes = new byte[page.getInt(offset)];
+            page.get(offset + 4, sBytes);
+            return new String(sBytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        void write(Object value, DataOutputStream dos) throws IOException {
+            byte[] valBytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            dos.writeInt(valBytes.length);
+            dos.write(valBytes);
+        }
+
+        @Override
+        int size(Object value) {
+            return 4 + RecordSerDeserializer.utf8Length((String) value);
+        }
+
+        @Override
+        int size(ByteBuffer page, int offset) {
+            return 4 + page.getInt(offset);
+        }
+
+        @Override
+        public int compare(Object a, Object b) {
+            return STRINGS.compare((String) a, (String) b);
+        }
+
+        @Override
+        int normalizedSize(Object value) {
+            return NormalizedKeyEncoder.stringSize((String) value);
+        }
+
+        @Override
+        int putNormalized(Object value, byte[] out, int pos) {
+            return NormalizedKeyEncoder.putString((String) value, out, pos);
+        }
+    };
+
+    private static final IntegerComparator INTEGERS = new IntegerComparator();
+    private static final FloatComparator FLOATS = new FloatComparator();
+    private static final StringComparator STRINGS = new StringComparator();
+
+    abstract Object read(DataInputStream dis) throws IOException;
+
+    /**
+     * Reads the value at offset in page with absolute gets only.
+     */
+    abstract Object read(ByteBuffer page, int offset);
+
+    abstract void write(Object value, DataOutputStream dos) throws IOException;
+
+    /**
+     * The bytes write produces for value.
+     */
+    abstract int size(Object value);
+
+    /**
+     * The bytes of the value written at offset in page.
+     */
+    abstract int size(ByteBuffer page, int offset);
+
+    public abstract int compare(Object a, Object b);
+
+    abstract int normalizedSize(Object value);
+
+    /**
+     * Writes the normalized form of value at pos and returns the position after it.
+     */
+    abstract int putNormalized(Object value, byte[] out, int pos);
+
+    static int putInt(byte[] out, int pos, int v) {
+        out[pos] = (byte) (v >>> 24);
+        out[pos + 1] = (byte) (v >>> 16);
+        out[pos + 2] = (byte) (v >>> 8);
+        out[pos + 3] = (byte) v;
+        return pos + 4;
+    }
+
+    public static FieldHandler of(FieldType type) {
+        switch (type) {
+            case integer:
+                return INTEGER;
+            case decimal:
+                return DECIMAL;
+            case bool:
+                return BOOL;
+            case string:
+                return STRING;
+            default:
+                throw new RuntimeException("UnSupported field type " + type);
+        }
+    }
+
+    /**
+     * The handlers of fields, in order.
+     */
+    public static FieldHandler[] of(List<Field> fields) {
+        FieldHandler[] handlers = new FieldHandler[fields.size()];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = of(fields.get(i).getFieldType());
+        }
+        return handlers;
+    }
+}
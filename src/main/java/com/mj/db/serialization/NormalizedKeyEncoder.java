@@ -0,0 +1,120 @@
+package com.mj.db.serialization;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.util.StringComparator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes keys into bytes that, compared as unsigned bytes, sort in the same
+ * order KeyComparator puts the keys in, so that encoded keys can be compared
+ * with Arrays.compareUnsigned. The tree itself still compares decoded keys
+ * with KeyComparator; this is the encoding a byte-wise search, or prefix
+ * compression of keys, would build on.
+ * <p>
+ * The fields of the key are encoded one after the other:
+ * <ul>
+ * <li>integer: 4 bytes big-endian with the sign bit flipped</li>
+ * <li>decimal: the 4 bytes of the float, with only the sign bit flipped if
+ * it is positive and every bit flipped if it is negative, which is the order
+ * of Float.compare</li>
+ * <li>bool: one byte, 0 or 1</li>
+ * <li>string: every code point case folded as StringComparator does,
+ * written as UTF-8 except for 0 and 1, which take two bytes so that no byte
+ * is 0, and then a 0 byte. The terminator sorts a string before the strings
+ * it is a prefix of, whatever field follows.</li>
+ * </ul>
+ * A key with fewer fields than the key spec, as a scan bound can be, encodes
+ * to a prefix of the keys it matches, and sorts before all of them, as it
+ * does with KeyComparator.
+ * <p>
+ * The encoding is one way: the case of a string is lost.
+ */
+public class NormalizedKeyEncoder {
+
+    private final FieldHandler[] handlers;
+
+    public NormalizedKeyEncoder(Map<String, Field> recordSpec, List<String> keySpec) {
+        handlers = new FieldHandler[keySpec.size()];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = FieldHandler.of(recordSpec.get(keySpec.get(i)).getFieldType());
+        }
+    }
+
+    public byte[] encode(List<Object> key) {
+        int size = 0;
+        for (int i = 0; i < key.size(); i++) {
+            size += handlers[i].normalizedSize(key.get(i));
+        }
+
+        byte[] out = new byte[size];
+        int pos = 0;
+        for (int i = 0; i < key.size(); i++) {
+            pos = handlers[i].putNormalized(key.get(i), out, pos);
+        }
+        return out;
+    }
+
+    static int stringSize(String s) {
+        int n = 1;
+        for (int i = 0; i < s.length(); ) {
+            int c = s.codePointAt(i);
+            n += codePointSize(StringComparator.fold(c));
+            i += Character.charCount(c);
+        }
+        return n;
+    }
+
+    static int putString(String s, byte[] out, int pos) {
+        for (int i = 0; i < s.length(); ) {
+            int c = s.codePointAt(i);
+            pos = putCodePoint(out, pos, StringComparator.fold(c));
+            i += Character.charCount(c);
+        }
+        out[pos] = 0;
+        return pos + 1;
+    }
+
+    private static int codePointSize(int c) {
+        if (c < 2) {
+            return 2;
+        }
+        return c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+    }
+
+    private static int putCodePoint(byte[] out, int pos, int c) {
+        if (c < 2) {
+            // 0 is the terminator, so 0 and 1 go below 2, the first single byte char
+            out[pos] = 1;
+            out[pos + 1] = (byte) (c + 1);
+            return pos + 2;
+        }
+        if (c < 0x80) {
+            out[pos] = (byte) c;
+            return pos + 1;
+        }
+        if (c < 0x800) {
+            out[pos] = (byte) (0xC0 | c >> 6);
+            out[pos + 1] = (byte) (0x80 | c & 0x3F);
+            return pos + 2;
+        }
+        if (c < 0x10000) {
+            // a lone surrogate as well, which keeps it between its neighbours
+            out[pos] = (byte) (0xE0 | c >> 12);
+            out[pos + 1] = (byte) (0x80 | c >> 6 & 0x3F);
+            out[pos + 2] = (byte) (0x80 | c & 0x3F);
+            return pos + 3;
+        }
+        out[pos] = (byte) (0xF0 | c >> 18);
+        out[pos + 1] = (byte) (0x80 | c >> 12 & 0x3F);
+        out[pos + 2] = (byte) (0x80 | c >> 6 & 0x3F);
+        out[pos + 3] = (byte) (0x80 | c & 0x3F);
+        return pos + 4;
+    }
+
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+}
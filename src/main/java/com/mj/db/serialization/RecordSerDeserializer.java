@@ -1,94 +1,130 @@
 package com.mj.db.serialization;
 
 import com.mj.bplustree.fields.Field;
-import com.mj.bplustree.fields.FieldType;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class RecordSerDeserializer {
 
-    private List<Field> recordSpec;
+    private final List<Field> recordSpec;
+
+    /**
+     * handlers: the handler of each field, maxSizes: Field.getSize of each
+     * field, both in record order.
+     */
+    private final FieldHandler[] handlers;
+    private final int[] maxSizes;
 
     public RecordSerDeserializer(List<Field> spec) {
         recordSpec = spec;
+        handlers = FieldHandler.of(spec);
+        maxSizes = new int[spec.size()];
+        for (int i = 0; i < maxSizes.length; i++) {
+            maxSizes[i] = spec.get(i).getSize();
+        }
     }
 
 
     public List<Object> read(DataInputStream dis) throws IOException {
         
-        List<Object> ret = new ArrayList<>() ;
+        List<Object> ret = new ArrayList<>(handlers.length) ;
 
-        for (Field field : recordSpec) {
+        for (FieldHandler handler : handlers) {
+            ret.add(handler.read(dis));
+        }
 
-            FieldType type = field.getFieldType();
+        return ret ;
+    }
 
-            identify(dis, ret, type);
+    public void write(List <Object>values, DataOutputStream dos) throws IOException {
+
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i].write(values.get(i), dos);
         }
+    }
 
-        return ret ;
+    /**
+     * Reads the record that starts at offset in page. Only absolute gets are
+     * used, so the page can be shared by concurrent readers.
+     */
+    public List<Object> read(ByteBuffer page, int offset) {
+        List<Object> ret = new ArrayList<>(handlers.length);
+        for (FieldHandler handler : handlers) {
+            ret.add(handler.read(page, offset));
+            offset += handler.size(page, offset);
+        }
+        return ret;
     }
 
-    static void identify(DataInputStream dis, List<Object> ret, FieldType type) throws IOException {
-        if (type.equals(FieldType.integer)) {
-
-            int v = dis.readInt();
-            ret.add(v) ;
-        } else if (type.equals(FieldType.string)) {
-            // String
-            int len = dis.readInt();
-            byte[] sBytes = new byte[len];
-            dis.read(sBytes,0,len);
-            ret.add(new String(sBytes, StandardCharsets.UTF_8));
-        } else if (type.equals(FieldType.bool)) {
-            boolean v = dis.readBoolean();
-            ret.add(v);
-        } else if (type.equals(FieldType.decimal)) {
-            float v = dis.readFloat();
-            ret.add(v);
-        } else {
-            throw new RuntimeException("UnSupported field type "+ type);
+    /**
+     * Reads the fields at positions, in that order, of the record that starts
+     * at offset in page, without decoding the rest of the record.
+     */
+    public List<Object> readFields(ByteBuffer page, int offset, int[] positions) {
+        List<Object> ret = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            ret.add(handlers[position].read(page, fieldOffset(page, offset, position)));
         }
+        return ret;
     }
 
-    public void write(List <Object>values, DataOutputStream dos) throws IOException {
+    /**
+     * The offset in page of the field at position of the record that starts
+     * at offset.
+     */
+    public int fieldOffset(ByteBuffer page, int offset, int position) {
+        for (int i = 0; i < position; i++) {
+            offset += handlers[i].size(page, offset);
+        }
+        return offset;
+    }
 
-        int index = 0;
-        for (Field field : recordSpec) {
-            FieldType type = field.getFieldType();
-
-            if (type.equals(FieldType.integer)) {
-                dos.writeInt((int) values.get(index));
-                index++;
-            } else if (type.equals(FieldType.string)) {
-
-                int len = field.getLength();
-                String val = (String) values.get(index);
-                byte[] valBytes = val.getBytes(StandardCharsets.UTF_8);
-                dos.writeInt(valBytes.length);
-                dos.write(valBytes);
-                index++;
-            } else {
-                index = getIndex(values, dos, index, type);
+    /**
+     * The number of bytes write produces for record: strings take a 4 byte
+     * length and their UTF-8 bytes. Throws IllegalArgumentException for a
+     * string taking more bytes than Field.getSize allows, which bounds every
+     * record.
+     */
+    public int size(List<Object> record) {
+        int size = 0;
+        for (int i = 0; i < handlers.length; i++) {
+            int bytes = handlers[i].size(record.get(i));
+            if (bytes > maxSizes[i]) {
+                throw new IllegalArgumentException(recordSpec.get(i).getName() + " takes up to " + maxSizes[i]
+                        + " bytes, " + bytes + " for: " + record.get(i));
             }
-
+            size += bytes;
         }
+        return size;
     }
 
-    static int getIndex(List<Object> values, DataOutputStream dos, int index, FieldType type) throws IOException {
-        if (type.equals(FieldType.bool)) {
-            dos.writeBoolean((boolean)values.get(index));
-            index++;
-        } else if (type.equals(FieldType.decimal)) {
-            dos.writeFloat((float)values.get(index));
-            index++;
-        } else {
-            throw new RuntimeException("UnSupported field type "+ type);
+    /**
+     * Length of s in UTF-8, as String.getBytes encodes it, without encoding it.
+     */
+    static int utf8Length(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                n += 1;
+            } else if (c < 0x800) {
+                n += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                n += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // a lone surrogate is encoded as '?'
+                n += 1;
+            } else {
+                n += 3;
+            }
         }
-        return index;
+        return n;
     }
 }
@@ -0,0 +1,113 @@
+package com.mj.db.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Page store backed by memory mapped chunks of the file.
+ * <p>
+ * The file is mapped in chunks of chunkSize bytes (a multiple of the page size,
+ * so a page never straddles two chunks). Reads return a slice of the mapping,
+ * so a node is decoded straight from the page cache without a seek or a copy.
+ * Writing past the last mapped chunk maps the next one, which grows the file.
+ * Mapping a chunk extends the file to the chunk boundary, and the file keeps
+ * that length: it cannot be truncated while mapped (Windows refuses), and
+ * the mappings are only released once collected. The pages past the last
+ * one written read as zeros, and getNumPages counts them once the file is
+ * reopened, so the user of the store has to record where its pages end.
+ * <p>
+ * Threads may read and write different pages concurrently; only mapping a new
+ * chunk is serialized.
+ */
+public class MappedPageStore implements PageStore {
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final long chunkSize;
+    private final List<MappedByteBuffer> chunks = new CopyOnWriteArrayList<>();
+    private volatile int numPages;
+
+    public MappedPageStore(String fileName, int pageSize, long chunkSize) throws IOException {
+        if (chunkSize < pageSize || chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("chunk size must be between the page size and 2GB: " + chunkSize);
+        }
+        this.pageSize = pageSize;
+        this.chunkSize = chunkSize - (chunkSize % pageSize);
+        this.channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        numPages = (int) (channel.size() / pageSize);
+        if (numPages > 0) {
+            ensureMapped(numPages - 1);
+        }
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int getNumPages() {
+        return numPages;
+    }
+
+    @Override
+    public ByteBuffer read(int pageNo) throws IOException {
+        if (pageNo >= numPages) {
+            throw new EOFException("page " + pageNo + " is past the end of the file");
+        }
+        long offset = (long) pageNo * pageSize;
+        int inChunk = (int) (offset % chunkSize);
+
+        ByteBuffer b = chunks.get((int) (offset / chunkSize)).duplicate();
+        b.position(inChunk);
+        b.limit(inChunk + pageSize);
+        return b.slice();
+    }
+
+    @Override
+    public void write(int pageNo, byte[] page) throws IOException {
+        ensureMapped(pageNo);
+
+        long offset = (long) pageNo * pageSize;
+        ByteBuffer b = chunks.get((int) (offset / chunkSize)).duplicate();
+        b.position((int) (offset % chunkSize));
+        b.put(page, 0, pageSize);
+
+        synchronized (this) {
+            if (pageNo >= numPages) {
+                numPages = pageNo + 1;
+            }
+        }
+    }
+
+    private synchronized void ensureMapped(int pageNo) throws IOException {
+        long end = (long) (pageNo + 1) * pageSize;
+        while ((long) chunks.size() * chunkSize < end) {
+            long position = (long) chunks.size() * chunkSize;
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, position, chunkSize));
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        chunks.clear();
+        channel.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.mj.db.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size page access to an index file. Page n starts at byte n * pageSize.
+ */
+public interface PageStore extends Closeable {
+
+    int getPageSize();
+
+    /**
+     * Number of pages the file currently holds.
+     */
+    int getNumPages() throws IOException;
+
+    /**
+     * Returns the content of a page as a buffer whose position is the first
+     * byte of the page and whose limit is the page end. The buffer may be a
+     * view of the store's own memory and is only valid until the page is
+     * written again. Throws EOFException for pages past the end of the file.
+     */
+    ByteBuffer read(int pageNo) throws IOException;
+
+    /**
+     * Writes a full page, growing the file if needed.
+     */
+    void write(int pageNo, byte[] page) throws IOException;
+
+    /**
+     * Forces every page written so far to the storage device.
+     */
+    void sync() throws IOException;
+
+}
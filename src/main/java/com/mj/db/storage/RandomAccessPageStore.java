@@ -0,0 +1,68 @@
+package com.mj.db.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Page store over a plain file. Reads and writes are positional, so threads
+ * can access different pages at the same time without sharing a file pointer.
+ */
+public class RandomAccessPageStore implements PageStore {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int pageSize;
+
+    public RandomAccessPageStore(String fileName, int pageSize) throws IOException {
+        this.file = new RandomAccessFile(fileName, "rw");
+        this.channel = file.getChannel();
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int getNumPages() throws IOException {
+        return (int) (channel.size() / pageSize);
+    }
+
+    @Override
+    public ByteBuffer read(int pageNo) throws IOException {
+        long offset = (long) pageNo * pageSize;
+        if (offset + pageSize > channel.size()) {
+            throw new EOFException("page " + pageNo + " is past the end of the file");
+        }
+        ByteBuffer b = ByteBuffer.allocate(pageSize);
+        while (b.hasRemaining()) {
+            if (channel.read(b, offset + b.position()) < 0) {
+                throw new EOFException("page " + pageNo + " is past the end of the file");
+            }
+        }
+        return b.flip();
+    }
+
+    @Override
+    public void write(int pageNo, byte[] page) throws IOException {
+        long offset = (long) pageNo * pageSize;
+        ByteBuffer b = ByteBuffer.wrap(page);
+        while (b.hasRemaining()) {
+            channel.write(b, offset + b.position());
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,12 @@
+package com.mj.db.storage;
+
+public enum StoreType {
+    /**
+     * Seek and read/write through a RandomAccessFile.
+     */
+    RANDOM_ACCESS,
+    /**
+     * Map the file with FileChannel.map and decode pages in place.
+     */
+    MEMORY_MAPPED
+}
@@ -0,0 +1,13 @@
+package com.mj.db.wal;
+
+import java.io.IOException;
+
+/**
+ * Receives the page images of committed operations during recovery, in the
+ * order they were logged.
+ */
+public interface RedoHandler {
+
+    void redo(int pageNo, byte[] image) throws IOException;
+
+}
@@ -0,0 +1,323 @@
+package com.mj.db.wal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only redo log of page after-images.
+ * <p>
+ * An operation logs the full image of every page it changes and then a
+ * commit record. Records are appended to an in-memory buffer; sync writes the
+ * buffer to the end of the file with one sequential write and one fsync.
+ * Threads that call sync while another thread is already syncing wait for it
+ * and are then covered by the next fsync together, so concurrent commits share
+ * the cost of the fsync (group commit).
+ * <p>
+ * On disk every record is: int length, then the body (byte type, int page
+ * number, page image), then the CRC32 of the body. Recovery replays the
+ * images of each operation whose commit record made it to disk and stops at
+ * the first torn or corrupt record.
+ * <p>
+ * Positions in the log (LSNs) count bytes appended since the log was opened;
+ * they only order records and are not stored anywhere.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final byte PAGE = 1;
+    private static final byte COMMIT = 2;
+
+    /**
+     * The length and CRC around a record body, plus the type and page number.
+     */
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4 + 4;
+
+    private final FileChannel channel;
+    private final Object lock = new Object();
+
+    /**
+     * pending: records appended but not yet written to the file.
+     * <p>
+     * appendedLsn: end of the last appended record.
+     * <p>
+     * committedLsn: end of the last commit record.
+     * <p>
+     * durableLsn: end of what the last fsync covered.
+     * <p>
+     * syncing: set while one thread writes and forces the log; the others wait.
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final CRC32 crc = new CRC32();
+    private long appendedLsn;
+    private long committedLsn;
+    private long durableLsn;
+    private boolean syncing = false;
+    private IOException failure;
+
+    private long fileSize;
+    private long syncCount = 0;
+
+    public WriteAheadLog(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileSize = channel.size();
+        channel.position(fileSize);
+    }
+
+    /**
+     * Logs the new content of a page and returns the LSN just past it.
+     */
+    public long append(int pageNo, byte[] image) throws IOException {
+        return append(PAGE, pageNo, image);
+    }
+
+    /**
+     * Marks the end of an operation. Every page logged since the previous
+     * commit is replayed together or not at all. The returned LSN is what
+     * sync must reach for the operation to be durable.
+     */
+    public long commit() throws IOException {
+        synchronized (lock) {
+            committedLsn = append(COMMIT, -1, new byte[0]);
+            return committedLsn;
+        }
+    }
+
+    /**
+     * Logs the final images of the pages an operation changed, followed by its
+     * commit record, as one unit. Records of concurrent operations therefore
+     * never interleave, and replay can apply everything between two commits.
+     */
+    public long commit(Map<Integer, byte[]> pages) throws IOException {
+        synchronized (lock) {
+            for (Map.Entry<Integer, byte[]> e : pages.entrySet()) {
+                append(e.getKey(), e.getValue());
+            }
+            return commit();
+        }
+    }
+
+    private long append(byte type, int pageNo, byte[] image) throws IOException {
+        synchronized (lock) {
+            checkFailure();
+            crc.reset();
+            crc.update(type);
+            crc.update(ByteBuffer.allocate(4).putInt(0, pageNo));
+            crc.update(image);
+
+            pendingOut.writeInt(1 + 4 + image.length);
+            pendingOut.writeByte(type);
+            pendingOut.writeInt(pageNo);
+            pendingOut.write(image);
+            pendingOut.writeInt((int) crc.getValue());
+
+            appendedLsn += RECORD_OVERHEAD + image.length;
+            return appendedLsn;
+        }
+    }
+
+    /**
+     * Returns once every record up to lsn is on disk.
+     */
+    public void sync(long lsn) throws IOException {
+        byte[] batch;
+        long target;
+
+        synchronized (lock) {
+            while (true) {
+                checkFailure();
+                if (durableLsn >= lsn) {
+                    return;
+                }
+                if (!syncing) {
+                    break;
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for the log");
+                }
+            }
+            // this thread leads the next fsync and takes everyone's records with it
+            syncing = true;
+            batch = pending.toByteArray();
+            pending.reset();
+            target = appendedLsn;
+        }
+
+        IOException error = null;
+        try {
+            ByteBuffer b = ByteBuffer.wrap(batch);
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        }
+
+        synchronized (lock) {
+            syncing = false;
+            if (error == null) {
+                durableLsn = target;
+                fileSize += batch.length;
+                syncCount++;
+            } else {
+                // the file may hold part of the batch; nothing after it can be trusted
+                failure = error;
+            }
+            lock.notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Syncs everything up to the last commit record.
+     */
+    public void syncCommitted() throws IOException {
+        long lsn;
+        synchronized (lock) {
+            lsn = committedLsn;
+        }
+        sync(lsn);
+    }
+
+    /**
+     * Hands the page images of every committed operation in the log to
+     * handler. Must be called before anything is appended; the caller is
+     * expected to make the pages durable and truncate the log afterwards,
+     * since a torn tail is left in place.
+     * Returns the number of operations replayed.
+     */
+    public int replay(RedoHandler handler) throws IOException {
+        int operations = 0;
+        List<Integer> pageNos = new ArrayList<>();
+        List<byte[]> images = new ArrayList<>();
+
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        long remaining = fileSize;
+        CRC32 check = new CRC32();
+
+        while (remaining >= RECORD_OVERHEAD) {
+            byte[] body;
+            int storedCrc;
+            try {
+                int length = in.readInt();
+                if (length < 5 || length > remaining - 8) {
+                    break;
+                }
+                body = new byte[length];
+                in.readFully(body);
+                storedCrc = in.readInt();
+                remaining -= length + 8;
+            } catch (EOFException e) {
+                break;
+            }
+
+            check.reset();
+            check.update(body);
+            if ((int) check.getValue() != storedCrc) {
+                break;
+            }
+
+            ByteBuffer b = ByteBuffer.wrap(body);
+            byte type = b.get();
+            int pageNo = b.getInt();
+            if (type == PAGE) {
+                byte[] image = new byte[b.remaining()];
+                b.get(image);
+                pageNos.add(pageNo);
+                images.add(image);
+            } else if (type == COMMIT) {
+                for (int i = 0; i < pageNos.size(); i++) {
+                    handler.redo(pageNos.get(i), images.get(i));
+                }
+                pageNos.clear();
+                images.clear();
+                operations++;
+            } else {
+                break;
+            }
+        }
+
+        channel.position(fileSize);
+        return operations;
+    }
+
+    /**
+     * Empties the log. Only valid once every page the log describes is
+     * durable in the page store, i.e. at a checkpoint.
+     */
+    public void truncate() throws IOException {
+        synchronized (lock) {
+            while (syncing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for the log");
+                }
+            }
+            checkFailure();
+            pending.reset();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(false);
+            fileSize = 0;
+            committedLsn = appendedLsn;
+            durableLsn = appendedLsn;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("write ahead log failed earlier", failure);
+        }
+    }
+
+    /**
+     * Bytes in the log file plus records not yet written to it.
+     */
+    public long size() {
+        synchronized (lock) {
+            return fileSize + pending.size();
+        }
+    }
+
+    /**
+     * Number of fsyncs issued, for tests and benchmarks.
+     */
+    public long getSyncCount() {
+        synchronized (lock) {
+            return syncCount;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            syncCommitted();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -15,15 +15,8 @@ public class FloatComparator implements Comparator<Float> {
 		if (o1 == null && o2 != null)
 			return -1 ;
 		
-		float f1 = o1.intValue() ;
-		float f2 = o2.intValue() ;
-		
-		if (f1 == f2)
-			return 0 ;
-		else if (f1 < f2)
-			return -1 ;
-		else 
-			return 1 ;
+		// the whole value, and -0.0 before 0.0 and NaN last as in Float.compare
+		return Float.compare(o1, o2) ;
 
 	}
 
@@ -1,59 +1,48 @@
 package com.mj.util;
 
 import com.mj.bplustree.fields.Field;
-import com.mj.bplustree.fields.FieldType;
+import com.mj.db.serialization.FieldHandler;
 
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Orders keys field by field. A key with fewer fields than another, as a
+ * scan bound can be, sorts before every key it is a prefix of, which is also
+ * the order of NormalizedKeyEncoder.
+ */
 public class KeyComparator implements Comparator<List> {
 
-    private Map<String, Field> tableSpec;
-    private List<String> keySpec;
-
-    private IntegerComparator integerComparator = new IntegerComparator();
-    private StringComparator stringComparator = new StringComparator();
-
-    private FloatComparator floatComparator = new FloatComparator();
+    /**
+     * handlers: the handler of each key field, looked up once rather than
+     * on every comparison.
+     */
+    private final FieldHandler[] handlers;
 
     public KeyComparator(List<String> kSpec, Map<String, Field> spec) {
-        keySpec = kSpec;
-        tableSpec = spec;
+        handlers = new FieldHandler[kSpec.size()];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = FieldHandler.of(spec.get(kSpec.get(i)).getFieldType());
+        }
     }
+
     @Override
     public int compare(List o1, List o2) {
-        int n1 = o1.size() ;
+        int n1 = o1.size();
         int n2 = o2.size();
+        int n = Math.min(n1, n2);
 
-        if (n1 == 0 && n2 != 0 ) {
-            return -1;
-        } else if (n1 != 0 && n2 == 0) {
-            return -1;
-        } else if (n1 == 0 && n2 == 0) {
-            return 0;
-        }
-
-        for (int i =0 ; i < n1 ; i++) {
-           String fieldName = keySpec.get(i);
-           FieldType type = tableSpec.get(fieldName).getFieldType();
-
-           int res = 0 ;
-
-           if (type.equals(FieldType.integer)) {
-               res = integerComparator.compare((Integer)o1.get(i),(Integer)o2.get(i));
-           } else if (type.equals(FieldType.string)) {
-               res = stringComparator.compare((String)o1.get(i),(String)o2.get(i));
-           } else if (type.equals(FieldType.decimal)) {
-               res = floatComparator.compare((float)o1.get(i), (float)o2.get(i));
-           }
+        for (int i = 0; i < n; i++) {
+            int res = handlers[i].compare(o1.get(i), o2.get(i));
 
-           if (res != 0) {
-               return res ;
-           }
+            if (res != 0) {
+                return res;
+            }
         }
 
-        return 0;
+        // equal as far as the shorter one goes: the prefix comes first
+        return Integer.compare(n1, n2);
     }
 
 }
@@ -16,8 +16,32 @@ public class StringComparator implements Comparator<String> {
 		if (o1 == null && o2 != null)
 			return -1 ;
 		
-		return o1.compareToIgnoreCase(o2) ;
+		// as compareToIgnoreCase, one code point at a time, an order that
+		// NormalizedKeyEncoder reproduces in bytes
+		int i1 = 0 ;
+		int i2 = 0 ;
+		while (i1 < o1.length() && i2 < o2.length()) {
+			int c1 = o1.codePointAt(i1) ;
+			int c2 = o2.codePointAt(i2) ;
+			if (c1 != c2) {
+				int f1 = fold(c1) ;
+				int f2 = fold(c2) ;
+				if (f1 != f2)
+					return f1 - f2 ;
+			}
+			i1 += Character.charCount(c1) ;
+			i2 += Character.charCount(c2) ;
+		}
+		return (o1.length() - i1) - (o2.length() - i2) ;
 
 	}
 
+	/**
+	 * The code point c is compared as: upper case, then lower case, which
+	 * makes every case of a letter the same.
+	 */
+	public static int fold(int c) {
+		return Character.toLowerCase(Character.toUpperCase(c)) ;
+	}
+
 }
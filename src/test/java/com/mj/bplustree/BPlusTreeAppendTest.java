@@ -0,0 +1,162 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeAppendTest {
+
+    private static final int N = 20000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static BPlusTree open(String filename, TreeOptions options) throws IOException {
+        return BPlusTree.create(null, filename, List.of("id"),
+                List.of(new Field("id", FieldType.integer), new Field("amount", FieldType.integer)), options);
+    }
+
+    private BPlusTree appendOptimized() throws IOException {
+        return open(files.index(), new TreeOptions().setAppendOptimized(true));
+    }
+
+    private static void assertRecords(BPlusTree tree, int n, int step) throws IOException {
+        assertTrue(tree.isTreeValid());
+        for (int i = 0; i < n; i += step) {
+            assertEquals(i * 10, (int) tree.find(List.of(i)).get(1));
+        }
+        assertNull(tree.find(List.of(n)));
+    }
+
+    @Test
+    public void testSequentialInsertsLeaveFullPages() throws IOException {
+        BPlusTree plain = open(files.path("plain.db"), new TreeOptions());
+        BPlusTree tree = appendOptimized();
+        try {
+            for (int i = 0; i < N; i++) {
+                plain.insert(List.of(i, i * 10));
+                tree.insert(List.of(i, i * 10));
+            }
+            // the inserts went to the last leaf without descending from the root
+            assertTrue(tree.getMetrics().getCacheHits() * 2 < plain.getMetrics().getCacheHits());
+            assertRecords(tree, N, 1);
+
+            // every leaf but the last is full
+            TreeStats stats = tree.stats();
+            TreeStats plainStats = plain.stats();
+            assertTrue(stats.toString(), stats.getLeafFill().getP10() > 0.95);
+            assertTrue(plainStats.toString(), plainStats.getLeafFill().getMean() < 0.6);
+            assertTrue(stats.getLeaves() < plainStats.getLeaves() * 0.6);
+        } finally {
+            tree.close();
+            plain.close();
+        }
+    }
+
+    @Test
+    public void testRandomInsertsSplitEvenly() throws IOException {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(2));
+
+        BPlusTree tree = appendOptimized();
+        try {
+            for (int i : order) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertRecords(tree, N, 1);
+
+            // a new last entry of a node other than the last one splits it in halves
+            TreeStats stats = tree.stats();
+            assertTrue(stats.toString(), stats.getLeafFill().getMin() >= 0.45);
+            // the root aside, whose fill is anything
+            assertTrue(stats.toString(), stats.getInternalFill().getP50() >= 0.45);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testOutOfOrderInsertsAndDeletes() throws IOException {
+        BPlusTree tree = appendOptimized();
+        try {
+            for (int i = 0; i < N; i += 2) {
+                tree.insert(List.of(i, i * 10));
+            }
+            // into the full pages, and past the end again
+            List<Integer> odd = new ArrayList<>();
+            for (int i = 1; i < N; i += 2) {
+                odd.add(i);
+            }
+            Collections.shuffle(odd, new Random(1));
+            for (int i : odd) {
+                tree.insert(List.of(i, i * 10));
+            }
+            for (int i = N; i < 2 * N; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertRecords(tree, 2 * N, 1);
+
+            // the last leaves merge away, and appends find the new last leaf
+            for (int i = N; i < 2 * N; i++) {
+                tree.delete(List.of(i));
+            }
+            for (int i = N; i < N + 1000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertRecords(tree, N + 1000, 1);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testAppendsAreRecoveredFromLog() throws IOException {
+        BPlusTree tree = open(files.index(), new TreeOptions().setAppendOptimized(true)
+                .setWriteAheadLog(true).setCacheSizeBytes(16 * 1024));
+        try {
+            // with a small cache the remembered leaf is evicted now and then
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, i * 10));
+                if (i % 1000 == 999) {
+                    tree.delete(List.of(i - 500));
+                }
+            }
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree reopened = appendOptimized();
+        try {
+            assertTrue(reopened.isTreeValid());
+            assertEquals(N - N / 1000, countRecords(reopened));
+            assertEquals(9990, (int) reopened.find(List.of(999)).get(1));
+            assertNull(reopened.find(List.of(499)));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static int countRecords(BPlusTree tree) {
+        int n = 0;
+        Cursor cursor = tree.scan(null, null);
+        while (cursor.hasNext()) {
+            cursor.next();
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,109 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeBatchInsertTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static List<Field> tableSpec() {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return tableSpec;
+    }
+
+    private static List<List> shuffled(int from, int to, int step, int seed) {
+        List<List> batch = new ArrayList<>();
+        for (int i = from; i <= to; i += step) {
+            batch.add(List.of(i, i * 10));
+        }
+        Collections.shuffle(batch, new Random(seed));
+        return batch;
+    }
+
+    private static void assertScanMatches(BPlusTree tree, int from, int to) {
+        Cursor cursor = tree.scan(null, null);
+        for (int i = from; i <= to; i++) {
+            assertTrue(cursor.hasNext());
+            List rec = cursor.next();
+            assertEquals(i, (int) rec.get(0));
+            assertEquals(i * 10, (int) rec.get(1));
+        }
+        assertTrue(!cursor.hasNext());
+    }
+
+    @Test
+    public void testBatchIntoEmptyTree() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), tableSpec());
+        try {
+            // enough leaves that the first root split needs more than one new root
+            tree.insertAll(shuffled(1, 100000, 1, 1));
+
+            assertTrue(tree.isTreeValid());
+            assertScanMatches(tree, 1, 100000);
+            for (int i = 1; i <= 100000; i += 101) {
+                assertEquals(i * 10, (int) tree.find(List.of(i)).get(1));
+            }
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testBatchesMixedWithInserts() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), tableSpec());
+        try {
+            for (List rec : shuffled(1, 3000, 3, 2)) {
+                tree.insert(rec);
+            }
+            tree.insertAll(shuffled(2, 3000, 3, 3));
+            tree.insertAll(List.of());
+            tree.insertAll(shuffled(3, 3000, 3, 4));
+
+            assertTrue(tree.isTreeValid());
+            assertScanMatches(tree, 1, 3000);
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree reopened = BPlusTree.create(null, files.index(), List.of("id"), tableSpec());
+        try {
+            assertEquals(15000, (int) reopened.find(List.of(1500)).get(1));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testDuplicateKeysKeepLastRecord() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), tableSpec());
+        try {
+            tree.insert(List.of(5, 1));
+            tree.insertAll(List.of(List.of(5, 2), List.of(7, 1), List.of(5, 3), List.of(7, 2)));
+
+            assertEquals(3, (int) tree.find(List.of(5)).get(1));
+            assertEquals(2, (int) tree.find(List.of(7)).get(1));
+
+            Cursor cursor = tree.scan(null, null);
+            assertEquals(5, (int) cursor.next().get(0));
+            assertEquals(7, (int) cursor.next().get(0));
+            assertTrue(!cursor.hasNext());
+        } finally {
+            tree.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.bplustree.impl.BPlusTreeImpl;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BPlusTreeBulkLoadTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static List<Field> intSpec() {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        return tableSpec;
+    }
+
+    private static void assertScanMatches(BPlusTree tree, int from, int to) {
+        Cursor cursor = tree.scan(null, null);
+        for (int i = from; i <= to; i++) {
+            assertTrue(cursor.hasNext());
+            assertEquals(i, (int) cursor.next().get(0));
+        }
+        assertTrue(!cursor.hasNext());
+    }
+
+    @Test
+    public void testBulkLoadPacked() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), intSpec());
+        try {
+            tree.bulkLoad(IntStream.rangeClosed(1, 20000).mapToObj(List::of), 1.0);
+
+            assertTrue(tree.isTreeValid());
+            assertScanMatches(tree, 1, 20000);
+            for (int i = 1; i <= 20000; i += 97) {
+                assertEquals(i, (int) tree.find(List.of(i)).get(0));
+            }
+            assertNull(tree.find(List.of(20001)));
+        } finally {
+            tree.close();
+        }
+
+        // 252 ints per leaf: the header, 80 leaves and one root
+        assertEquals(82 * 1024, Files.size(Paths.get(files.index())));
+
+        BPlusTree reopened = BPlusTree.create(null, files.index(), List.of("id"), intSpec());
+        try {
+            assertEquals(12345, (int) reopened.find(List.of(12345)).get(0));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testInsertAfterBulkLoad() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), intSpec());
+        try {
+            // even keys only, leaves left 30% empty for later inserts
+            tree.bulkLoad(IntStream.rangeClosed(1, 5000).mapToObj(i -> List.of(i * 2)), 0.7);
+            for (int i = 1; i <= 5000; i++) {
+                tree.insert(List.of(i * 2 - 1));
+            }
+
+            assertTrue(tree.isTreeValid());
+            assertScanMatches(tree, 1, 10000);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testBulkLoadWithLogStaysInCache() throws IOException {
+        // 16 cached blocks for a load of about 800
+        TreeOptions options = new TreeOptions()
+                .setDurability(Durability.ON_COMMIT)
+                .setCacheSizeBytes(16 * 1024);
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), intSpec(), options);
+        try {
+            tree.bulkLoad(IntStream.rangeClosed(1, 200000).mapToObj(List::of), 1.0);
+
+            int capacity = ((BPlusTreeImpl) tree).getBufferPool().getCapacity();
+            assertTrue(((BPlusTreeImpl) tree).getBufferPool().size() <= capacity);
+            assertTrue(Files.size(Paths.get(files.index())) > 50L * capacity * 1024);
+            // the blocks went to the index file, only the new root to the log
+            assertTrue(Files.size(Paths.get(files.index() + ".wal")) < 16 * 1024);
+            assertTrue(tree.isTreeValid());
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree reopened = BPlusTree.create(null, files.index(), List.of("id"), intSpec(), options);
+        try {
+            assertEquals(123456, (int) reopened.find(List.of(123456)).get(0));
+            assertScanMatches(reopened, 1, 200000);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testSmallInputs() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), intSpec());
+        try {
+            tree.bulkLoad(IntStream.empty().mapToObj(List::of), 1.0);
+            assertNull(tree.find(List.of(1)));
+
+            tree.bulkLoad(IntStream.of(7).mapToObj(List::of), 1.0);
+            assertEquals(7, (int) tree.find(List.of(7)).get(0));
+            tree.insert(List.of(3));
+            Cursor cursor = tree.scan(null, null);
+            assertEquals(3, (int) cursor.next().get(0));
+            assertEquals(7, (int) cursor.next().get(0));
+            assertTrue(!cursor.hasNext());
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testCompositeKey() throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("firstname", FieldType.string, 10));
+        tableSpec.add(new Field("lastname", FieldType.string, 10));
+        tableSpec.add(new Field("salary", FieldType.integer));
+
+        BPlusTree tree = BPlusTree.create(null, files.index(),
+                Arrays.asList("lastname", "firstname"), tableSpec);
+        try {
+            tree.bulkLoad(IntStream.range(0, 3000).mapToObj(i ->
+                    Arrays.asList(i, String.format("f%04d", i % 10), String.format("l%04d", i / 10), i * 3)), 0.9);
+
+            assertTrue(tree.isTreeValid());
+            List rec = tree.find(Arrays.asList("l0123", "f0004"));
+            assertEquals(1234, (int) rec.get(0));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testRejectsUnsortedInput() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), intSpec());
+        try {
+            tree.bulkLoad(IntStream.of(1, 2, 4, 3).mapToObj(List::of), 1.0);
+            fail("unsorted input must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            tree.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.db.buffer.ClockEvictionPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeConcurrencyTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int PER_WRITER = 4000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTree open(TreeOptions options) throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return BPlusTree.create(null, files.index(), List.of("id"), tableSpec, options);
+    }
+
+    private interface Work {
+        void run(int id) throws Exception;
+    }
+
+    /**
+     * Runs every worker in its own thread, all released at once, and fails
+     * with the first error any of them hit.
+     */
+    private static void runAll(List<Work> workers) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers.size(); i++) {
+            Work work = workers.get(i);
+            int id = i;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    work.run(id);
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.peek());
+        }
+    }
+
+    /**
+     * Writer w owns the keys congruent to w modulo WRITERS, inserted in a
+     * random order so every writer hits every part of the tree.
+     */
+    private static List<Integer> keysOf(int writer) {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < PER_WRITER; i++) {
+            keys.add(i * WRITERS + writer);
+        }
+        Collections.shuffle(keys, new Random(writer));
+        return keys;
+    }
+
+    private static Work reader(BPlusTree tree, AtomicBoolean writing) {
+        return id -> {
+            Random r = new Random(id);
+            while (writing.get()) {
+                int k = r.nextInt(PER_WRITER * WRITERS);
+                List rec = tree.find(List.of(k));
+                if (rec != null) {
+                    assertEquals(k * 10, (int) rec.get(1));
+                }
+
+                // whatever a scan sees while splits happen, it is in key order
+                int last = -1;
+                Cursor cursor = tree.scan(List.of(k), List.of(k + 600));
+                while (cursor.hasNext()) {
+                    int next = (int) cursor.next().get(0);
+                    assertTrue(next > last);
+                    last = next;
+                }
+            }
+        };
+    }
+
+    private void testInsertsAndReads(TreeOptions options) throws Exception {
+        BPlusTree tree = open(options);
+        try {
+            AtomicBoolean writing = new AtomicBoolean(true);
+            CountDownLatch writersDone = new CountDownLatch(WRITERS);
+            List<Work> workers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                workers.add(id -> {
+                    try {
+                        for (int k : keysOf(id)) {
+                            tree.insert(List.of(k, k * 10));
+                        }
+                    } finally {
+                        writersDone.countDown();
+                        if (writersDone.getCount() == 0) {
+                            writing.set(false);
+                        }
+                    }
+                });
+            }
+            for (int r = 0; r < READERS; r++) {
+                workers.add(reader(tree, writing));
+            }
+            runAll(workers);
+
+            assertTrue(tree.isTreeValid());
+            int expected = 0;
+            Cursor cursor = tree.scan(null, null);
+            while (cursor.hasNext()) {
+                assertEquals(expected * 10, (int) cursor.next().get(1));
+                expected++;
+            }
+            assertEquals(WRITERS * PER_WRITER, expected);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentInsertsAndReads() throws Exception {
+        testInsertsAndReads(new TreeOptions().setCacheSizeBytes(64 * 1024));
+    }
+
+    @Test
+    public void testConcurrentInsertsWithLog() throws Exception {
+        testInsertsAndReads(new TreeOptions().setWriteAheadLog(true)
+                .setEvictionPolicy(ClockEvictionPolicy::new).setCacheSizeBytes(64 * 1024));
+    }
+
+    @Test
+    public void testConcurrentInsertsAndDeletes() throws Exception {
+        BPlusTree tree = open(new TreeOptions().setCacheSizeBytes(64 * 1024));
+        try {
+            // every writer inserts its keys and deletes the odd ones again
+            List<Work> workers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                workers.add(id -> {
+                    List<Integer> keys = keysOf(id);
+                    for (int k : keys) {
+                        tree.insert(List.of(k, k * 10));
+                    }
+                    for (int k : keys) {
+                        if (k % 2 == 1) {
+                            tree.delete(List.of(k));
+                        }
+                    }
+                });
+            }
+            workers.add(id -> tree.insertAll(List.of(List.of(-1, -10), List.of(-2, -20))));
+            runAll(workers);
+
+            assertTrue(tree.isTreeValid());
+            for (int k = 0; k < WRITERS * PER_WRITER; k++) {
+                List rec = tree.find(List.of(k));
+                if (k % 2 == 1) {
+                    assertNull(rec);
+                } else {
+                    assertEquals(k * 10, (int) rec.get(1));
+                }
+            }
+            assertEquals(-20, (int) tree.find(List.of(-2)).get(1));
+        } finally {
+            tree.close();
+        }
+    }
+}
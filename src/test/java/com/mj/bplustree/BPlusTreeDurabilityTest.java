@@ -0,0 +1,209 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeDurabilityTest {
+
+    private static final int N = 2000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static BPlusTree open(String filename, TreeOptions options) throws IOException {
+        return BPlusTree.create(null, filename, List.of("id"),
+                List.of(new Field("id", FieldType.integer), new Field("amount", FieldType.integer)), options);
+    }
+
+    /**
+     * What a crash right now would leave behind.
+     */
+    private void crashCopy() throws IOException {
+        Files.copy(Paths.get(files.index()), Paths.get(files.path("crash.db")), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(Paths.get(files.index() + ".wal"), Paths.get(files.path("crash.db") + ".wal"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Opens the crash copy and returns how many of the records 0, 1, ... it
+     * holds, checking they are a prefix of what was inserted.
+     */
+    private int recovered(Durability durability) throws IOException {
+        BPlusTree tree = open(files.path("crash.db"), new TreeOptions().setDurability(durability));
+        try {
+            assertTrue(tree.isTreeValid());
+            int n = 0;
+            while (n < N && tree.find(List.of(n)) != null) {
+                n++;
+            }
+            for (int i = n; i < N; i++) {
+                assertNull(tree.find(List.of(i)));
+            }
+            return n;
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testOnCommitSyncsEveryOperation() throws IOException {
+        BPlusTree tree = open(files.index(), new TreeOptions().setDurability(Durability.ON_COMMIT));
+        try {
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertEquals(N, tree.getMetrics().getLogSyncs());
+            crashCopy();
+        } finally {
+            tree.close();
+        }
+        assertEquals(N, recovered(Durability.ON_COMMIT));
+    }
+
+    @Test
+    public void testGroupSyncsOncePerGroup() throws IOException {
+        BPlusTree tree = open(files.index(), new TreeOptions().setDurability(Durability.GROUP)
+                .setGroupCommitOperations(100).setSyncIntervalMillis(60000));
+        try {
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertEquals(N / 100, tree.getMetrics().getLogSyncs());
+
+            // an unfinished group is not durable until the interval or a flush
+            for (int i = N; i < N + 50; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            crashCopy();
+        } finally {
+            tree.close();
+        }
+        assertEquals(N, recovered(Durability.GROUP));
+    }
+
+    @Test
+    public void testPeriodicSyncLosesOnlyTheTail() throws IOException {
+        BPlusTree tree = open(files.index(), new TreeOptions().setDurability(Durability.PERIODIC)
+                .setSyncIntervalMillis(20));
+        try {
+            for (int i = 0; i < N / 2; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertTrue(tree.getMetrics().getLogSyncs() < N / 2);
+            crashCopy();
+            // whatever was synced is recovered in order, nothing after a gap
+            assertTrue(recovered(Durability.PERIODIC) <= N / 2);
+
+            for (int i = N / 2; i < N; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            tree.flush();
+            crashCopy();
+        } finally {
+            tree.close();
+        }
+        assertEquals(N, recovered(Durability.PERIODIC));
+    }
+
+    /**
+     * Deletes that merge leaves free blocks, which are written to the index
+     * file at once; a crash before the log is synced must not leave a parent
+     * pointing at one.
+     */
+    private void assertMergesSurviveCrash(TreeOptions options) throws IOException {
+        BPlusTree tree = open(files.index(), new TreeOptions());
+        try {
+            for (int i = 0; i < 5000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+        } finally {
+            tree.close();
+        }
+
+        tree = open(files.index(), options);
+        try {
+            for (int i = 0; i < 4000; i++) {
+                tree.delete(List.of(i));
+            }
+            crashCopy();
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree recovered = open(files.path("crash.db"), options);
+        try {
+            assertTrue(recovered.isTreeValid());
+            for (int i = 4000; i < 5000; i++) {
+                assertEquals(i * 10, (int) recovered.find(List.of(i)).get(1));
+            }
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void testPeriodicMergesSurviveCrash() throws IOException {
+        assertMergesSurviveCrash(new TreeOptions().setDurability(Durability.PERIODIC)
+                .setSyncIntervalMillis(60000));
+    }
+
+    @Test
+    public void testGroupMergesSurviveCrash() throws IOException {
+        assertMergesSurviveCrash(new TreeOptions().setDurability(Durability.GROUP)
+                .setGroupCommitOperations(100000).setSyncIntervalMillis(60000));
+    }
+
+    @Test
+    public void testDirtyPagesAreWrittenOnceAtCheckpoint() throws IOException {
+        BPlusTree tree = open(files.index(), new TreeOptions().setDurability(Durability.ON_COMMIT));
+        try {
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            // every leaf changed many times, but none was written yet
+            TreeMetrics metrics = tree.getMetrics();
+            assertEquals(0, metrics.getLeafPageWrites());
+
+            tree.checkpoint();
+            assertEquals(0, Files.size(Paths.get(files.index() + ".wal")));
+            assertEquals(tree.stats().getLeaves(), metrics.getLeafPageWrites());
+
+            // nothing is dirty any more
+            tree.checkpoint();
+            assertEquals(tree.stats().getLeaves(), metrics.getLeafPageWrites());
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testWriteThroughWritesEveryChange() throws IOException {
+        BPlusTree tree = open(files.index(), new TreeOptions());
+        try {
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            // each insert wrote its leaf straight away
+            TreeMetrics metrics = tree.getMetrics();
+            assertTrue(metrics.getLeafPageWrites() >= N);
+            assertEquals(0, metrics.getLogSyncs());
+            tree.flush();
+            tree.checkpoint();
+            assertEquals(20 * 10, (int) tree.find(List.of(20)).get(1));
+        } finally {
+            tree.close();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.util.*;
 
 import com.mj.bplustree.fields.Field;
 import com.mj.bplustree.fields.FieldType;
+import com.mj.db.buffer.ClockEvictionPolicy;
 import org.junit.Test;
 
 public class BPlusTreeIntegerTest {
@@ -156,4 +157,30 @@ public class BPlusTreeIntegerTest {
 	}
 
 
+	@Test
+	public void testFindWithSmallCache() throws IOException {
+		List<Field> tableSpec = new ArrayList<>();
+		tableSpec.add(new Field("id", FieldType.integer));
+
+		TreeOptions options = new TreeOptions()
+				.setCacheSizeBytes(8 * 1024)
+				.setEvictionPolicy(ClockEvictionPolicy::new);
+
+		BPlusTree tree = BPlusTree.create(null, "intindexcache.db",
+				List.of("id"), tableSpec, options);
+		try {
+			for (int i = 1; i <= 2000; i++) {
+				tree.insert(List.of(i));
+			}
+			for (int i = 1; i <= 2000; i += 7) {
+				assertEquals(i, (int) tree.find(List.of(i)).get(0));
+			}
+			assertNull(tree.find(List.of(2001)));
+			assertTrue(tree.isTreeValid());
+		} finally {
+			tree.close();
+			Files.delete(Paths.get("intindexcache.db"));
+		}
+	}
+
 }
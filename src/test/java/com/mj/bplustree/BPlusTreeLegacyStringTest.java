@@ -0,0 +1,112 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Opens copies of the string indexes shipped with the repository, written
+ * before the file header and slotted leaves existed.
+ */
+public class BPlusTreeLegacyStringTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTree openCopy(String shipped) throws IOException {
+        Files.copy(Paths.get(shipped), Paths.get(files.index()), StandardCopyOption.REPLACE_EXISTING);
+        return BPlusTree.create(null, files.index(), List.of("name"), List.of(new Field("name", FieldType.string, 10)));
+    }
+
+    /**
+     * Scans the tree, checking the names are in order and can each be found,
+     * and returns how many there are.
+     */
+    private static int assertNames(BPlusTree tree) throws IOException {
+        assertTrue(tree.isTreeValid());
+        int n = 0;
+        String last = "";
+        Cursor cursor = tree.scan(null, null);
+        while (cursor.hasNext()) {
+            String name = (String) cursor.next().get(0);
+            assertTrue(name.compareTo(last) > 0);
+            assertEquals(name, tree.find(List.of(name)).get(0));
+            last = name;
+            n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void testOpensLegacyStringLeaf() throws IOException {
+        BPlusTree tree = openCopy("strindex20.db");
+        try {
+            assertEquals(40, assertNames(tree));
+
+            // the leaf is written back slotted once it changes
+            tree.insert(List.of("aaaaaaaaaa"));
+            assertEquals(41, assertNames(tree));
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree reopened = BPlusTree.open(files.index());
+        try {
+            assertEquals(41, assertNames(reopened));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testOpensLegacyStringTree() throws IOException {
+        BPlusTree tree = openCopy("strindex1000.db");
+        int n;
+        try {
+            n = assertNames(tree);
+            assertEquals(1780, n);
+            for (int i = 0; i < 500; i++) {
+                tree.insert(List.of("zz" + i));
+            }
+            assertEquals(n + 500, assertNames(tree));
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree reopened = BPlusTree.open(files.index());
+        try {
+            assertEquals(n + 500, assertNames(reopened));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testUnreadableLegacyFileIsLeftAsItWas() throws IOException {
+        // a root leaf claiming more records than the page holds
+        byte[] page = new byte[1024];
+        ByteBuffer.wrap(page).put((byte) 1).put((byte) 1).putInt(1000);
+        Files.write(Paths.get(files.index()), page);
+        try {
+            BPlusTree.create(null, files.index(), List.of("name"),
+                    List.of(new Field("name", FieldType.string, 10))).close();
+            fail("a corrupt leaf was read");
+        } catch (IOException | RuntimeException e) {
+            // expected
+        }
+        assertArrayEquals(page, Files.readAllBytes(Paths.get(files.index())));
+    }
+}
@@ -0,0 +1,115 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.db.storage.StoreType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeMappedStoreTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static TreeOptions mapped() {
+        // a small chunk forces the store to remap several times
+        return new TreeOptions()
+                .setStoreType(StoreType.MEMORY_MAPPED)
+                .setMappedChunkSize(16 * 1024);
+    }
+
+    @Test
+    public void testInsertAndFind() throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+
+        BPlusTree tree = BPlusTree.create(null, files.index(),
+                List.of("id"), tableSpec, mapped());
+        try {
+            for (int i = 1; i <= 1000; i++) {
+                tree.insert(List.of(i));
+            }
+            assertTrue(tree.isTreeValid());
+            assertEquals(153, (int) tree.find(List.of(153)).get(0));
+
+            tree.delete(List.of(153));
+            assertNull(tree.find(List.of(153)));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testFormatSharedWithRandomAccessStore() throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("firstname", FieldType.string, 10));
+        tableSpec.add(new Field("lastname", FieldType.string, 10));
+        tableSpec.add(new Field("salary", FieldType.integer));
+        List<String> keySpec = Arrays.asList("lastname", "firstname");
+
+        BPlusTree tree = BPlusTree.create(null, files.index(), keySpec, tableSpec, mapped());
+        try {
+            for (int i = 1; i <= 500; i++) {
+                tree.insert(Arrays.asList(i, "f" + i, "l" + i, 10 * i));
+            }
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree reopened = BPlusTree.create(null, files.index(), keySpec, tableSpec);
+        try {
+            assertTrue(reopened.isTreeValid());
+            List rec = reopened.find(Arrays.asList("l321", "f321"));
+            assertEquals(321, (int) rec.get(0));
+            assertEquals(3210, (int) rec.get(3));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testReopenAfterUncleanClose() throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), tableSpec, mapped());
+        try {
+            for (int i = 1; i <= 1000; i++) {
+                tree.insert(List.of(i));
+            }
+            // what a crash would leave: the file is still a whole number of chunks
+            Files.copy(Paths.get(files.index()), Paths.get(files.path("crash.db")),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tree.close();
+        }
+        assertEquals(0, Files.size(Paths.get(files.path("crash.db"))) % (16 * 1024));
+
+        for (String name : List.of(files.path("crash.db"), files.index())) {
+            BPlusTree reopened = BPlusTree.create(null, name, List.of("id"), tableSpec, mapped());
+            try {
+                assertTrue(reopened.isTreeValid());
+                // the zero pages past the last block are not free blocks
+                assertEquals(0, reopened.stats().getFreeBlocks());
+                assertEquals(1000, (int) reopened.find(List.of(1000)).get(0));
+                reopened.insert(List.of(1001));
+                assertEquals(1001, (int) reopened.find(List.of(1001)).get(0));
+            } finally {
+                reopened.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeScanTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static List<Integer> ids(Cursor cursor) {
+        List<Integer> ret = new ArrayList<>();
+        while (cursor.hasNext()) {
+            ret.add((Integer) cursor.next().get(0));
+        }
+        return ret;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> ret = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            ret.add(i);
+        }
+        return ret;
+    }
+
+    private static BPlusTree randomOrderTree(String filename, int n) throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+
+        BPlusTree tree = BPlusTree.create(null, filename, List.of("id"), tableSpec);
+
+        List<Integer> order = range(1, n);
+        Collections.shuffle(order, new Random(42));
+        for (int i : order) {
+            tree.insert(List.of(i, i * 10));
+        }
+        return tree;
+    }
+
+    @Test
+    public void testFullScanFollowsLeafChain() throws IOException {
+        BPlusTree tree = randomOrderTree(files.index(), 1000);
+        try {
+            assertEquals(range(1, 1000), ids(tree.scan(null, null)));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testBounds() throws IOException {
+        BPlusTree tree = randomOrderTree(files.index(), 1000);
+        try {
+            assertEquals(range(100, 200), ids(tree.scan(List.of(100), List.of(200))));
+            assertEquals(range(101, 199), ids(tree.scan(List.of(100), List.of(200), false, false)));
+            assertEquals(range(990, 1000), ids(tree.scan(List.of(990), null)));
+            assertEquals(range(1, 5), ids(tree.scan(null, List.of(6), true, false)));
+            assertEquals(List.of(), ids(tree.scan(List.of(2000), null)));
+
+            List rec = tree.scan(List.of(500), List.of(500)).next();
+            assertEquals(5000, (int) rec.get(1));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testEarlyTermination() throws IOException {
+        BPlusTree tree = randomOrderTree(files.index(), 1000);
+        try {
+            Cursor cursor = tree.scan(List.of(10), null);
+            assertEquals(10, (int) cursor.next().get(0));
+            assertEquals(11, (int) cursor.next().get(0));
+            cursor.close();
+            assertFalse(cursor.hasNext());
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testScanAfterDelete() throws IOException {
+        BPlusTree tree = randomOrderTree(files.index(), 300);
+        try {
+            for (int i = 50; i <= 150; i++) {
+                tree.delete(List.of(i));
+            }
+            List<Integer> expected = range(40, 49);
+            expected.addAll(range(151, 160));
+            assertEquals(expected, ids(tree.scan(List.of(40), List.of(160))));
+            assertTrue(tree.isTreeValid());
+        } finally {
+            tree.close();
+        }
+    }
+}
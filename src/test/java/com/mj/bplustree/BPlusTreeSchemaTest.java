@@ -0,0 +1,137 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BPlusTreeSchemaTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static List<Field> tableSpec() {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("name", FieldType.string, 20));
+        tableSpec.add(new Field("dept", FieldType.integer));
+        tableSpec.add(new Field("salary", FieldType.decimal));
+        return tableSpec;
+    }
+
+    private void createEmployees() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("dept", "name"), tableSpec());
+        try {
+            for (int i = 0; i < 2000; i++) {
+                tree.insert(List.of("emp" + i, i % 10, i * 1.5f));
+            }
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testOpenTakesSchemaFromFile() throws IOException {
+        createEmployees();
+
+        BPlusTree tree = BPlusTree.open(files.index());
+        try {
+            assertTrue(tree.isTreeValid());
+            List rec = tree.find(List.of(7, "emp17"));
+            assertEquals("emp17", rec.get(0));
+            assertEquals(17 * 1.5f, (float) rec.get(2), 0);
+
+            // keyed on dept first, then name
+            Cursor cursor = tree.scan(List.of(3, ""), List.of(3, "~"));
+            int n = 0;
+            while (cursor.hasNext()) {
+                assertEquals(3, (int) cursor.next().get(1));
+                n++;
+            }
+            assertEquals(200, n);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testScanWithPrefixBounds() throws IOException {
+        createEmployees();
+
+        BPlusTree tree = BPlusTree.open(files.index());
+        try {
+            // a bound on dept alone sorts before every name in that dept
+            Cursor cursor = tree.scan(List.of(2), List.of(3));
+            int n = 0;
+            while (cursor.hasNext()) {
+                assertEquals(2, (int) cursor.next().get(1));
+                n++;
+            }
+            assertEquals(200, n);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testMatchingSpecIsAccepted() throws IOException {
+        createEmployees();
+
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("dept", "name"), tableSpec());
+        try {
+            assertEquals("emp5", tree.find(List.of(5, "emp5")).get(0));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testIncompatibleSpecIsRejected() throws IOException {
+        createEmployees();
+        long size = Files.size(Paths.get(files.index()));
+
+        List<Field> widerName = tableSpec();
+        widerName.set(0, new Field("name", FieldType.string, 40));
+        try {
+            BPlusTree.create(null, files.index(), List.of("dept", "name"), widerName);
+            fail("a different field length was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            BPlusTree.create(null, files.index(), List.of("name"), tableSpec());
+            fail("a different key was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // the file was left as it was
+        assertEquals(size, Files.size(Paths.get(files.index())));
+        BPlusTree tree = BPlusTree.open(files.index());
+        try {
+            assertEquals("emp5", tree.find(List.of(5, "emp5")).get(0));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyMustBeAField() throws IOException {
+        BPlusTree.create(null, files.index(), List.of("id"), tableSpec());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testOpenNeedsExistingFile() throws IOException {
+        BPlusTree.open(files.index());
+    }
+}
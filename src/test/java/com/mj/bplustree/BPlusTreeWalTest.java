@@ -0,0 +1,161 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeWalTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static List<Field> tableSpec() {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return tableSpec;
+    }
+
+    private static BPlusTree open(String filename) throws IOException {
+        return BPlusTree.create(null, filename, List.of("id"), tableSpec(),
+                new TreeOptions().setWriteAheadLog(true));
+    }
+
+    /**
+     * Copies the index file and its log as they are on disk right now, which
+     * is what a crash at this point would leave behind.
+     */
+    private void crashCopy() throws IOException {
+        Files.copy(Paths.get(files.index()), Paths.get(files.path("crash.db")), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(Paths.get(files.index() + ".wal"), Paths.get(files.path("crash.db") + ".wal"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<Integer> shuffled(int n) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(7));
+        return order;
+    }
+
+    @Test
+    public void testRecoversAfterCrash() throws IOException {
+        BPlusTree tree = open(files.index());
+        try {
+            for (int i : shuffled(3000)) {
+                tree.insert(List.of(i, i * 10));
+            }
+            for (int i = 1; i <= 3000; i += 3) {
+                tree.delete(List.of(i));
+            }
+            // pages are only written lazily, so the log holds the splits
+            assertTrue(Files.size(Paths.get(files.index() + ".wal")) > 0);
+            crashCopy();
+        } finally {
+            tree.close();
+        }
+
+        BPlusTree recovered = open(files.path("crash.db"));
+        try {
+            assertTrue(recovered.isTreeValid());
+            for (int i = 1; i <= 3000; i++) {
+                List rec = recovered.find(List.of(i));
+                if (i % 3 == 1) {
+                    assertNull(rec);
+                } else {
+                    assertEquals(i * 10, (int) rec.get(1));
+                }
+            }
+        } finally {
+            recovered.close();
+        }
+        assertEquals(0, Files.size(Paths.get(files.path("crash.db") + ".wal")));
+    }
+
+    @Test
+    public void testTornLogTailIsIgnored() throws IOException {
+        BPlusTree tree = open(files.index());
+        try {
+            for (int i = 1; i <= 500; i++) {
+                tree.insert(List.of(i, i));
+            }
+            crashCopy();
+        } finally {
+            tree.close();
+        }
+
+        // half of a record written when the crash hit
+        Path log = Paths.get(files.path("crash.db") + ".wal");
+        try (RandomAccessFile f = new RandomAccessFile(log.toFile(), "rw")) {
+            f.seek(f.length());
+            f.writeInt(1029);
+            f.writeByte(1);
+        }
+
+        BPlusTree recovered = open(files.path("crash.db"));
+        try {
+            assertTrue(recovered.isTreeValid());
+            for (int i = 1; i <= 500; i++) {
+                assertEquals(i, (int) recovered.find(List.of(i)).get(1));
+            }
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void testCheckpointOnClose() throws IOException {
+        BPlusTree tree = open(files.index());
+        try {
+            tree.insertAll(List.of(List.of(1, 10), List.of(2, 20), List.of(3, 30)));
+        } finally {
+            tree.close();
+        }
+        assertEquals(0, Files.size(Paths.get(files.index() + ".wal")));
+
+        // the index file alone is complete after a clean close
+        BPlusTree reopened = BPlusTree.create(null, files.index(), List.of("id"), tableSpec());
+        try {
+            assertEquals(20, (int) reopened.find(List.of(2)).get(1));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testSmallCheckpointThreshold() throws IOException {
+        BPlusTree tree = BPlusTree.create(null, files.index(), List.of("id"), tableSpec(),
+                new TreeOptions().setWriteAheadLog(true).setCheckpointBytes(64 * 1024)
+                        .setCacheSizeBytes(16 * 1024));
+        try {
+            for (int i : shuffled(5000)) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertTrue(Files.size(Paths.get(files.index() + ".wal")) < 128 * 1024);
+            assertTrue(tree.isTreeValid());
+            for (int i = 1; i <= 5000; i += 7) {
+                assertEquals(i * 10, (int) tree.find(List.of(i)).get(1));
+            }
+        } finally {
+            tree.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Measures tree throughput with 1 to 8 threads: point reads against a
+ * bulk-loaded tree, then a mix of 90% reads and 10% inserts of new keys.
+ * With page latches, reads should scale with the number of cores and writers
+ * only contend on the leaves they change.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes com.mj.bplustree.ConcurrencyBenchmark
+ */
+public class ConcurrencyBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int KEYS = 500_000;
+    private static final long MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+
+        File file = File.createTempFile("concurrency", ".db");
+        file.delete();
+        BPlusTree tree = BPlusTree.create(null, file.getPath(), List.of("id"), tableSpec,
+                new TreeOptions().setCacheSizeBytes(64L * 1024 * 1024));
+        try {
+            // even keys only, so the mixed run has free keys everywhere in the tree
+            tree.bulkLoad(IntStream.range(0, KEYS).mapToObj(i -> List.of(i * 2, i)), 0.7);
+
+            System.out.printf("%8s %16s %16s%n", "threads", "reads ops/s", "90/10 ops/s");
+            AtomicInteger nextOdd = new AtomicInteger(1);
+            for (int threads : THREADS) {
+                double reads = run(threads, r -> tree.find(List.of(r.nextInt(KEYS) * 2)));
+                double mixed = run(threads, r -> {
+                    if (r.nextInt(10) == 0) {
+                        int k = nextOdd.getAndAdd(2) % (KEYS * 2);
+                        tree.insert(List.of(k, k));
+                    } else {
+                        tree.find(List.of(r.nextInt(KEYS) * 2));
+                    }
+                });
+                System.out.printf("%8d %16.0f %16.0f%n", threads, reads, mixed);
+            }
+        } finally {
+            tree.close();
+            file.delete();
+        }
+    }
+
+    private interface Op {
+        void run(Random r) throws IOException;
+    }
+
+    /**
+     * Runs op in a loop on the given number of threads for MILLIS and returns
+     * the combined operations per second.
+     */
+    private static double run(int threads, Op op) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder ops = new LongAdder();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random r = new Random(t);
+            Thread worker = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        op.run(r);
+                        ops.increment();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            workers.add(worker);
+        }
+
+        long t0 = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        Thread.sleep(MILLIS);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() * 1e9 / (System.nanoTime() - t0);
+    }
+}
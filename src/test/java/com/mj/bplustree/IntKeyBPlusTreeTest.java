@@ -0,0 +1,157 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class IntKeyBPlusTreeTest {
+
+    private static final int N = 20000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static List<Field> tableSpec() {
+        List<Field> tableSpec = new ArrayList<>();
+        // a string before the key, so the key is found past a variable length field
+        tableSpec.add(new Field("name", FieldType.string, 12));
+        tableSpec.add(new Field("id", FieldType.integer));
+        return tableSpec;
+    }
+
+    @Test
+    public void testFindByInt() throws IOException {
+        List<Integer> order = new ArrayList<>();
+        for (int i = -N; i < N; i += 2) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(1));
+
+        IntKeyBPlusTree tree = IntKeyBPlusTree.create(null, files.index(), "id", tableSpec());
+        try {
+            for (int i : order) {
+                tree.insert(List.of("n" + i, i));
+            }
+            for (int i = -N - 1; i <= N; i++) {
+                if (i % 2 == 0 && i < N) {
+                    assertEquals(List.of("n" + i, i), tree.find(i));
+                    assertTrue(tree.contains(i));
+                } else {
+                    assertNull(tree.find(i));
+                    assertFalse(tree.contains(i));
+                }
+            }
+            // after changes the nodes are searched on their new keys
+            for (int i = 0; i < N; i += 4) {
+                tree.delete(i);
+            }
+            tree.insert(List.of("odd", 7));
+            assertTrue(tree.contains(7));
+            assertFalse(tree.contains(4));
+            assertTrue(tree.contains(2));
+        } finally {
+            tree.close();
+        }
+
+        // the same file as any other tree, and the other way round
+        BPlusTree plain = BPlusTree.open(files.index());
+        try {
+            assertEquals("odd", plain.find(List.of(7)).get(0));
+            assertTrue(plain.isTreeValid());
+        } finally {
+            plain.close();
+        }
+        IntKeyBPlusTree reopened = IntKeyBPlusTree.open(files.index());
+        try {
+            for (int i = -N; i < N; i += 2) {
+                assertEquals(i < 0 || i % 4 != 0, reopened.contains(i));
+            }
+            assertEquals("odd", reopened.find(7).get(0));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testLookupsDoNotAllocate() throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        IntKeyBPlusTree tree = IntKeyBPlusTree.create(null, files.index(), "id", tableSpec);
+        try {
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i));
+            }
+            long allocated = 0;
+            int found = 0;
+            for (int round = 0; round < 4; round++) {
+                // the first rounds decode the nodes and their key arrays
+                long before = threads.getThreadAllocatedBytes(thread);
+                for (int i = 0; i < N; i++) {
+                    int key = (int) ((i * 7919L) % N);
+                    if (tree.contains(key) && tree.find(key) != null) {
+                        found++;
+                    }
+                }
+                allocated = threads.getThreadAllocatedBytes(thread) - before;
+            }
+            assertEquals(4 * N, found);
+            // the buffer pool hit, the latches and the search itself allocate nothing
+            assertTrue("lookups allocated " + allocated + " bytes", allocated < 1024);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testEmptyTree() throws IOException {
+        IntKeyBPlusTree tree = IntKeyBPlusTree.create(null, files.index(), "id", tableSpec());
+        try {
+            assertNull(tree.find(1));
+            assertFalse(tree.contains(1));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testKeyMustBeOneInteger() throws IOException {
+        try {
+            IntKeyBPlusTree.create(null, files.index(), "name", tableSpec());
+            fail("a string key was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertFalse(Files.exists(Paths.get(files.index())));
+
+        BPlusTree.create(null, files.index(), List.of("id", "name"), tableSpec()).close();
+        try {
+            IntKeyBPlusTree.open(files.index());
+            fail("a composite key was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
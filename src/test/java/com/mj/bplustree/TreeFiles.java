@@ -0,0 +1,28 @@
+package com.mj.bplustree;
+
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * A temporary folder for the files of the trees a test opens. The folder is
+ * deleted when the test ends, with every file in it, write-ahead logs
+ * included, so a test neither cleans up after itself nor leaves files in the
+ * working directory.
+ */
+public class TreeFiles extends TemporaryFolder {
+
+    /**
+     * The path of name in the folder; the file need not exist.
+     */
+    public String path(String name) {
+        return new File(getRoot(), name).getPath();
+    }
+
+    /**
+     * The path of the index file of a test that opens one tree.
+     */
+    public String index() {
+        return path("index.db");
+    }
+}
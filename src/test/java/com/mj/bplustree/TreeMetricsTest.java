@@ -0,0 +1,155 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TreeMetricsTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTree create(TreeOptions options) throws IOException {
+        return BPlusTree.create(null, files.index(), List.of("id"),
+                List.of(new Field("id", FieldType.integer), new Field("amount", FieldType.integer)), options);
+    }
+
+    private ObjectName mbeanName() throws Exception {
+        return new ObjectName("com.mj.bplustree:type=BPlusTree,file="
+                + ObjectName.quote(Paths.get(files.index()).toAbsolutePath().toString()));
+    }
+
+    @Test
+    public void testNothingPrinted() throws IOException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed));
+        try {
+            BPlusTree tree = create(new TreeOptions());
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    tree.insert(List.of(i, i));
+                }
+                tree.find(List.of(5));
+            } finally {
+                tree.close();
+            }
+            create(new TreeOptions()).close();
+        } finally {
+            System.setOut(out);
+        }
+        // what a tree has done is in its metrics, not on stdout
+        assertEquals("", printed.toString());
+    }
+
+    @Test
+    public void testCountsFollowTheTree() throws IOException {
+        BPlusTree tree = create(new TreeOptions());
+        try {
+            TreeMetrics metrics = tree.getMetrics();
+            for (int i = 0; i < 20000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertEquals(3, metrics.getHeight());
+            assertEquals(20000, metrics.getRecordCount());
+            // two root splits made the three levels; every split wrote its new node
+            assertEquals(2, metrics.getRootSplits());
+            assertTrue(metrics.getSplits() > 20000 / 126);
+            assertTrue(metrics.getLeafPageWrites() > metrics.getSplits());
+            assertTrue(metrics.getInternalPageWrites() > 0);
+            assertTrue(metrics.getBytesWritten() >= 1024 * (metrics.getLeafPageWrites() + metrics.getInternalPageWrites()));
+            assertEquals(0, metrics.getMerges());
+
+            for (int i = 0; i < 20000; i += 7) {
+                assertEquals(i * 10, (int) tree.find(List.of(i)).get(1));
+            }
+            for (int i = 0; i < 20000; i++) {
+                if (i % 40 != 0) {
+                    tree.delete(List.of(i));
+                }
+            }
+            assertTrue(metrics.getMerges() > 0);
+            assertEquals(500, metrics.getRecordCount());
+
+            LatencySummary finds = metrics.getFindLatency();
+            assertEquals(20000 / 7 + 1, finds.getCount());
+            assertTrue(finds.getP50Nanos() > 0);
+            assertTrue(finds.getP50Nanos() <= finds.getP99Nanos());
+            assertTrue(finds.getP99Nanos() <= finds.getMaxNanos());
+            assertEquals(20000, metrics.getInsertLatency().getCount());
+            assertEquals(20000 - 500, metrics.getDeleteLatency().getCount());
+            assertTrue(metrics.getCacheHits() > 0);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testColdCacheReadsPages() throws IOException {
+        BPlusTree tree = create(new TreeOptions());
+        for (int i = 0; i < 20000; i++) {
+            tree.insert(List.of(i, i * 10));
+        }
+        tree.close();
+
+        // the smallest pool there is: most lookups miss and read the leaf
+        BPlusTree reopened = BPlusTree.open(files.index(), new TreeOptions().setCacheSizeBytes(0));
+        try {
+            TreeMetrics metrics = reopened.getMetrics();
+            for (int i = 0; i < 20000; i += 101) {
+                reopened.find(List.of(i));
+            }
+            assertTrue(metrics.getLeafPageReads() > 100);
+            assertTrue(metrics.getInternalPageReads() > 0);
+            assertEquals(metrics.getCacheMisses(), metrics.getLeafPageReads() + metrics.getInternalPageReads());
+            assertTrue(metrics.getCacheEvictions() > 0);
+            assertEquals(0, metrics.getLeafPageWrites());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testRegisteredWithJmxWhileOpen() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        BPlusTree tree = create(new TreeOptions().setJmxEnabled(true));
+        try {
+            for (int i = 0; i < 1000; i++) {
+                tree.insert(List.of(i, i));
+            }
+            tree.find(List.of(5));
+            assertEquals(1000L, server.getAttribute(mbeanName(), "RecordCount"));
+            assertEquals(tree.getMetrics().getLeafPageWrites(), server.getAttribute(mbeanName(), "LeafPageWrites"));
+            CompositeData finds = (CompositeData) server.getAttribute(mbeanName(), "FindLatency");
+            assertEquals(1L, finds.get("count"));
+
+            // the same file cannot be registered twice
+            try {
+                BPlusTree.open(files.index(), new TreeOptions().setJmxEnabled(true));
+                fail("a second tree took the same name");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertTrue(server.isRegistered(mbeanName()));
+        } finally {
+            tree.close();
+        }
+        assertFalse(server.isRegistered(mbeanName()));
+    }
+}
@@ -0,0 +1,117 @@
+package com.mj.bplustree;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TreeStatsTest {
+
+    private static final int N = 50000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTree create() throws IOException {
+        return BPlusTree.create(null, files.index(), List.of("id"),
+                List.of(new Field("id", FieldType.integer), new Field("amount", FieldType.integer)));
+    }
+
+    private static long sum(List<Long> counts) {
+        return counts.stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Test
+    public void testBulkLoadedTree() throws IOException {
+        BPlusTree tree = create();
+        try {
+            tree.bulkLoad(IntStream.range(0, N).mapToObj(i -> List.of(i, i)), 0.9);
+            TreeStats stats = tree.stats();
+
+            assertFalse(stats.isSampled());
+            assertEquals(3, stats.getHeight());
+            assertEquals(1, (long) stats.getNodesPerLevel().get(0));
+            // 126 records of 8 bytes fit a leaf, 113 of them at 0.9
+            assertEquals((N + 112) / 113, stats.getLeaves());
+            assertEquals(113 * 8 / 1010.0, stats.getLeafFill().getMean(), 0.01);
+            assertEquals(0.89, stats.getLeafFill().getP50(), 0);
+            assertEquals(stats.getLeaves(), stats.getLeafFill().getNodes());
+            assertEquals(1 + stats.getNodesPerLevel().get(1), stats.getInternalFill().getNodes());
+
+            // every block is a node, the header or free
+            assertEquals(0, stats.getFreeBlocks());
+            assertEquals(stats.getTotalBlocks(), sum(stats.getNodesPerLevel()) + 1);
+
+            // written in key order: only the non-leaf nodes come between leaves
+            assertTrue(stats.getLeafContiguity() > 0.95);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testRandomInsertsAndSample() throws IOException {
+        BPlusTree tree = create();
+        try {
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < N; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(7));
+            for (int i : order) {
+                tree.insert(List.of(i, i));
+            }
+            for (int i = 0; i < N; i += 3) {
+                tree.delete(List.of(i));
+            }
+            TreeStats full = tree.stats();
+
+            // leaves split at random points are between half and completely full
+            FillSummary leafFill = full.getLeafFill();
+            assertTrue(leafFill.getMin() >= 0.5 - 1.0 / 126);
+            assertTrue(leafFill.getMean() > 0.5 && leafFill.getMean() < 0.9);
+            for (FillSummary fill : List.of(leafFill, full.getInternalFill())) {
+                assertTrue(fill.getMin() <= fill.getP10() && fill.getP10() <= fill.getP50());
+                assertTrue(fill.getP50() <= fill.getP90() && fill.getP90() <= fill.getMax());
+            }
+            assertTrue(full.getLeafContiguity() < 0.5);
+            assertEquals(full.getTotalBlocks(), sum(full.getNodesPerLevel()) + full.getFreeBlocks() + 1);
+
+            TreeStats sampled = tree.stats(400);
+            assertTrue(sampled.isSampled());
+            assertEquals(full.getHeight(), sampled.getHeight());
+            assertEquals(full.getNodesPerLevel().get(1), sampled.getNodesPerLevel().get(1));
+            assertEquals(full.getLeaves(), sampled.getLeaves(), full.getLeaves() * 0.2);
+            assertEquals(leafFill.getMean(), sampled.getLeafFill().getMean(), 0.1);
+            assertEquals(400, sampled.getLeafFill().getNodes());
+            assertEquals(full.getTotalBlocks(), sampled.getTotalBlocks());
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testEmptyTree() throws IOException {
+        BPlusTree tree = create();
+        try {
+            TreeStats stats = tree.stats();
+            assertEquals(0, stats.getHeight());
+            assertEquals(0, stats.getLeaves());
+            assertEquals(0, stats.getLeafFill().getNodes());
+            assertEquals(0, tree.stats(10).getHeight());
+        } finally {
+            tree.close();
+        }
+    }
+}
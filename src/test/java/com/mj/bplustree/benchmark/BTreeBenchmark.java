@@ -0,0 +1,67 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.impl.BTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The in-memory BTree, as a baseline for the disk tree: inserts of RECORDS
+ * random keys into an empty tree, then lookups and deletes on a full one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BTreeBenchmark {
+
+    private static final int RECORDS = 200000;
+    private static final int PROBES = 1 << 16;
+
+    private int[] keys;
+    private BTree full;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        keys = Trees.shuffled(RECORDS);
+        full = new BTree();
+        for (int key : keys) {
+            full.add(key, key);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public BTree add() {
+        BTree tree = new BTree();
+        for (int key : keys) {
+            tree.add(key, key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public Object search() {
+        return full.search(keys[next++ & (PROBES - 1)]);
+    }
+
+    /**
+     * Deletes a key and adds it back, so the tree stays full.
+     */
+    @Benchmark
+    public void deleteAndAdd() {
+        int key = keys[next++ & (PROBES - 1)];
+        full.delete(key);
+        full.add(key, key);
+    }
+}
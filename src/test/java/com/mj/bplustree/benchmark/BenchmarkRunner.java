@@ -0,0 +1,36 @@
+package com.mj.bplustree.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of this package, or those named on the command line,
+ * with the GC profiler, so that each score comes with the bytes allocated
+ * per operation (gc.alloc.rate.norm). The results go to target/jmh-result.json
+ * as well. Any other JMH option can be given, e.g. -p schema=INTEGER.
+ * <p>
+ * Build with mvn -P jmh test-compile, which generates the benchmark harness,
+ * then run with:
+ * java -cp target/classes:target/test-classes:$(cat target/jmh.classpath) com.mj.bplustree.benchmark.BenchmarkRunner [Find]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json");
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackageName() + "\\.");
+        }
+        new Runner(options.build()).run();
+    }
+}
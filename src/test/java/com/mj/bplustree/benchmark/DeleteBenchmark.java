@@ -0,0 +1,72 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.BPlusTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes of random keys from a loaded tree, enough of them that leaves
+ * underflow and merge. Each invocation loads a new tree and deletes DELETES
+ * records from it, so the score is deletes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@Fork(1)
+public class DeleteBenchmark {
+
+    private static final int RECORDS = 50000;
+    private static final int DELETES = 10000;
+
+    @Param({"INTEGER", "STRING", "EMPLOYEE"})
+    Schema schema;
+
+    private List<List<Object>> keys;
+    private File file;
+    private BPlusTree tree;
+
+    @Setup(Level.Trial)
+    public void makeKeys() {
+        int[] numbers = Trees.shuffled(RECORDS);
+        keys = new ArrayList<>(DELETES);
+        for (int i = 0; i < DELETES; i++) {
+            keys.add(schema.key(numbers[i]));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void loadTree() throws IOException {
+        file = Trees.newFile("delete");
+        tree = Trees.load(file, schema, RECORDS, Trees.HOT_CACHE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void destroyTree() throws IOException {
+        Trees.destroy(tree, file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DELETES)
+    public void delete() {
+        for (List<Object> key : keys) {
+            tree.delete(key);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.BPlusTree;
+import com.mj.bplustree.Durability;
+import com.mj.bplustree.TreeOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inserts under each durability mode, from one thread and from four, so the
+ * scores show what a sync per operation costs and how much of it group
+ * commit wins back. Each iteration starts on a new tree with a cache that
+ * holds all of it, so the only disk writes are the log and its syncs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DurabilityBenchmark {
+
+    @Param({"WRITE_THROUGH", "ON_COMMIT", "GROUP", "PERIODIC"})
+    Durability durability;
+
+    private final AtomicInteger nextKey = new AtomicInteger();
+    private File file;
+    private BPlusTree tree;
+
+    @Setup(Level.Iteration)
+    public void createTree() throws IOException {
+        file = Trees.newFile("durability");
+        tree = Trees.create(file, Schema.INTEGER, new TreeOptions()
+                .setCacheSizeBytes(Trees.HOT_CACHE)
+                .setDurability(durability)
+                .setGroupCommitOperations(64)
+                .setSyncIntervalMillis(10));
+        nextKey.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void destroyTree() throws IOException {
+        Trees.destroy(tree, file);
+    }
+
+    @Benchmark
+    public void insert() {
+        tree.insert(Schema.INTEGER.record(nextKey.getAndIncrement()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void insertConcurrently() {
+        tree.insert(Schema.INTEGER.record(nextKey.getAndIncrement()));
+    }
+}
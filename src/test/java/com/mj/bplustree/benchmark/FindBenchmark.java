@@ -0,0 +1,67 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.BPlusTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Point lookups of random existing keys, with a cache that holds the whole
+ * tree and with one of a few pages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindBenchmark {
+
+    static final int RECORDS = 200000;
+    private static final int PROBES = 1 << 16;
+
+    @Param({"INTEGER", "STRING", "EMPLOYEE"})
+    Schema schema;
+
+    @Param({"hot", "cold"})
+    String cache;
+
+    private File file;
+    private BPlusTree tree;
+    private List<List<Object>> keys;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadTree() throws IOException {
+        file = Trees.newFile("find");
+        tree = Trees.load(file, schema, RECORDS, cache.equals("hot") ? Trees.HOT_CACHE : Trees.COLD_CACHE);
+        int[] numbers = Trees.shuffled(RECORDS);
+        keys = new ArrayList<>(PROBES);
+        for (int i = 0; i < PROBES; i++) {
+            keys.add(schema.key(numbers[i]));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void destroyTree() throws IOException {
+        Trees.destroy(tree, file);
+    }
+
+    @Benchmark
+    public List find() {
+        return tree.find(keys.get(next++ & (PROBES - 1)));
+    }
+}
@@ -0,0 +1,80 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.BPlusTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts into an empty tree, one record at a time and as a batch, in key
+ * order and in random order. Each invocation fills a new tree with RECORDS
+ * records, so the score is records per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@Fork(1)
+public class InsertBenchmark {
+
+    static final int RECORDS = 20000;
+
+    @Param({"INTEGER", "STRING", "EMPLOYEE"})
+    Schema schema;
+
+    @Param({"sequential", "random"})
+    String order;
+
+    private List<List<Object>> records;
+    private File file;
+    private BPlusTree tree;
+
+    @Setup(Level.Trial)
+    public void makeRecords() {
+        int[] numbers = order.equals("random") ? Trees.shuffled(RECORDS) : Trees.sequential(RECORDS);
+        records = new ArrayList<>(RECORDS);
+        for (int n : numbers) {
+            records.add(schema.record(n));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createTree() throws IOException {
+        file = Trees.newFile("insert");
+        tree = Trees.create(file, schema, Trees.HOT_CACHE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void destroyTree() throws IOException {
+        Trees.destroy(tree, file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void insert() {
+        for (List<Object> record : records) {
+            tree.insert(record);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void insertAll() {
+        tree.insertAll(records);
+    }
+}
@@ -0,0 +1,65 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.IntKeyBPlusTree;
+import com.mj.bplustree.TreeOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The lookups of FindBenchmark on the INTEGER schema, through the int key
+ * methods of IntKeyBPlusTree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IntKeyFindBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"hot", "cold"})
+    String cache;
+
+    private File file;
+    private IntKeyBPlusTree tree;
+    private int[] keys;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadTree() throws IOException {
+        file = Trees.newFile("intfind");
+        Trees.load(file, Schema.INTEGER, FindBenchmark.RECORDS, Trees.HOT_CACHE).close();
+        tree = IntKeyBPlusTree.open(file.getPath(), new TreeOptions()
+                .setCacheSizeBytes(cache.equals("hot") ? Trees.HOT_CACHE : Trees.COLD_CACHE));
+        keys = Trees.shuffled(FindBenchmark.RECORDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void destroyTree() throws IOException {
+        Trees.destroy(tree, file);
+    }
+
+    @Benchmark
+    public Object find() {
+        return tree.find(keys[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return tree.contains(keys[next++ & (PROBES - 1)]);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.BPlusTree;
+import com.mj.bplustree.Cursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Range scans of LENGTH records from a random key, each a cursor that is
+ * opened, read to the end of the range and closed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    private static final int RECORDS = 200000;
+    private static final int LENGTH = 100;
+    private static final int RANGES = 1 << 12;
+
+    @Param({"INTEGER", "STRING", "EMPLOYEE"})
+    Schema schema;
+
+    private File file;
+    private BPlusTree tree;
+    private List<List<Object>> lows;
+    private List<List<Object>> highs;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadTree() throws IOException {
+        file = Trees.newFile("scan");
+        tree = Trees.load(file, schema, RECORDS, Trees.HOT_CACHE);
+        int[] numbers = Trees.shuffled(RECORDS - LENGTH);
+        lows = new ArrayList<>(RANGES);
+        highs = new ArrayList<>(RANGES);
+        for (int i = 0; i < RANGES; i++) {
+            lows.add(schema.key(numbers[i]));
+            highs.add(schema.key(numbers[i] + LENGTH - 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void destroyTree() throws IOException {
+        Trees.destroy(tree, file);
+    }
+
+    @Benchmark
+    public void scan(Blackhole bh) {
+        int i = next++ & (RANGES - 1);
+        try (Cursor cursor = tree.scan(lows.get(i), highs.get(i))) {
+            while (cursor.hasNext()) {
+                bh.consume(cursor.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+
+import java.util.List;
+
+/**
+ * The record layouts of the tests. Record n and its key are made from n, and
+ * increasing n gives increasing keys, so records can be bulk loaded in order
+ * and looked up again by number.
+ */
+enum Schema {
+
+    /**
+     * As BPlusTreeIntegerTest: an integer key and an integer value.
+     */
+    INTEGER(List.of(new Field("id", FieldType.integer), new Field("amount", FieldType.integer)),
+            List.of("id")) {
+        @Override
+        List<Object> record(int n) {
+            return List.of(n, n * 10);
+        }
+
+        @Override
+        List<Object> key(int n) {
+            return List.of(n);
+        }
+    },
+
+    /**
+     * As BPlusTreeString: a string key.
+     */
+    STRING(List.of(new Field("name", FieldType.string, 20), new Field("amount", FieldType.integer)),
+            List.of("name")) {
+        @Override
+        List<Object> record(int n) {
+            return List.of(text(n), n);
+        }
+
+        @Override
+        List<Object> key(int n) {
+            return List.of(text(n));
+        }
+    },
+
+    /**
+     * As CompositeKeyEmployeeTest: keyed on last name, then first name.
+     */
+    EMPLOYEE(List.of(new Field("id", FieldType.integer), new Field("firstname", FieldType.string, 10),
+            new Field("lastname", FieldType.string, 10), new Field("salary", FieldType.integer)),
+            List.of("lastname", "firstname")) {
+        @Override
+        List<Object> record(int n) {
+            return List.of(n, word(n % 1000), word(n / 1000), 21 * n);
+        }
+
+        @Override
+        List<Object> key(int n) {
+            return List.of(word(n / 1000), word(n % 1000));
+        }
+    };
+
+    final List<Field> tableSpec;
+    final List<String> keySpec;
+
+    Schema(List<Field> tableSpec, List<String> keySpec) {
+        this.tableSpec = tableSpec;
+        this.keySpec = keySpec;
+    }
+
+    abstract List<Object> record(int n);
+
+    abstract List<Object> key(int n);
+
+    private static String text(int n) {
+        return String.format("key%09d", n);
+    }
+
+    /**
+     * Four letters, in the order of n.
+     */
+    private static String word(int n) {
+        char[] w = new char[4];
+        for (int i = 3; i >= 0; i--) {
+            w[i] = (char) ('a' + n % 26);
+            n /= 26;
+        }
+        return new String(w);
+    }
+}
@@ -0,0 +1,81 @@
+package com.mj.bplustree.benchmark;
+
+import com.mj.bplustree.BPlusTree;
+import com.mj.bplustree.TreeOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creating and removing the trees the benchmarks run on.
+ */
+final class Trees {
+
+    /**
+     * The cache of a hot tree holds all of it; a cold one has the smallest
+     * buffer pool there is, so nearly every leaf is read from the file again,
+     * through the OS page cache.
+     */
+    static final long HOT_CACHE = 64L * 1024 * 1024;
+    static final long COLD_CACHE = 8 * 1024;
+
+    private Trees() {
+    }
+
+    static File newFile(String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".db");
+        file.delete();
+        return file;
+    }
+
+    static BPlusTree create(File file, Schema schema, long cacheBytes) throws IOException {
+        return create(file, schema, new TreeOptions().setCacheSizeBytes(cacheBytes));
+    }
+
+    static BPlusTree create(File file, Schema schema, TreeOptions options) throws IOException {
+        return BPlusTree.create(null, file.getPath(), schema.keySpec, schema.tableSpec, options);
+    }
+
+    /**
+     * Creates a tree holding records 0 to n - 1.
+     */
+    static BPlusTree load(File file, Schema schema, int n, long cacheBytes) throws IOException {
+        BPlusTree tree = create(file, schema, cacheBytes);
+        List<List<Object>> records = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            records.add(schema.record(i));
+        }
+        tree.bulkLoad(records.iterator(), 0.9);
+        return tree;
+    }
+
+    static void destroy(BPlusTree tree, File file) throws IOException {
+        tree.close();
+        file.delete();
+        new File(file.getPath() + ".wal").delete();
+    }
+
+    /**
+     * 0 to n - 1 in an order that is the same on every run.
+     */
+    static int[] shuffled(int n) {
+        List<Integer> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static int[] sequential(int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,202 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.TreeFiles;
+import com.mj.bplustree.Cursor;
+import com.mj.bplustree.TreeOptions;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeDeleteTest {
+
+    private static final int N = 20000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static BPlusTreeImpl open(String filename, TreeOptions options) throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return new BPlusTreeImpl(null, filename, List.of("id"), tableSpec, options);
+    }
+
+    private static List<Integer> shuffled(int n, long seed) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(seed));
+        return order;
+    }
+
+    /**
+     * Blocks in use: the file minus the blocks on the free list.
+     */
+    private static long usedBlocks(BPlusTreeImpl tree, String filename) throws IOException {
+        tree.getBufferPool().flush();
+        return Files.size(Paths.get(filename)) / 1024 - tree.getFreeBlockCount();
+    }
+
+    private static void assertSurvivors(BPlusTreeImpl tree, int step) throws IOException {
+        assertTrue(tree.isTreeValid());
+        for (int i = 0; i < N; i++) {
+            List rec = tree.find(List.of(i));
+            if (i % step == 0) {
+                assertEquals(i * 10, (int) rec.get(1));
+            } else {
+                assertNull(rec);
+            }
+        }
+        int expected = 0;
+        Cursor cursor = tree.scan(null, null);
+        while (cursor.hasNext()) {
+            assertEquals(expected, (int) cursor.next().get(0));
+            expected += step;
+        }
+        assertEquals(N, expected);
+    }
+
+    @Test
+    public void testPurgeShrinksTree() throws IOException {
+        BPlusTreeImpl tree = open(files.index(), new TreeOptions());
+        try {
+            for (int i : shuffled(N, 1)) {
+                tree.insert(List.of(i, i * 10));
+            }
+            long full = usedBlocks(tree, files.index());
+
+            // keep one key in 40
+            for (int i : shuffled(N, 2)) {
+                if (i % 40 != 0) {
+                    tree.delete(List.of(i));
+                }
+            }
+            assertSurvivors(tree, 40);
+
+            // every node other than the root is at least half full again
+            long used = usedBlocks(tree, files.index());
+            assertTrue("used " + used + " of " + full, used <= full / 20 + 2);
+
+            // the released blocks are reused before the file grows
+            long fileBlocks = Files.size(Paths.get(files.index())) / 1024;
+            for (int i : shuffled(N, 3)) {
+                tree.insert(List.of(i, i * 10));
+            }
+            tree.getBufferPool().flush();
+            assertTrue(Files.size(Paths.get(files.index())) / 1024 <= fileBlocks + 2);
+            assertSurvivors(tree, 1);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testDeleteEverything() throws IOException {
+        BPlusTreeImpl tree = open(files.index(), new TreeOptions());
+        try {
+            for (int i : shuffled(N, 4)) {
+                tree.insert(List.of(i, i * 10));
+            }
+            for (int i : shuffled(N, 5)) {
+                tree.delete(List.of(i));
+            }
+
+            // only the header and the root are left, the root as an empty leaf
+            assertTrue(tree.isTreeValid());
+            assertEquals(2, usedBlocks(tree, files.index()));
+            assertFalse(tree.scan(null, null).hasNext());
+            assertNull(tree.find(List.of(17)));
+
+            for (int i = 0; i < 1000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertEquals(9990, (int) tree.find(List.of(999)).get(1));
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testScanAcrossMergedLeaves() throws IOException {
+        BPlusTreeImpl tree = open(files.index(), new TreeOptions());
+        try {
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+
+            // a cursor parked on a leaf that is merged away carries on from the root
+            Cursor cursor = tree.scan(List.of(5000), null);
+            assertEquals(5000, (int) cursor.next().get(0));
+            for (int i = 4000; i < 9000; i++) {
+                if (i % 7 != 0) {
+                    tree.delete(List.of(i));
+                }
+            }
+            // the rest of the leaf it was on had already been copied, so deleted
+            // keys may still show up, but every survivor does, once and in order
+            List<Integer> seen = new ArrayList<>();
+            int last = 5000;
+            while (cursor.hasNext()) {
+                int next = (int) cursor.next().get(0);
+                assertTrue(next > last);
+                seen.add(next);
+                last = next;
+            }
+            for (int i = 5001; i < N; i++) {
+                if (i >= 9000 || i % 7 == 0) {
+                    assertTrue(Collections.binarySearch(seen, i) >= 0);
+                }
+            }
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testMergesAreRecoveredFromLog() throws IOException {
+        BPlusTreeImpl tree = open(files.index(), new TreeOptions().setWriteAheadLog(true));
+        try {
+            for (int i : shuffled(N, 6)) {
+                tree.insert(List.of(i, i * 10));
+            }
+            for (int i : shuffled(N, 7)) {
+                if (i % 40 != 0) {
+                    tree.delete(List.of(i));
+                }
+            }
+            // what a crash right now would leave behind
+            Files.copy(Paths.get(files.index()), Paths.get(files.path("crash.db")),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(Paths.get(files.index() + ".wal"), Paths.get(files.path("crash.db") + ".wal"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tree.close();
+        }
+
+        BPlusTreeImpl recovered = open(files.path("crash.db"), new TreeOptions().setWriteAheadLog(true));
+        try {
+            assertSurvivors(recovered, 40);
+            assertEquals(N / 40, recovered.getRecordCount());
+            long used = usedBlocks(recovered, files.path("crash.db"));
+            assertTrue("used " + used, used <= N / 40 / 60 + 3);
+        } finally {
+            recovered.close();
+        }
+    }
+}
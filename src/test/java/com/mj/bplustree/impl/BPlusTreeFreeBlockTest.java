@@ -0,0 +1,107 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.TreeFiles;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeFreeBlockTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTreeImpl open() throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return new BPlusTreeImpl(null, files.index(), List.of("id"), tableSpec);
+    }
+
+    private long fileBlocks() throws IOException {
+        return Files.size(Paths.get(files.index())) / 1024;
+    }
+
+    /**
+     * Writes an empty leaf that nothing in the tree points to.
+     */
+    private static int orphan(BPlusTreeImpl tree) throws IOException {
+        BPlusNode node = new BPlusNode(tree);
+        node.setLeaf(true);
+        tree.writeToDisk(node);
+        return node.getPointer();
+    }
+
+    @Test
+    public void testReleasedBlocksAreReused() throws IOException {
+        BPlusTreeImpl tree = open();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            int pointer = orphan(tree);
+            long blocks = fileBlocks();
+
+            tree.releaseBlock(pointer);
+            assertEquals(1, tree.getFreeBlockCount());
+
+            // churn: the file does not grow while blocks are released again
+            for (int i = 0; i < 100; i++) {
+                int reused = orphan(tree);
+                assertEquals(pointer, reused);
+                assertEquals(0, tree.getFreeBlockCount());
+                tree.releaseBlock(reused);
+            }
+            assertEquals(blocks, fileBlocks());
+            assertTrue(tree.isTreeValid());
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testFreeBlocksSurviveReopen() throws IOException {
+        BPlusTreeImpl tree = open();
+        int first;
+        int second;
+        try {
+            for (int i = 0; i < 1000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            first = orphan(tree);
+            second = orphan(tree);
+            tree.releaseBlock(first);
+            tree.releaseBlock(second);
+        } finally {
+            tree.close();
+        }
+
+        BPlusTreeImpl reopened = open();
+        try {
+            assertEquals(2, reopened.getFreeBlockCount());
+            List<Integer> reused = List.of(orphan(reopened), orphan(reopened));
+            assertTrue(reused.containsAll(List.of(first, second)));
+            assertEquals(0, reopened.getFreeBlockCount());
+
+            // the orphans are not in the tree, so they would be reported as lost
+            for (int pointer : reused) {
+                reopened.releaseBlock(pointer);
+            }
+            assertTrue(reopened.isTreeValid());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i * 10, (int) reopened.find(List.of(i)).get(1));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+}
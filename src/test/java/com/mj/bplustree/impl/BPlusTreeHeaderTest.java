@@ -0,0 +1,143 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.TreeFiles;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeHeaderTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static BPlusTreeImpl open(String filename) throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return new BPlusTreeImpl(null, filename, List.of("id"), tableSpec);
+    }
+
+    @Test
+    public void testRootMovesOnSplitAndCollapse() throws IOException {
+        BPlusTreeImpl tree = open(files.index());
+        try {
+            tree.insert(List.of(0, 0));
+            int leafRoot = tree.getRootPointer();
+            assertEquals(1, tree.getHeight());
+
+            for (int i = 1; i < 20000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            // the first root is still there, as the leftmost leaf
+            assertNotEquals(leafRoot, tree.getRootPointer());
+            assertEquals(3, tree.getHeight());
+            assertEquals(20000, tree.getRecordCount());
+
+            for (int i = 100; i < 20000; i++) {
+                tree.delete(List.of(i));
+            }
+            assertEquals(1, tree.getHeight());
+            assertEquals(100, tree.getRecordCount());
+            assertTrue(tree.isTreeValid());
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testCleanCloseIsReopenedFromHeader() throws IOException {
+        BPlusTreeImpl tree = open(files.index());
+        int root;
+        int height;
+        int free;
+        try {
+            for (int i = 0; i < 20000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            for (int i = 0; i < 20000; i += 2) {
+                tree.delete(List.of(i));
+            }
+            root = tree.getRootPointer();
+            height = tree.getHeight();
+            free = tree.getFreeBlockCount();
+            assertTrue(free > 0);
+        } finally {
+            tree.close();
+        }
+
+        FileHeader header = FileHeader.read(Paths.get(files.index()));
+        assertTrue(header.isClean());
+        assertEquals(root, header.getRootPointer());
+        assertEquals(10000, header.getRecordCount());
+        assertEquals(Files.size(Paths.get(files.index())) / 1024, header.getNextBlockPointer());
+
+        BPlusTreeImpl reopened = open(files.index());
+        try {
+            // an open tree is not clean until it is closed again
+            assertFalse(FileHeader.read(Paths.get(files.index())).isClean());
+            assertEquals(root, reopened.getRootPointer());
+            assertEquals(height, reopened.getHeight());
+            assertEquals(10000, reopened.getRecordCount());
+            assertEquals(free, reopened.getFreeBlockCount());
+            assertEquals(19990, (int) reopened.find(List.of(1999)).get(1));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testStateIsRebuiltAfterCrash() throws IOException {
+        BPlusTreeImpl tree = open(files.index());
+        int height;
+        int free;
+        try {
+            for (int i = 0; i < 20000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            for (int i = 0; i < 20000; i += 3) {
+                tree.delete(List.of(i));
+            }
+            height = tree.getHeight();
+            free = tree.getFreeBlockCount();
+
+            // what a crash right now would leave behind, every page written
+            tree.getBufferPool().flush();
+            Files.copy(Paths.get(files.index()), Paths.get(files.path("crash.db")),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tree.close();
+        }
+
+        BPlusTreeImpl recovered = open(files.path("crash.db"));
+        try {
+            assertEquals(height, recovered.getHeight());
+            assertEquals(20000 - 6667, recovered.getRecordCount());
+            assertEquals(free, recovered.getFreeBlockCount());
+            assertTrue(recovered.isTreeValid());
+
+            // the rebuilt free list is handed out before the file grows
+            long blocks = Files.size(Paths.get(files.path("crash.db"))) / 1024;
+            for (int i = 0; i < 20000; i += 3) {
+                recovered.insert(List.of(i, i * 10));
+            }
+            recovered.getBufferPool().flush();
+            assertTrue(Files.size(Paths.get(files.path("crash.db"))) / 1024 <= blocks + 2);
+            assertEquals(20000, recovered.getRecordCount());
+        } finally {
+            recovered.close();
+        }
+    }
+}
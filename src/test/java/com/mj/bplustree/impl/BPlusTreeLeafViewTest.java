@@ -0,0 +1,93 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.TreeFiles;
+import com.mj.bplustree.Cursor;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreeLeafViewTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTreeImpl open(boolean strings) throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("name", strings ? FieldType.string : FieldType.integer, 20));
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("score", FieldType.decimal));
+        // the key is not the first field, so finding it skips the one before
+        return new BPlusTreeImpl(null, files.index(), List.of("id"), tableSpec);
+    }
+
+    private static Object name(boolean strings, int i) {
+        return strings ? "näme" + i : i * 3;
+    }
+
+    private void checkLookupsLeaveLeafOnPage(boolean strings) throws IOException {
+        BPlusTreeImpl tree = open(strings);
+        try {
+            for (int i = 0; i < 40; i++) {
+                tree.insert(List.of(name(strings, i), i, i / 2f));
+            }
+        } finally {
+            tree.close();
+        }
+
+        BPlusTreeImpl reopened = open(strings);
+        try {
+            assertEquals(1, reopened.getHeight());
+            for (int i = 0; i < 40; i++) {
+                assertEquals(List.of(name(strings, i), i, i / 2f), reopened.find(List.of(i)));
+            }
+            assertNull(reopened.find(List.of(40)));
+            Cursor cursor = reopened.scan(List.of(10), List.of(19));
+            for (int i = 10; i <= 19; i++) {
+                assertEquals(name(strings, i), cursor.next().get(0));
+            }
+            assertFalse(cursor.hasNext());
+
+            BPlusNode leaf = reopened.readFromDisk(reopened.getRootPointer());
+            try {
+                assertTrue(leaf.isPageBacked());
+            } finally {
+                reopened.unpin(leaf);
+            }
+
+            // a change decodes the leaf, and what was on the page is kept
+            reopened.insert(List.of(name(strings, 40), 40, 20f));
+            leaf = reopened.readFromDisk(reopened.getRootPointer());
+            try {
+                assertFalse(leaf.isPageBacked());
+                assertEquals(41, leaf.size());
+            } finally {
+                reopened.unpin(leaf);
+            }
+            for (int i = 0; i <= 40; i++) {
+                assertEquals(i / 2f, (float) reopened.find(List.of(i)).get(2), 0);
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testPackedLeaf() throws IOException {
+        checkLookupsLeaveLeafOnPage(false);
+    }
+
+    @Test
+    public void testSlottedLeaf() throws IOException {
+        checkLookupsLeaveLeafOnPage(true);
+    }
+}
@@ -0,0 +1,130 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.TreeFiles;
+import com.mj.bplustree.TreeOptions;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BPlusTreePageSizeTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private static List<Field> tableSpec() {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return tableSpec;
+    }
+
+    private BPlusTreeImpl open(TreeOptions options) throws IOException {
+        return new BPlusTreeImpl(null, files.index(), List.of("id"), tableSpec(), options);
+    }
+
+    @Test
+    public void testPageSizeIsKeptInFile() throws IOException {
+        BPlusTreeImpl tree = open(new TreeOptions().setPageSize(8192));
+        try {
+            assertEquals(8192, tree.getPageSize());
+            for (int i = 0; i < 20000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+        } finally {
+            tree.close();
+        }
+        assertEquals(0, Files.size(Paths.get(files.index())) % 8192);
+
+        // reopened with the default options, the file's own page size wins
+        BPlusTreeImpl reopened = open(new TreeOptions());
+        try {
+            assertEquals(8192, reopened.getPageSize());
+            assertTrue(reopened.isTreeValid());
+            for (int i = 0; i < 20000; i += 11) {
+                assertEquals(i * 10, (int) reopened.find(List.of(i)).get(1));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testNonLeafFanoutUsesKeySize() throws IOException {
+        List<Field> wide = new ArrayList<>();
+        wide.add(new Field("id", FieldType.integer));
+        wide.add(new Field("name", FieldType.string, 100));
+
+        BPlusTreeImpl tree = new BPlusTreeImpl(null, files.index(), List.of("id"), wide,
+                new TreeOptions().setPageSize(16 * 1024));
+        try {
+            // records of up to 308 bytes in slotted leaves, but 4 byte keys and 4 byte child pointers
+            assertEquals(16 * 1024 - 14, tree.getLeafCapacity());
+            assertEquals(4 + 4 + 100 * 3 + 2, tree.getMaxLeafEntry());
+            assertEquals((16 * 1024 - 14) / 8, tree.getNumKeysPerBlock());
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testOpensFileWithoutHeader() throws IOException {
+        // the old layout: a root leaf in block 0 holding 100 records
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(files.index()))) {
+            out.writeByte(1);
+            out.writeByte(1);
+            out.writeInt(100);
+            for (int i = 0; i < 100; i++) {
+                out.writeInt(i);
+                out.writeInt(i * 10);
+            }
+            out.writeInt(0);
+            out.write(new byte[1024 - 10 - 100 * 8]);
+        }
+
+        BPlusTreeImpl tree = open(new TreeOptions().setPageSize(4096));
+        try {
+            assertEquals(1024, tree.getPageSize());
+            for (int i = 100; i < 2000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertTrue(tree.isTreeValid());
+        } finally {
+            tree.close();
+        }
+
+        // the root moved to the end of the file to make room for a header, which has the schema
+        FileHeader header = FileHeader.read(Paths.get(files.index()));
+        assertFalse(header.isLegacy());
+        assertEquals(List.of("id"), header.getKeySpec());
+        assertEquals(tableSpec(), header.getTableSpec());
+
+        BPlusTreeImpl reopened = open(new TreeOptions());
+        try {
+            assertTrue(reopened.isTreeValid());
+            assertEquals(2000, reopened.getRecordCount());
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(i * 10, (int) reopened.find(List.of(i)).get(1));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOddPageSize() {
+        new TreeOptions().setPageSize(3000);
+    }
+}
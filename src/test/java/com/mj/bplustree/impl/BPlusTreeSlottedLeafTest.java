@@ -0,0 +1,148 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.TreeFiles;
+import com.mj.bplustree.Cursor;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BPlusTreeSlottedLeafTest {
+
+    private static final int N = 20000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTreeImpl open() throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("name", FieldType.string, 100));
+        return new BPlusTreeImpl(null, files.index(), List.of("id"), tableSpec);
+    }
+
+    private static String name(int i) {
+        // mostly short names, now and then a long one with characters of 2 to 4 UTF-8 bytes
+        return i % 97 == 0 ? ("é€😀" + i % 10).repeat(20) : "n" + i;
+    }
+
+    private long usedBlocks(BPlusTreeImpl tree) throws IOException {
+        tree.getBufferPool().flush();
+        return Files.size(Paths.get(files.index())) / 1024 - tree.getFreeBlockCount();
+    }
+
+    @Test
+    public void testShortRecordsFillLeavesByBytes() throws IOException {
+        BPlusTreeImpl tree = open();
+        try {
+            assertTrue(tree.hasSlottedLeaves());
+            // the worst case fits only three records per 1 KB leaf
+            assertEquals(3, tree.getNumRecordsPerBlock());
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, name(i)));
+            }
+            assertTrue(tree.isTreeValid());
+            // far fewer leaves than N / 3 at half full
+            long used = usedBlocks(tree);
+            assertTrue("used " + used, used < N / 20);
+        } finally {
+            tree.close();
+        }
+
+        BPlusTreeImpl reopened = open();
+        try {
+            assertEquals(N, reopened.getRecordCount());
+            for (int i = 0; i < N; i++) {
+                assertEquals(name(i), reopened.find(List.of(i)).get(1));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testRecordsGrowAndShrinkInPlace() throws IOException {
+        BPlusTreeImpl tree = open();
+        try {
+            for (int i = 0; i < N; i++) {
+                tree.insert(List.of(i, "n" + i));
+            }
+            // replacing records with longer ones splits leaves that run out of bytes
+            for (int i = 0; i < N; i += 2) {
+                tree.insert(List.of(i, name(i * 97)));
+            }
+            assertTrue(tree.isTreeValid());
+            assertEquals(N, tree.getRecordCount());
+
+            for (int i = 0; i < N; i++) {
+                if (i % 4 != 0) {
+                    tree.delete(List.of(i));
+                }
+            }
+            assertTrue(tree.isTreeValid());
+
+            int expected = 0;
+            Cursor cursor = tree.scan(null, null);
+            while (cursor.hasNext()) {
+                List rec = cursor.next();
+                assertEquals(expected, (int) rec.get(0));
+                assertEquals(name(expected * 97), rec.get(1));
+                expected += 4;
+            }
+            assertEquals(N, expected);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testBulkLoadFillsByBytes() throws IOException {
+        List<List> records = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            records.add(List.of(i, name(i)));
+        }
+        BPlusTreeImpl tree = open();
+        try {
+            tree.bulkLoad(records.iterator(), 1.0);
+            assertTrue(tree.isTreeValid());
+            assertEquals(N, tree.getRecordCount());
+            assertTrue(usedBlocks(tree) < N / 30);
+            for (int i = 0; i < N; i += 7) {
+                assertEquals(name(i), tree.find(List.of(i)).get(1));
+            }
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testTooLongStringIsRejected() throws IOException {
+        BPlusTreeImpl tree = open();
+        try {
+            tree.insert(List.of(1, "one"));
+            // 3 bytes a character are reserved, so ASCII may run longer than the field
+            tree.insert(List.of(3, "x".repeat(300)));
+            try {
+                tree.insert(List.of(2, "x".repeat(301)));
+                fail("a string longer than its field was stored");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertNull(tree.find(List.of(2)));
+            assertEquals(2, tree.getRecordCount());
+        } finally {
+            tree.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.LatencySummary;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        int last = -1;
+        for (long v = 0; v < 1 << 20; v++) {
+            int bucket = LatencyHistogram.bucket(v);
+            assertTrue(bucket == last || bucket == last + 1);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= v);
+            // an eighth of a power of two wide
+            assertTrue(v - LatencyHistogram.lowerBound(bucket) <= Math.max(0, v / 8));
+            last = bucket;
+        }
+        assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.bucket(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencySummary summary = histogram.summary();
+        assertEquals(1000, summary.getCount());
+        assertEquals(500500, summary.getMeanNanos());
+        assertEquals(1000000, summary.getMaxNanos());
+        assertNear(500000, summary.getP50Nanos());
+        assertNear(900000, summary.getP90Nanos());
+        assertNear(990000, summary.getP99Nanos());
+        assertEquals(1000000, summary.getP999Nanos());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+}
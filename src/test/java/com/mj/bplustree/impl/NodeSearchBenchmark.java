@@ -0,0 +1,100 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.util.KeyComparator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the cost of picking a child inside one non-leaf node, comparing the
+ * array/binary search node against the previous LinkedList linear scan.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes com.mj.bplustree.impl.NodeSearchBenchmark
+ */
+public class NodeSearchBenchmark {
+
+    private static final int[] FANOUTS = {64, 128, 256, 512};
+    private static final int PROBES = 1 << 16;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        List<String> keySpec = List.of("id");
+
+        File file = File.createTempFile("nodesearch", ".db");
+        BPlusTreeImpl tree = new BPlusTreeImpl(null, file.getPath(), keySpec, tableSpec);
+        KeyComparator comparator = new KeyComparator(keySpec, tree.getTableSpecMap());
+
+        try {
+            System.out.printf("%8s %18s %18s%n", "fanout", "linked list ns/op", "binary search ns/op");
+            for (int fanout : FANOUTS) {
+                BPlusNode node = new BPlusNode(tree);
+                node.setLeaf(false);
+                List<List<Object>> linkedKeys = new LinkedList<>();
+                List<Integer> linkedChildren = new LinkedList<>();
+
+                node.appendChildPtr(0);
+                linkedChildren.add(0);
+                for (int i = 1; i <= fanout; i++) {
+                    List<Object> key = List.of(i * 2);
+                    node.appendKey(key);
+                    node.appendChildPtr(i);
+                    linkedKeys.add(key);
+                    linkedChildren.add(i);
+                }
+
+                Random r = new Random(fanout);
+                List<List<Object>> probes = new ArrayList<>(PROBES);
+                for (int i = 0; i < PROBES; i++) {
+                    probes.add(List.of(r.nextInt(fanout * 2 + 2)));
+                }
+
+                long linear = Long.MAX_VALUE;
+                long binary = Long.MAX_VALUE;
+                long sink = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long t0 = System.nanoTime();
+                    for (List<Object> probe : probes) {
+                        sink += linearChild(comparator, linkedKeys, linkedChildren, probe);
+                    }
+                    long t1 = System.nanoTime();
+                    for (List<Object> probe : probes) {
+                        sink += node.childPointerFor(probe);
+                    }
+                    long t2 = System.nanoTime();
+
+                    linear = Math.min(linear, t1 - t0);
+                    binary = Math.min(binary, t2 - t1);
+                }
+
+                System.out.printf("%8d %18.1f %18.1f   (%d)%n", fanout,
+                        (double) linear / PROBES, (double) binary / PROBES, sink % 10);
+            }
+        } finally {
+            tree.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * The child selection loop as it was written against LinkedList nodes.
+     */
+    private static int linearChild(KeyComparator comparator, List<List<Object>> keys,
+                                   List<Integer> children, List<Object> key) {
+        int kSize = keys.size();
+        int i;
+        for (i = 0; i < kSize; i++) {
+            if (comparator.compare(key, keys.get(i)) < 0) {
+                return children.get(i);
+            }
+        }
+        return children.get(i);
+    }
+}
@@ -0,0 +1,180 @@
+package com.mj.bplustree.impl;
+
+import com.mj.bplustree.TreeFiles;
+import com.mj.bplustree.VerifyReport;
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TreeVerifierTest {
+
+    private static final int N = 50000;
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private BPlusTreeImpl open() throws IOException {
+        List<Field> tableSpec = new ArrayList<>();
+        tableSpec.add(new Field("id", FieldType.integer));
+        tableSpec.add(new Field("amount", FieldType.integer));
+        return new BPlusTreeImpl(null, files.index(), List.of("id"), tableSpec);
+    }
+
+    private BPlusTreeImpl filled() throws IOException {
+        BPlusTreeImpl tree = open();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(11));
+        for (int i : order) {
+            tree.insert(List.of(i, i * 10));
+        }
+        for (int i = 0; i < N; i += 4) {
+            tree.delete(List.of(i));
+        }
+        return tree;
+    }
+
+    /**
+     * The leaves in key order, found by descending to the leftmost one.
+     */
+    private static List<Integer> leaves(BPlusTreeImpl tree) throws IOException {
+        BPlusNode node = tree.pinRoot();
+        while (!node.isLeaf()) {
+            BPlusNode child = tree.readFromDisk(node.getChildPtr(0));
+            tree.unpin(node);
+            node = child;
+        }
+        List<Integer> leaves = new ArrayList<>();
+        while (true) {
+            leaves.add(node.getPointer());
+            int next = node.getNextBlockPointer();
+            tree.unpin(node);
+            if (next == 0) {
+                return leaves;
+            }
+            node = tree.readFromDisk(next);
+        }
+    }
+
+    @Test
+    public void testValidTree() throws IOException {
+        BPlusTreeImpl tree = filled();
+        try {
+            VerifyReport report = tree.verify();
+            assertTrue(report.toString(), report.isValid());
+            assertEquals(N - N / 4, report.getRecords());
+            assertEquals(leaves(tree).size(), report.getLeaves());
+            assertEquals(tree.getBlockCount(), report.getBlocks());
+            assertEquals(report.getBlocks(), report.getNodes() + tree.getFreeBlockCount() + 1);
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testLeafLinksAcrossRuns() throws IOException {
+        BPlusTreeImpl tree = open();
+        List<Integer> leaves;
+        try {
+            for (int i = 0; i < 5000; i++) {
+                tree.insert(List.of(i, i * 10));
+            }
+            assertEquals(2, tree.getHeight());
+            leaves = leaves(tree);
+        } finally {
+            tree.close();
+        }
+        assertTrue(leaves.size() > 2 * TreeVerifier.LEAVES_PER_TASK);
+
+        // the last leaf of the first run skips the first leaf of the second
+        int linked = leaves.get(TreeVerifier.LEAVES_PER_TASK - 1);
+        try (FileChannel file = FileChannel.open(Paths.get(files.index()),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer page = ByteBuffer.allocate(1024);
+            file.read(page, linked * 1024L);
+            int count = page.getInt(2);
+            file.write(ByteBuffer.allocate(4).putInt(0, leaves.get(TreeVerifier.LEAVES_PER_TASK + 1)),
+                    linked * 1024L + 6 + count * 8);
+        }
+
+        BPlusTreeImpl reopened = open();
+        try {
+            VerifyReport report = reopened.verify();
+            assertEquals(report.toString(), 1, report.getViolationCount());
+            assertTrue(report.toString(), report.toString().contains("block " + linked + ": leaf links to block "
+                    + leaves.get(TreeVerifier.LEAVES_PER_TASK + 1) + ", the next leaf is block "
+                    + leaves.get(TreeVerifier.LEAVES_PER_TASK)));
+            assertEquals(5000, report.getRecords());
+            assertEquals(leaves.size(), report.getLeaves());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testReportsEveryViolation() throws IOException {
+        BPlusTreeImpl tree = filled();
+        List<Integer> leaves;
+        try {
+            leaves = leaves(tree);
+        } finally {
+            tree.close();
+        }
+        int linked = leaves.get(10);
+        int misordered = leaves.get(20);
+        int copied = leaves.get(30);
+
+        try (FileChannel file = FileChannel.open(Paths.get(files.index()),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a leaf holds [1][1][count][records of 8 bytes][next]
+            ByteBuffer page = ByteBuffer.allocate(1024);
+            file.read(page, linked * 1024L);
+            int count = page.getInt(2);
+            file.write(ByteBuffer.allocate(4).putInt(0, leaves.get(12)), linked * 1024L + 6 + count * 8);
+
+            // the first key of a leaf moved past the keys of the leaf after it
+            file.write(ByteBuffer.allocate(4).putInt(0, N + 1), misordered * 1024L + 6);
+
+            // a copy of a leaf at the end of the file, which nothing points to
+            page.clear();
+            file.read(page, copied * 1024L);
+            file.write(page.flip(), file.size());
+        }
+
+        BPlusTreeImpl reopened = open();
+        try {
+            VerifyReport report = reopened.verify();
+            assertFalse(reopened.isTreeValid());
+            assertFalse(report.isValid());
+            assertEquals(report.toString(), 5, report.getViolationCount());
+            String all = report.toString();
+            assertTrue(all, all.contains("block " + linked + ": leaf links to block " + leaves.get(12)
+                    + ", the next leaf is block " + leaves.get(11)));
+            assertTrue(all, all.contains("at 1 is not above [" + (N + 1) + "]"));
+            assertTrue(all, all.contains("block " + misordered + ": key [" + (N + 1) + "] is outside"));
+            assertTrue(all, all.contains("block " + (reopened.getBlockCount() - 1)
+                    + " is in use but not reachable from the root"));
+            // the file grew, so the count was rebuilt along the broken leaf chain
+            assertTrue(all, all.contains("the leaves hold " + (N - N / 4) + " records"));
+        } finally {
+            reopened.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.mj.db.buffer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BufferPoolTest {
+
+    private final List<Integer> written = new ArrayList<>();
+
+    private BufferPool<String> newPool(int capacity, EvictionPolicy policy) {
+        return new BufferPool<>(capacity, policy, (pageId, page) -> written.add(pageId));
+    }
+
+    private static String load(int pageId) {
+        return "page" + pageId;
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        BufferPool<String> pool = newPool(4, new LRUEvictionPolicy());
+
+        assertEquals("page1", pool.pin(1, BufferPoolTest::load));
+        pool.unpin(1);
+        assertEquals("page1", pool.pin(1, BufferPoolTest::load));
+        pool.unpin(1);
+
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    public void testLRUEvictsLeastRecentlyUsed() throws IOException {
+        BufferPool<String> pool = newPool(3, new LRUEvictionPolicy());
+
+        for (int i = 1; i <= 3; i++) {
+            pool.pin(i, BufferPoolTest::load);
+            pool.unpin(i);
+        }
+        pool.pin(1, BufferPoolTest::load);
+        pool.unpin(1);
+
+        pool.pin(4, BufferPoolTest::load);
+        pool.unpin(4);
+
+        assertTrue(pool.contains(1));
+        assertFalse(pool.contains(2));
+        assertTrue(pool.contains(3));
+        assertTrue(pool.contains(4));
+    }
+
+    @Test
+    public void testClockGivesSecondChance() throws IOException {
+        BufferPool<String> pool = newPool(3, new ClockEvictionPolicy());
+
+        for (int i = 1; i <= 3; i++) {
+            pool.pin(i, BufferPoolTest::load);
+            pool.unpin(i);
+        }
+        // first sweep clears all bits, the second evicts page 1
+        pool.pin(4, BufferPoolTest::load);
+        pool.unpin(4);
+        assertFalse(pool.contains(1));
+
+        // page 2 is referenced again and survives the next eviction
+        pool.pin(2, BufferPoolTest::load);
+        pool.unpin(2);
+        pool.pin(5, BufferPoolTest::load);
+        pool.unpin(5);
+
+        assertTrue(pool.contains(2));
+        assertFalse(pool.contains(3));
+    }
+
+    @Test
+    public void testPinnedPagesAreNotEvicted() throws IOException {
+        for (EvictionPolicy policy : List.of(new LRUEvictionPolicy(), new ClockEvictionPolicy())) {
+            BufferPool<String> pool = newPool(2, policy);
+
+            pool.pin(1, BufferPoolTest::load);
+            pool.pin(2, BufferPoolTest::load);
+            pool.pin(3, BufferPoolTest::load);
+
+            assertEquals(3, pool.size());
+            assertTrue(pool.contains(1));
+            assertTrue(pool.contains(2));
+
+            pool.unpin(1);
+            pool.unpin(2);
+            pool.unpin(3);
+            pool.pin(4, BufferPoolTest::load);
+
+            assertEquals(2, pool.size());
+        }
+    }
+
+    @Test
+    public void testDirtyPagesWrittenOnEvictionAndFlush() throws IOException {
+        BufferPool<String> pool = newPool(2, new LRUEvictionPolicy());
+
+        pool.put(7, "seven", true);
+        pool.put(3, "three", true);
+        pool.put(9, "nine", false);
+
+        assertEquals(List.of(7), written);
+
+        pool.markDirty(9);
+        pool.flush();
+        assertEquals(List.of(7, 3, 9), written);
+        assertFalse(pool.isDirty(3));
+    }
+
+    @Test
+    public void testUnusedPagesAreNotCached() throws IOException {
+        BufferPool<String> pool = newPool(2, new LRUEvictionPolicy());
+
+        assertEquals(null, pool.pin(5, pageId -> null));
+        assertFalse(pool.contains(5));
+    }
+
+    @Test
+    public void testFailedWriteKeepsDirtyPage() throws IOException {
+        boolean[] failing = {true};
+        BufferPool<String> pool = new BufferPool<>(1, new LRUEvictionPolicy(), (pageId, page) -> {
+            if (failing[0]) {
+                throw new IOException("disk full");
+            }
+            written.add(pageId);
+        });
+
+        pool.put(7, "seven", true);
+        try {
+            pool.pin(3, BufferPoolTest::load);
+            fail("the failed write was not reported");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        // page 7 is still there to be written, and page 3 is not left pinned
+        assertTrue(pool.isDirty(7));
+
+        failing[0] = false;
+        pool.pin(5, BufferPoolTest::load);
+        pool.unpin(5);
+        assertEquals(List.of(7), written);
+        assertFalse(pool.contains(7));
+        assertFalse(pool.contains(3));
+        assertEquals(1, pool.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testEvictionWriteDoesNotBlockHits() throws Exception {
+        List<Integer> flushed = new CopyOnWriteArrayList<>();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BufferPool<String> pool = new BufferPool<>(2, new LRUEvictionPolicy(), (pageId, page) -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            flushed.add(pageId);
+        });
+
+        pool.put(1, "one", true);
+        pool.pin(2, BufferPoolTest::load);
+        pool.unpin(2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // page 1 is the victim, and its write hangs until released
+            Future<String> evicting = executor.submit(() -> pool.pin(3, BufferPoolTest::load));
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            assertEquals("page2", pool.pin(2, BufferPoolTest::load));
+            pool.unpin(2);
+
+            // page 1 is read back only once it is on disk
+            Future<String> reread = executor.submit(() ->
+                    pool.pin(1, pageId -> flushed.contains(pageId) ? "one" : "stale"));
+            release.countDown();
+
+            assertEquals("page3", evicting.get());
+            assertEquals("one", reread.get());
+            assertEquals(List.of(1), flushed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
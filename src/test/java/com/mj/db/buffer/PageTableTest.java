@@ -0,0 +1,59 @@
+package com.mj.db.buffer;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PageTableTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        PageTable<String> table = new PageTable<>();
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(3);
+
+        // few keys, many collisions, so removals shift long runs back
+        for (int n = 0; n < 200000; n++) {
+            int key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                String value = expected.remove(key);
+                if (value != null) {
+                    assertTrue(table.remove(key, value));
+                }
+            } else {
+                String value = "v" + n;
+                String previous = table.putIfAbsent(key, value);
+                assertSame(expected.get(key), previous);
+                expected.putIfAbsent(key, value);
+            }
+            if (n % 1000 == 0) {
+                for (int k = 0; k < 5000; k++) {
+                    assertSame(expected.get(k), table.get(k));
+                }
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(table.values()));
+    }
+
+    @Test
+    public void testRemoveOnlyTheGivenValue() {
+        PageTable<String> table = new PageTable<>();
+        table.putIfAbsent(7, "a");
+
+        assertFalse(table.remove(7, new String("a")));
+        assertEquals("a", table.get(7));
+        table.remove(7, table.get(7));
+        assertNull(table.get(7));
+        assertEquals(0, table.size());
+    }
+}
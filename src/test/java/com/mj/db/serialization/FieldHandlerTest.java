@@ -0,0 +1,52 @@
+package com.mj.db.serialization;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FieldHandlerTest {
+
+    private static final List<Field> SPEC = List.of(
+            new Field("name", FieldType.string, 10),
+            new Field("id", FieldType.integer),
+            new Field("active", FieldType.bool),
+            new Field("score", FieldType.decimal),
+            new Field("city", FieldType.string, 10));
+
+    @Test
+    public void testStreamAndPageAgree() throws IOException {
+        RecordSerDeserializer codec = new RecordSerDeserializer(SPEC);
+        List<Object> record = List.of("Zoë", -7, true, 2.5f, "東京");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeShort(0);
+        codec.write(record, dos);
+        byte[] bytes = bos.toByteArray();
+        assertEquals(2 + codec.size(record), bytes.length);
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2));
+        assertEquals(record, codec.read(dis));
+
+        ByteBuffer page = ByteBuffer.wrap(bytes);
+        assertEquals(record, codec.read(page, 2));
+        assertEquals(List.of("東京", -7), codec.readFields(page, 2, new int[]{4, 1}));
+    }
+
+    @Test
+    public void testHandlerPerType() {
+        assertEquals(FieldHandler.STRING, FieldHandler.of(FieldType.string));
+        assertEquals(List.of(FieldHandler.STRING, FieldHandler.INTEGER, FieldHandler.BOOL,
+                FieldHandler.DECIMAL, FieldHandler.STRING), List.of(FieldHandler.of(SPEC)));
+    }
+}
@@ -0,0 +1,147 @@
+package com.mj.db.serialization;
+
+import com.mj.bplustree.fields.Field;
+import com.mj.bplustree.fields.FieldType;
+import com.mj.util.KeyComparator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizedKeyEncoderTest {
+
+    private static final int[] INTS = {Integer.MIN_VALUE, -70000, -1, 0, 1, 255, 256, 70000, Integer.MAX_VALUE};
+    private static final float[] FLOATS = {Float.NEGATIVE_INFINITY, -3.5f, -1f, -Float.MIN_VALUE, -0f, 0f,
+            Float.MIN_VALUE, 0.25f, 1f, 1.5f, Float.MAX_VALUE, Float.POSITIVE_INFINITY, Float.NaN};
+    private static final String[] STRINGS = {"", "a", "A", "ab", "aB", "b", "\u0000", "a\u0000", "a\u0001",
+            "a\u0002", "z", "é", "É", "é\u0000", "€", "😀", "\ud83d", "\ude00", "�", "ß", "ǅ", "ı", "I"};
+
+    private static Map<String, Field> spec() {
+        Map<String, Field> spec = new HashMap<>();
+        spec.put("i", new Field("i", FieldType.integer));
+        spec.put("s", new Field("s", FieldType.string, 10));
+        spec.put("f", new Field("f", FieldType.decimal));
+        spec.put("b", new Field("b", FieldType.bool));
+        return spec;
+    }
+
+    private static int sign(int c) {
+        return Integer.compare(c, 0);
+    }
+
+    private static List<Object> randomKey(Random r) {
+        List<Object> key = new ArrayList<>();
+        key.add(STRINGS[r.nextInt(STRINGS.length)]);
+        key.add(INTS[r.nextInt(INTS.length)]);
+        key.add(FLOATS[r.nextInt(FLOATS.length)]);
+        key.add(r.nextBoolean());
+        // a prefix now and then, as a scan bound
+        return r.nextInt(4) == 0 ? key.subList(0, r.nextInt(4)) : key;
+    }
+
+    @Test
+    public void testOrderMatchesKeyComparator() {
+        List<String> keySpec = List.of("s", "i", "f", "b");
+        NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(spec(), keySpec);
+        KeyComparator comparator = new KeyComparator(keySpec, spec());
+
+        Random r = new Random(1);
+        for (int n = 0; n < 200000; n++) {
+            List<Object> a = randomKey(r);
+            List<Object> b = randomKey(r);
+            assertEquals(a + " vs " + b, sign(comparator.compare(a, b)),
+                    sign(NormalizedKeyEncoder.compare(encoder.encode(a), encoder.encode(b))));
+        }
+    }
+
+    /**
+     * Every key made of the given values in keySpec order, and every prefix
+     * of one.
+     */
+    private static List<List<Object>> compositeKeys(List<String> keySpec, Map<String, Object[]> values) {
+        List<List<Object>> keys = new ArrayList<>();
+        List<List<Object>> level = List.of(List.of());
+        keys.addAll(level);
+        for (String name : keySpec) {
+            List<List<Object>> longer = new ArrayList<>();
+            for (List<Object> key : level) {
+                for (Object value : values.get(name)) {
+                    List<Object> k = new ArrayList<>(key);
+                    k.add(value);
+                    longer.add(k);
+                }
+            }
+            keys.addAll(longer);
+            level = longer;
+        }
+        return keys;
+    }
+
+    @Test
+    public void testCompositeKeys() {
+        Map<String, Object[]> values = Map.of(
+                "i", new Object[]{-1, 0, 1},
+                "f", new Object[]{-0.5f, 0f, 2f},
+                "s", new Object[]{"", "a", "A", "ab", "AB", "aB", "abc", "b"});
+        for (List<String> keySpec : List.of(List.of("i", "f", "s"), List.of("s", "i", "f"))) {
+            NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(spec(), keySpec);
+            KeyComparator comparator = new KeyComparator(keySpec, spec());
+            List<List<Object>> keys = compositeKeys(keySpec, values);
+            for (List<Object> a : keys) {
+                byte[] encoded = encoder.encode(a);
+                for (List<Object> b : keys) {
+                    assertEquals(keySpec + ": " + a + " vs " + b, sign(comparator.compare(a, b)),
+                            sign(NormalizedKeyEncoder.compare(encoded, encoder.encode(b))));
+                }
+            }
+        }
+
+        NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(spec(), List.of("s", "i", "f"));
+        // case folded, so the same bytes
+        assertTrue(Arrays.equals(encoder.encode(List.of("aB", 1, 2f)), encoder.encode(List.of("Ab", 1, 2f))));
+        // a string sorts before the strings it is a prefix of, whatever follows it
+        assertTrue(NormalizedKeyEncoder.compare(encoder.encode(List.of("ab", Integer.MAX_VALUE, 2f)),
+                encoder.encode(List.of("abc", Integer.MIN_VALUE, -0.5f))) < 0);
+        assertTrue(NormalizedKeyEncoder.compare(encoder.encode(List.of("AB", 1)),
+                encoder.encode(List.of("ab", 1, -0.5f))) < 0);
+    }
+
+    @Test
+    public void testSingleFields() {
+        NormalizedKeyEncoder ints = new NormalizedKeyEncoder(spec(), List.of("i"));
+        for (int i = 1; i < INTS.length; i++) {
+            assertTrue(NormalizedKeyEncoder.compare(ints.encode(List.of(INTS[i - 1])), ints.encode(List.of(INTS[i]))) < 0);
+        }
+        NormalizedKeyEncoder floats = new NormalizedKeyEncoder(spec(), List.of("f"));
+        for (int i = 1; i < FLOATS.length; i++) {
+            assertTrue(NormalizedKeyEncoder.compare(floats.encode(List.of(FLOATS[i - 1])), floats.encode(List.of(FLOATS[i]))) < 0);
+        }
+        NormalizedKeyEncoder strings = new NormalizedKeyEncoder(spec(), List.of("s"));
+        assertEquals(0, NormalizedKeyEncoder.compare(strings.encode(List.of("Straße")), strings.encode(List.of("STRAßE"))));
+    }
+
+    @Test
+    public void testPrefixKeySortsFirst() {
+        NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(spec(), List.of("i", "s"));
+        KeyComparator comparator = new KeyComparator(List.of("i", "s"), spec());
+        byte[] prefix = encoder.encode(List.of(5));
+        assertTrue(NormalizedKeyEncoder.compare(prefix, encoder.encode(List.of(5, ""))) < 0);
+        assertTrue(NormalizedKeyEncoder.compare(prefix, encoder.encode(List.of(4, "zz"))) > 0);
+        assertTrue(NormalizedKeyEncoder.compare(prefix, encoder.encode(List.of(6, ""))) < 0);
+
+        // both ways round
+        assertTrue(comparator.compare(List.of(5), List.of(5, "")) < 0);
+        assertTrue(comparator.compare(List.of(5, ""), List.of(5)) > 0);
+        assertTrue(comparator.compare(List.of(4, "zz"), List.of(5)) < 0);
+        assertTrue(comparator.compare(List.of(), List.of(4, "zz")) < 0);
+        assertTrue(comparator.compare(List.of(4, "zz"), List.of()) > 0);
+        assertEquals(0, comparator.compare(List.of(), List.of()));
+    }
+}
@@ -0,0 +1,140 @@
+package com.mj.db.wal;
+
+import com.mj.bplustree.TreeFiles;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public final TreeFiles files = new TreeFiles();
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = Paths.get(files.path("test.wal"));
+    }
+
+    private static byte[] page(int fill) {
+        byte[] b = new byte[64];
+        Arrays.fill(b, (byte) fill);
+        return b;
+    }
+
+    private List<Integer> replayedPages() throws IOException {
+        List<Integer> pages = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(path)) {
+            wal.replay((pageNo, image) -> {
+                assertEquals(pageNo, image[0]);
+                pages.add(pageNo);
+            });
+        }
+        return pages;
+    }
+
+    @Test
+    public void testReplaysOnlyCommittedOperations() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(path)) {
+            wal.append(1, page(1));
+            wal.append(2, page(2));
+            wal.sync(wal.commit());
+
+            wal.append(3, page(3));
+            wal.commit();
+            // logged and written, but never committed
+            wal.append(4, page(4));
+            wal.sync(wal.append(5, page(5)));
+        }
+        assertEquals(List.of(1, 2, 3), replayedPages());
+    }
+
+    @Test
+    public void testStopsAtTornRecord() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(path)) {
+            wal.append(1, page(1));
+            wal.sync(wal.commit());
+            wal.append(2, page(2));
+            wal.sync(wal.commit());
+        }
+
+        // cut the second operation's commit record in half
+        try (RandomAccessFile f = new RandomAccessFile(path.toFile(), "rw")) {
+            f.setLength(f.length() - 6);
+        }
+        assertEquals(List.of(1), replayedPages());
+
+        // and flip a byte of the first page image
+        try (RandomAccessFile f = new RandomAccessFile(path.toFile(), "rw")) {
+            f.seek(20);
+            f.write(99);
+        }
+        assertEquals(List.of(), replayedPages());
+    }
+
+    @Test
+    public void testTruncate() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(path)) {
+            wal.append(1, page(1));
+            wal.sync(wal.commit());
+            assertTrue(wal.size() > 0);
+
+            wal.truncate();
+            assertEquals(0, wal.size());
+
+            wal.append(2, page(2));
+            wal.sync(wal.commit());
+        }
+        assertEquals(List.of(2), replayedPages());
+    }
+
+    @Test
+    public void testConcurrentCommitsShareSyncs() throws Exception {
+        int threads = 8;
+        int perThread = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        try (WriteAheadLog wal = new WriteAheadLog(path)) {
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                Thread worker = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < perThread; i++) {
+                            long lsn;
+                            synchronized (wal) {
+                                wal.append(id, page(id));
+                                lsn = wal.commit();
+                            }
+                            wal.sync(lsn);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertTrue(wal.getSyncCount() <= threads * perThread);
+        }
+        assertEquals(threads * perThread, replayedPages().size());
+    }
+}